@@ -0,0 +1,304 @@
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Headless batch renderer for scheduled report plots.
+//
+// Reads a manifest of plot configs (the same JSON objects the dashboard sends
+// as plot:{...}, one per line or as a JSON array), authenticates once, and
+// pipelines every request over a single framed connection. Replies are
+// written to disk in parallel while later plots are still rendering.
+//
+//   java BatchPlotRunner --csv data.csv --out reports manifest.jsonl
+//
+// An entry may carry "output" (file name without extension) and
+// "format": "png" (rendered server side, needs kaleido); both are ignored by
+// the server's plot builder otherwise.
+public final class BatchPlotRunner {
+
+    private static final Pattern OUTPUT_FIELD = Pattern.compile("\"output\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern TYPE_FIELD = Pattern.compile("\"type\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern FORMAT_FIELD = Pattern.compile("\"format\"\\s*:\\s*\"([^\"]+)\"");
+    private static final String FORMAT_INJECT = "{\"format\": \"png\", ";
+
+    private String host = "localhost";
+    private int port = 1234;
+    private String username = "admin";
+    private String password = System.getenv("VIZ_PASSWORD");
+    private String csv;
+    private Path outputDir = Paths.get("batch-output");
+    private String defaultFormat = "html";
+    private int maxInFlight = 32;
+    private Path manifest;
+
+    // One manifest entry and its timings
+    private static final class Job {
+        final int index;
+        final String config;
+        final String name;
+        final String format;
+        long submitted;
+        long received;
+        long written;
+        long bytes;
+        String error;
+        String slowestStage;
+
+        Job(int index, String config, String name, String format) {
+            this.index = index;
+            this.config = config;
+            this.name = name;
+            this.format = format;
+        }
+    }
+
+    public static void main(String[] args) {
+        BatchPlotRunner runner = new BatchPlotRunner();
+        try {
+            runner.parseArguments(args);
+            int failed = runner.run();
+            System.exit(failed == 0 ? 0 : 1);
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ " + e.getMessage());
+            System.err.println("Usage: java BatchPlotRunner [--host h] [--port p] [--user u] [--password pw]\n" +
+                "         [--csv file.csv] [--out dir] [--format html|png] [--max-in-flight n] manifest");
+            System.exit(2);
+        } catch (Exception e) {
+            System.err.println("❌ Batch failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                manifest = Paths.get(arg);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--host": host = value; break;
+                case "--port": port = Integer.parseInt(value); break;
+                case "--user": username = value; break;
+                case "--password": password = value; break;
+                case "--csv": csv = value; break;
+                case "--out": outputDir = Paths.get(value); break;
+                case "--format": defaultFormat = value; break;
+                case "--max-in-flight": maxInFlight = Math.max(1, Integer.parseInt(value)); break;
+                default: throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (manifest == null) {
+            throw new IllegalArgumentException("No manifest given");
+        }
+        if (!defaultFormat.equals("html") && !defaultFormat.equals("png")) {
+            throw new IllegalArgumentException("Unknown format " + defaultFormat);
+        }
+        if (password == null) {
+            Console console = System.console();
+            if (console == null) {
+                throw new IllegalArgumentException("No password (use --password or VIZ_PASSWORD)");
+            }
+            password = new String(console.readPassword("Password for %s: ", username));
+        }
+    }
+
+    // Returns the number of failed plots
+    private int run() throws Exception {
+        List<Job> jobs = readManifest();
+        Files.createDirectories(outputDir);
+        System.out.println("📋 " + jobs.size() + " plots from " + manifest + " → " + outputDir);
+
+        SecureConnection connection = new SecureConnection(host, port, new SecureConnection.Listener() {
+            @Override
+            public void onUnsolicitedResponse(Response response) {
+                System.out.println("📡 " + response.body());
+            }
+
+            @Override
+            public void onDisconnected(String reason) {
+                System.err.println("🔌 " + reason);
+            }
+        });
+        ExecutorService writers = ClientExecutors.newTaskExecutor("Batch-Writer");
+        try {
+            connection.connect(username, password, true);
+            if (!connection.isFramed()) {
+                throw new IOException("Server does not support the framed protocol");
+            }
+            System.out.println("🔒 Connected: " + connection.timingSummary());
+
+            if (csv != null) {
+                Response loaded = connection.submit(Command.of(csv)).get(5, TimeUnit.MINUTES);
+                System.out.println("📁 " + loaded.body());
+                if (loaded.isError()) {
+                    throw new IOException(loaded.body());
+                }
+            }
+
+            return render(connection, writers, jobs);
+        } finally {
+            connection.close();
+            writers.shutdown();
+        }
+    }
+
+    private int render(SecureConnection connection, ExecutorService writers, List<Job> jobs)
+            throws InterruptedException {
+        // Bounds requests on the wire (and replies waiting for a writer)
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong totalBytes = new AtomicLong();
+        List<CompletableFuture<Void>> done = new ArrayList<>(jobs.size());
+        long start = System.nanoTime();
+
+        for (Job job : jobs) {
+            inFlight.acquire();
+            job.submitted = System.nanoTime();
+            done.add(connection.submit(Command.plot(job.config))
+                .thenAcceptAsync(response -> {
+                    job.received = System.nanoTime();
+                    write(job, response);
+                    job.written = System.nanoTime();
+                    totalBytes.addAndGet(job.bytes);
+                }, writers)
+                .exceptionally(error -> {
+                    job.error = (error.getCause() != null ? error.getCause() : error).getMessage();
+                    return null;
+                })
+                .thenRun(() -> {
+                    inFlight.release();
+                    if (job.error != null) {
+                        failed.incrementAndGet();
+                    }
+                    report(job);
+                }));
+        }
+        CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).join();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int succeeded = jobs.size() - failed.get();
+        System.out.println(String.format("📊 %d/%d plots in %.2f s: %.1f plots/s, %.1f MB written (%.1f MB/s)",
+            succeeded, jobs.size(), seconds, succeeded / seconds, totalBytes.get() / 1e6,
+            totalBytes.get() / 1e6 / seconds));
+        System.out.println("🗜️ " + connection.codecSummary());
+        return failed.get();
+    }
+
+    private void write(Job job, Response response) {
+        try {
+            Path target = outputDir.resolve(job.name + "." + job.format);
+            if (response.kind() == Response.Kind.PNG) {
+                byte[] png = Base64.getMimeDecoder().decode(response.payload().trim());
+                Files.write(target, png);
+            } else if (response.kind() == Response.Kind.PLOT || response.kind() == Response.Kind.PLOT_FALLBACK) {
+                PlotSource plot = response.plot();
+                if (plot.isFile()) {
+                    Files.move(plot.file(), target, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    try (InputStream in = plot.openStream()) {
+                        Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            } else {
+                throw new IllegalStateException(response.body());
+            }
+            job.bytes = Files.size(target);
+            if (response.trace() != null) {
+                job.slowestStage = response.trace().slowestStage();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Write failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static void report(Job job) {
+        if (job.error != null) {
+            System.out.println(String.format("❌ %-32s %s", job.name, job.error));
+            return;
+        }
+        System.out.println(String.format("✅ %-32s %9.1f KB  render+transfer %6d ms  write %4d ms%s",
+            job.name + "." + job.format, job.bytes / 1024.0,
+            TimeUnit.NANOSECONDS.toMillis(job.received - job.submitted),
+            TimeUnit.NANOSECONDS.toMillis(job.written - job.received),
+            job.slowestStage != null ? "  slowest: " + job.slowestStage : ""));
+    }
+
+    private List<Job> readManifest() throws IOException {
+        String text = new String(Files.readAllBytes(manifest), StandardCharsets.UTF_8);
+        List<String> configs = topLevelObjects(text);
+        if (configs.isEmpty()) {
+            throw new IllegalArgumentException("No plot configs in " + manifest);
+        }
+
+        List<Job> jobs = new ArrayList<>(configs.size());
+        for (int i = 0; i < configs.size(); i++) {
+            String config = configs.get(i);
+            String format = field(FORMAT_FIELD, config, defaultFormat);
+            if (format.equals("png") && field(FORMAT_FIELD, config, null) == null) {
+                config = FORMAT_INJECT + config.substring(1).trim();
+            }
+            String name = field(OUTPUT_FIELD, config, null);
+            if (name == null) {
+                name = String.format("%03d_%s", i + 1, field(TYPE_FIELD, config, "plot"));
+            }
+            jobs.add(new Job(i, config, name.replaceAll("[^A-Za-z0-9._-]", "_"), format));
+        }
+        return jobs;
+    }
+
+    // Every {...} at nesting depth zero, so both JSON Lines and a JSON array
+    // of objects work without a JSON library
+    static List<String> topLevelObjects(String text) {
+        List<String> objects = new ArrayList<>();
+        int depth = 0;
+        int start = -1;
+        boolean inString = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                if (depth++ == 0) {
+                    start = i;
+                }
+            } else if (c == '}' && depth > 0) {
+                if (--depth == 0) {
+                    objects.add(text.substring(start, i + 1));
+                }
+            }
+        }
+        return objects;
+    }
+
+    private static String field(Pattern pattern, String json, String fallback) {
+        Matcher matcher = pattern.matcher(json);
+        return matcher.find() ? matcher.group(1) : fallback;
+    }
+}
@@ -0,0 +1,260 @@
+import java.util.Arrays;
+
+// Multi-resolution binned aggregate over one column (histograms) or a column
+// pair (density heatmaps).
+//
+// Built once per dataset and column pair: the finest level holds count, sum,
+// min and max of a value column for 2^maxLevel equal-width bins per axis, and
+// every coarser level merges pairs (or 2x2 blocks) of the level below. Any
+// bin count and zoom window is then answered by merging tiles from the
+// coarsest level that is still at least four times finer than the requested
+// bins, without touching the rows again. Requested bin edges are snapped to
+// that level's tile edges, so counts are exact only up to one tile.
+public final class BinnedAggregate {
+
+    public static final int MAX_LEVEL_1D = 12; // 4096 bins
+    public static final int MAX_LEVEL_2D = 8;  // 256 x 256 bins
+
+    public static boolean supports(String plotType) {
+        return plotType.equals("histogram") || plotType.equals("density_heatmap");
+    }
+
+    private static final class Level {
+        final int nx;
+        final int ny;
+        final long[] count;
+        final double[] sum;
+        final double[] min;
+        final double[] max;
+
+        Level(int nx, int ny) {
+            this.nx = nx;
+            this.ny = ny;
+            int cells = nx * ny;
+            count = new long[cells];
+            sum = new double[cells];
+            min = new double[cells];
+            max = new double[cells];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        void merge(int cell, Level from, int fromCell) {
+            count[cell] += from.count[fromCell];
+            sum[cell] += from.sum[fromCell];
+            min[cell] = Math.min(min[cell], from.min[fromCell]);
+            max[cell] = Math.max(max[cell], from.max[fromCell]);
+        }
+    }
+
+    // Aggregates for the bins of one query, row-major with x varying fastest
+    public static final class Bins {
+        private final int nx;
+        private final int ny;
+        private final double xLo;
+        private final double xHi;
+        private final double yLo;
+        private final double yHi;
+        private final long[] count;
+        private final double[] sum;
+        private final double[] min;
+        private final double[] max;
+
+        Bins(int nx, int ny, double xLo, double xHi, double yLo, double yHi) {
+            this.nx = nx;
+            this.ny = ny;
+            this.xLo = xLo;
+            this.xHi = xHi;
+            this.yLo = yLo;
+            this.yHi = yHi;
+            Level cells = new Level(nx, ny);
+            count = cells.count;
+            sum = cells.sum;
+            min = cells.min;
+            max = cells.max;
+        }
+
+        public int nx() { return nx; }
+        public int ny() { return ny; }
+        public double xWidth() { return (xHi - xLo) / nx; }
+        public double yWidth() { return (yHi - yLo) / ny; }
+        public double xCenter(int bin) { return xLo + (bin + 0.5) * xWidth(); }
+        public double yCenter(int bin) { return yLo + (bin + 0.5) * yWidth(); }
+        public long count(int xBin, int yBin) { return count[yBin * nx + xBin]; }
+        public double sum(int xBin, int yBin) { return sum[yBin * nx + xBin]; }
+
+        public double mean(int xBin, int yBin) {
+            int cell = yBin * nx + xBin;
+            return count[cell] > 0 ? sum[cell] / count[cell] : Double.NaN;
+        }
+
+        public double min(int xBin, int yBin) {
+            int cell = yBin * nx + xBin;
+            return count[cell] > 0 ? min[cell] : Double.NaN;
+        }
+
+        public double max(int xBin, int yBin) {
+            int cell = yBin * nx + xBin;
+            return count[cell] > 0 ? max[cell] : Double.NaN;
+        }
+    }
+
+    private final boolean twoDimensional;
+    private final double xMin;
+    private final double xMax;
+    private final double yMin;
+    private final double yMax;
+    private final Level[] levels;
+
+    private BinnedAggregate(boolean twoDimensional, double xMin, double xMax, double yMin, double yMax,
+                            Level[] levels) {
+        this.twoDimensional = twoDimensional;
+        this.xMin = xMin;
+        this.xMax = xMax;
+        this.yMin = yMin;
+        this.yMax = yMax;
+        this.levels = levels;
+    }
+
+    // Bins x, or the (x, y) pair when y is not null. Rows with a missing
+    // coordinate are skipped; value defaults to x, giving counts and x stats.
+    public static BinnedAggregate build(ColumnarDataset.NumericColumn x, ColumnarDataset.NumericColumn y,
+                                        ColumnarDataset.NumericColumn value) {
+        boolean twoDimensional = y != null;
+        ColumnarDataset.NumericColumn measured = value != null ? value : x;
+        ColumnarDataset.Summary xSummary = x.summarize(null);
+        double[] xBounds = bounds(xSummary);
+        double[] yBounds = twoDimensional ? bounds(y.summarize(null)) : new double[] {0, 1};
+
+        int maxLevel = twoDimensional ? MAX_LEVEL_2D : MAX_LEVEL_1D;
+        int n = 1 << maxLevel;
+        Level finest = new Level(n, twoDimensional ? n : 1);
+        double xScale = n / (xBounds[1] - xBounds[0]);
+        double yScale = n / (yBounds[1] - yBounds[0]);
+        int rows = x.size();
+        for (int row = 0; row < rows; row++) {
+            double xv = x.getDouble(row);
+            double v = measured.getDouble(row);
+            if (Double.isNaN(xv) || Double.isNaN(v)) {
+                continue;
+            }
+            int cell = Math.min((int) ((xv - xBounds[0]) * xScale), n - 1);
+            if (twoDimensional) {
+                double yv = y.getDouble(row);
+                if (Double.isNaN(yv)) {
+                    continue;
+                }
+                cell += Math.min((int) ((yv - yBounds[0]) * yScale), n - 1) * n;
+            }
+            finest.count[cell]++;
+            finest.sum[cell] += v;
+            if (v < finest.min[cell]) {
+                finest.min[cell] = v;
+            }
+            if (v > finest.max[cell]) {
+                finest.max[cell] = v;
+            }
+        }
+
+        Level[] levels = new Level[maxLevel + 1];
+        levels[maxLevel] = finest;
+        for (int level = maxLevel - 1; level >= 0; level--) {
+            Level fine = levels[level + 1];
+            Level coarse = new Level(fine.nx / 2, twoDimensional ? fine.ny / 2 : 1);
+            for (int fy = 0; fy < fine.ny; fy++) {
+                for (int fx = 0; fx < fine.nx; fx++) {
+                    int cell = (twoDimensional ? (fy / 2) * coarse.nx : 0) + fx / 2;
+                    coarse.merge(cell, fine, fy * fine.nx + fx);
+                }
+            }
+            levels[level] = coarse;
+        }
+        return new BinnedAggregate(twoDimensional, xBounds[0], xBounds[1], yBounds[0], yBounds[1], levels);
+    }
+
+    public boolean isTwoDimensional() {
+        return twoDimensional;
+    }
+
+    public double xMin() { return xMin; }
+    public double xMax() { return xMax; }
+    public double yMin() { return yMin; }
+    public double yMax() { return yMax; }
+
+    // Histogram with the given bin count over [lo, hi]; NaN bounds mean the
+    // full extent of the data
+    public Bins query(int bins, double lo, double hi) {
+        return query(bins, 1, lo, hi, Double.NaN, Double.NaN);
+    }
+
+    public Bins query(int xBins, int yBins, double xLo, double xHi, double yLo, double yHi) {
+        xLo = Double.isNaN(xLo) ? xMin : xLo;
+        xHi = Double.isNaN(xHi) ? xMax : xHi;
+        yLo = Double.isNaN(yLo) || !twoDimensional ? yMin : yLo;
+        yHi = Double.isNaN(yHi) || !twoDimensional ? yMax : yHi;
+        if (!twoDimensional) {
+            yBins = 1;
+        }
+        Bins result = new Bins(xBins, yBins, xLo, xHi, yLo, yHi);
+        if (!(xHi > xLo) || !(yHi > yLo)) {
+            return result;
+        }
+
+        Level level = levels[chooseLevel(xBins, xHi - xLo, yBins, yHi - yLo)];
+        double tileWidth = (xMax - xMin) / level.nx;
+        double tileHeight = (yMax - yMin) / level.ny;
+        double xScale = xBins / (xHi - xLo);
+        double yScale = yBins / (yHi - yLo);
+        for (int ty = 0; ty < level.ny; ty++) {
+            int yBin = 0;
+            if (twoDimensional) {
+                double center = yMin + (ty + 0.5) * tileHeight;
+                if (center < yLo || center > yHi) {
+                    continue;
+                }
+                yBin = Math.min((int) ((center - yLo) * yScale), yBins - 1);
+            }
+            for (int tx = 0; tx < level.nx; tx++) {
+                int tile = ty * level.nx + tx;
+                if (level.count[tile] == 0) {
+                    continue;
+                }
+                double center = xMin + (tx + 0.5) * tileWidth;
+                if (center < xLo || center > xHi) {
+                    continue;
+                }
+                int cell = yBin * xBins + Math.min((int) ((center - xLo) * xScale), xBins - 1);
+                result.count[cell] += level.count[tile];
+                result.sum[cell] += level.sum[tile];
+                result.min[cell] = Math.min(result.min[cell], level.min[tile]);
+                result.max[cell] = Math.max(result.max[cell], level.max[tile]);
+            }
+        }
+        return result;
+    }
+
+    // Coarsest level whose tiles are at most a quarter of a requested bin
+    private int chooseLevel(int xBins, double xWindow, int yBins, double yWindow) {
+        for (int level = 0; level < levels.length; level++) {
+            boolean xFine = (xMax - xMin) / levels[level].nx <= xWindow / xBins / 4;
+            boolean yFine = !twoDimensional || (yMax - yMin) / levels[level].ny <= yWindow / yBins / 4;
+            if (xFine && yFine) {
+                return level;
+            }
+        }
+        return levels.length - 1;
+    }
+
+    // Data extent, widened when every value is equal so bins have a width
+    private static double[] bounds(ColumnarDataset.Summary summary) {
+        if (summary.count() == 0) {
+            return new double[] {0, 1};
+        }
+        double lo = summary.min();
+        double hi = summary.max();
+        if (hi <= lo) {
+            return new double[] {lo - 0.5, hi + 0.5};
+        }
+        return new double[] {lo, hi};
+    }
+}
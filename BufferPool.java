@@ -0,0 +1,170 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Reusable scratch buffers and zlib engines for the payload codecs.
+//
+// Pooled rather than thread-local: with virtual threads every command is
+// written by a thread of its own, so per-thread state would never be reused.
+// Buffers grow on demand and go back to the pool unless they are larger than
+// MAX_POOLED_BUFFER_BYTES; Deflaters and Inflaters are reset on release,
+// which keeps their native memory instead of allocating it per message.
+public final class BufferPool {
+
+    private static final int MAX_POOLED_BUFFERS = Integer.getInteger("viz.bufferPool.buffers", 16);
+    private static final int MAX_POOLED_BUFFER_BYTES =
+        Integer.getInteger("viz.bufferPool.maxBufferBytes", 4 * 1024 * 1024);
+    private static final int MAX_POOLED_ENGINES = 8;
+    private static final int MIN_BUFFER_BYTES = 8192;
+
+    private static final ArrayDeque<Buffer> buffers = new ArrayDeque<>();
+    private static final ArrayDeque<Deflater> fastDeflaters = new ArrayDeque<>();
+    private static final ArrayDeque<Deflater> gzipDeflaters = new ArrayDeque<>();
+    private static final ArrayDeque<Inflater> zlibInflaters = new ArrayDeque<>();
+    private static final ArrayDeque<Inflater> gzipInflaters = new ArrayDeque<>();
+
+    private static long buffersCreated;
+    private static long buffersReused;
+
+    private BufferPool() {
+    }
+
+    // A growable byte array; the valid bytes are array()[0, length())
+    public static final class Buffer {
+        private byte[] array;
+        private int length;
+
+        private Buffer(int capacity) {
+            array = new byte[Math.max(MIN_BUFFER_BYTES, capacity)];
+        }
+
+        public byte[] array() {
+            return array;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public void setLength(int length) {
+            this.length = length;
+        }
+
+        // At least capacity bytes, discarding the contents
+        public byte[] reserve(int capacity) {
+            length = 0;
+            if (array.length < capacity) {
+                array = new byte[capacity];
+            }
+            return array;
+        }
+
+        // Grows the array (by at least half), keeping its contents
+        public byte[] ensureCapacity(int capacity) {
+            if (array.length < capacity) {
+                array = Arrays.copyOf(array, Math.max(capacity, array.length + (array.length >> 1)));
+            }
+            return array;
+        }
+    }
+
+    public static Buffer acquire(int capacity) {
+        synchronized (buffers) {
+            Buffer buffer = buffers.pollLast();
+            if (buffer != null) {
+                buffersReused++;
+                buffer.reserve(capacity);
+                return buffer;
+            }
+            buffersCreated++;
+        }
+        return new Buffer(capacity);
+    }
+
+    public static void release(Buffer buffer) {
+        if (buffer == null || buffer.array.length > MAX_POOLED_BUFFER_BYTES) {
+            return;
+        }
+        synchronized (buffers) {
+            if (buffers.size() < MAX_POOLED_BUFFERS) {
+                buffers.addLast(buffer);
+            }
+        }
+    }
+
+    // Level 1 zlib (PayloadCodec.DEFLATE)
+    public static Deflater fastDeflater() {
+        Deflater deflater = poll(fastDeflaters);
+        return deflater != null ? deflater : new Deflater(Deflater.BEST_SPEED);
+    }
+
+    // Default level, raw deflate for hand-written GZIP framing
+    public static Deflater gzipDeflater() {
+        Deflater deflater = poll(gzipDeflaters);
+        return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    public static Inflater zlibInflater() {
+        Inflater inflater = poll(zlibInflaters);
+        return inflater != null ? inflater : new Inflater();
+    }
+
+    public static Inflater gzipInflater() {
+        Inflater inflater = poll(gzipInflaters);
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    public static void releaseFastDeflater(Deflater deflater) {
+        deflater.reset();
+        offerDeflater(fastDeflaters, deflater);
+    }
+
+    public static void releaseGzipDeflater(Deflater deflater) {
+        deflater.reset();
+        offerDeflater(gzipDeflaters, deflater);
+    }
+
+    public static void releaseZlibInflater(Inflater inflater) {
+        inflater.reset();
+        offerInflater(zlibInflaters, inflater);
+    }
+
+    public static void releaseGzipInflater(Inflater inflater) {
+        inflater.reset();
+        offerInflater(gzipInflaters, inflater);
+    }
+
+    public static String describe() {
+        synchronized (buffers) {
+            return String.format("buffers: %d created, %d reused, %d pooled", buffersCreated, buffersReused,
+                buffers.size());
+        }
+    }
+
+    private static <T> T poll(ArrayDeque<T> pool) {
+        synchronized (pool) {
+            return pool.pollLast();
+        }
+    }
+
+    private static void offerDeflater(ArrayDeque<Deflater> pool, Deflater deflater) {
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED_ENGINES) {
+                pool.addLast(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    private static void offerInflater(ArrayDeque<Inflater> pool, Inflater inflater) {
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED_ENGINES) {
+                pool.addLast(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+}
@@ -0,0 +1,105 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Thread model for client I/O and command dispatch.
+//
+// viz.threads=virtual runs every task on a virtual thread of its own, so a
+// slow socket write or a retry back-off only parks that task; platform uses
+// cached daemon threads; auto (the default) picks virtual when the runtime
+// has it. Virtual threads are looked up reflectively so the client still
+// builds and runs on Java 17.
+public final class ClientExecutors {
+
+    private static final String MODE = System.getProperty("viz.threads", "auto");
+
+    // Thread.Builder methods, null when virtual threads are off or missing
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method threadPerTask = null;
+        if (!MODE.equals("platform")) {
+            try {
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                builderName = builder.getMethod("name", String.class, long.class);
+                builderFactory = builder.getMethod("factory");
+                threadPerTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                // Preview builds (19/20) have the API but throw until enabled
+                ofVirtual.invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                if (MODE.equals("virtual")) {
+                    System.err.println("⚠️ Virtual threads unavailable, using platform threads: " + e);
+                }
+                ofVirtual = null;
+            }
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        THREAD_PER_TASK_EXECUTOR = threadPerTask;
+    }
+
+    private ClientExecutors() {
+    }
+
+    public static boolean isVirtual() {
+        return OF_VIRTUAL != null;
+    }
+
+    public static String describe() {
+        return isVirtual() ? "virtual threads" : "platform threads";
+    }
+
+    // Executor that starts every task right away on a new (or, for platform
+    // threads, idle pooled) thread; shutdownNow() interrupts whatever is
+    // still running
+    public static ExecutorService newTaskExecutor(String name) {
+        ThreadFactory virtual = virtualFactory(name);
+        if (virtual != null) {
+            try {
+                return (ExecutorService) THREAD_PER_TASK_EXECUTOR.invoke(null, virtual);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Virtual thread executor failed: " + e);
+            }
+        }
+        return Executors.newCachedThreadPool(platformFactory(name));
+    }
+
+    public static Thread startThread(String name, Runnable task) {
+        ThreadFactory virtual = virtualFactory(name);
+        Thread thread = (virtual != null ? virtual : platformFactory(name)).newThread(task);
+        thread.setName(name);
+        thread.start();
+        return thread;
+    }
+
+    private static ThreadFactory virtualFactory(String name) {
+        if (OF_VIRTUAL == null) {
+            return null;
+        }
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 1L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory platformFactory(String name) {
+        AtomicInteger counter = new AtomicInteger(1);
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
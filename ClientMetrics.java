@@ -0,0 +1,219 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+// Client-side metrics: a latency histogram and error count per command type,
+// bytes on the wire before and after compression (rolled up from every
+// connection's CodecStats), connects and reconnects, and gauges sampled when
+// read (pending requests, cache hit ratios).
+//
+// describe() feeds the stats panel; toPrometheus() renders the text
+// exposition format, served by serve() on a loopback port
+// (-Dviz.metrics.port) and/or written to a file (-Dviz.metrics.file) for a
+// node_exporter textfile collector.
+public final class ClientMetrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<Command.Type, LatencyHistogram> latencies = new EnumMap<>(Command.Type.class);
+    private final Map<Command.Type, AtomicLong> errors = new EnumMap<>(Command.Type.class);
+    private final CodecStats codecTotals = new CodecStats();
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong failedConnects = new AtomicLong();
+    private final Map<String, Gauge> gauges = new LinkedHashMap<>();
+
+    private static final class Gauge {
+        final String help;
+        final DoubleSupplier value;
+
+        Gauge(String help, DoubleSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    public ClientMetrics() {
+        for (Command.Type type : Command.Type.values()) {
+            latencies.put(type, new LatencyHistogram());
+            errors.put(type, new AtomicLong());
+        }
+    }
+
+    // Submit to completion, including time queued behind earlier requests
+    public void recordRequest(Command.Type type, long nanos, boolean failed) {
+        latencies.get(type).record(nanos);
+        if (failed) {
+            errors.get(type).incrementAndGet();
+        }
+    }
+
+    public void recordConnect() {
+        if (connects.getAndIncrement() > 0) {
+            reconnects.incrementAndGet();
+        }
+    }
+
+    public void recordFailedConnect() {
+        failedConnects.incrementAndGet();
+    }
+
+    // Parent for each new connection's CodecStats
+    public CodecStats codecTotals() {
+        return codecTotals;
+    }
+
+    // name is the metric name without the viz_client_ prefix
+    public synchronized void gauge(String name, String help, DoubleSupplier value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    public LatencyHistogram latency(Command.Type type) {
+        return latencies.get(type);
+    }
+
+    // Hits over lookups, 0 before the first lookup
+    public static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+    }
+
+    // Multi-line summary for the stats panel; command types never used are left out
+    public synchronized String describe() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Command.Type, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.count() > 0) {
+                long failed = errors.get(entry.getKey()).get();
+                text.append(String.format("%-13s %s%s%n", entry.getKey().name().toLowerCase(Locale.ROOT),
+                    histogram.describe(), failed > 0 ? " · " + failed + " errors" : ""));
+            }
+        }
+        if (text.length() == 0) {
+            text.append("No requests yet\n");
+        }
+        text.append(String.format("Sent %s → %s, received %s → %s%n",
+            CodecStats.formatBytes(codecTotals.sentRaw()), CodecStats.formatBytes(codecTotals.sentWire()),
+            CodecStats.formatBytes(codecTotals.receivedWire()), CodecStats.formatBytes(codecTotals.receivedRaw())));
+        text.append(String.format("Connects %d (reconnects %d, failed attempts %d)",
+            connects.get(), reconnects.get(), failedConnects.get()));
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            double value = entry.getValue().value.getAsDouble();
+            text.append(String.format(" · %s %s", entry.getKey().replace('_', ' '),
+                value == Math.rint(value) ? Long.toString((long) value) : String.format("%.2f", value)));
+        }
+        return text.toString();
+    }
+
+    public synchronized String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP viz_client_request_duration_seconds Time from submit to reply, by command type.\n");
+        out.append("# TYPE viz_client_request_duration_seconds summary\n");
+        for (Map.Entry<Command.Type, LatencyHistogram> entry : latencies.entrySet()) {
+            String type = entry.getKey().name().toLowerCase(Locale.ROOT);
+            LatencyHistogram histogram = entry.getValue();
+            for (double quantile : QUANTILES) {
+                sample(out, "viz_client_request_duration_seconds",
+                    "type=\"" + type + "\",quantile=\"" + quantile + "\"", histogram.percentileMillis(quantile) / 1000);
+            }
+            sample(out, "viz_client_request_duration_seconds_sum", "type=\"" + type + "\"", histogram.totalSeconds());
+            sample(out, "viz_client_request_duration_seconds_count", "type=\"" + type + "\"", histogram.count());
+        }
+
+        header(out, "viz_client_request_errors_total", "counter", "Requests that failed or got an error reply.");
+        for (Map.Entry<Command.Type, AtomicLong> entry : errors.entrySet()) {
+            sample(out, "viz_client_request_errors_total",
+                "type=\"" + entry.getKey().name().toLowerCase(Locale.ROOT) + "\"", entry.getValue().get());
+        }
+
+        header(out, "viz_client_payload_bytes_total", "counter",
+            "Framed payload bytes, raw (before compression) and on the wire (after).");
+        sample(out, "viz_client_payload_bytes_total", "direction=\"sent\",stage=\"raw\"", codecTotals.sentRaw());
+        sample(out, "viz_client_payload_bytes_total", "direction=\"sent\",stage=\"wire\"", codecTotals.sentWire());
+        sample(out, "viz_client_payload_bytes_total", "direction=\"received\",stage=\"raw\"",
+            codecTotals.receivedRaw());
+        sample(out, "viz_client_payload_bytes_total", "direction=\"received\",stage=\"wire\"",
+            codecTotals.receivedWire());
+
+        header(out, "viz_client_messages_total", "counter", "Framed messages.");
+        sample(out, "viz_client_messages_total", "direction=\"sent\"", codecTotals.sentMessages());
+        sample(out, "viz_client_messages_total", "direction=\"received\"", codecTotals.receivedMessages());
+
+        header(out, "viz_client_connects_total", "counter", "Successful logins.");
+        sample(out, "viz_client_connects_total", null, connects.get());
+        header(out, "viz_client_reconnects_total", "counter", "Successful logins after the first.");
+        sample(out, "viz_client_reconnects_total", null, reconnects.get());
+        header(out, "viz_client_connect_failures_total", "counter", "Failed connection attempts.");
+        sample(out, "viz_client_connect_failures_total", null, failedConnects.get());
+
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            String name = "viz_client_" + entry.getKey();
+            header(out, name, "gauge", entry.getValue().help);
+            sample(out, name, null, entry.getValue().value.getAsDouble());
+        }
+        return out.toString();
+    }
+
+    // Replaces the file in one step, so a collector never reads half of it
+    public void writeTo(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, toPrometheus().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // GET /metrics on the loopback interface only
+    public HttpServer serve(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            try (OutputStream body = exchange.getResponseBody()) {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] text = toPrometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, text.length);
+                body.write(text);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(formatValue(value)).append('\n');
+    }
+
+    private static String formatValue(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+            ? Long.toString((long) value) : String.format(Locale.ROOT, "%.6g", value);
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.concurrent.TimeUnit;
+
+// Per-connection compression accounting: raw vs. wire bytes and codec time
+// for every frame sent and received, so the CPU spent on a codec can be
+// weighed against the bandwidth it saves. With -Dviz.codec.log=true every
+// message is also logged as it is recorded. A connection's stats can roll up
+// into a parent (ClientMetrics keeps one across reconnects).
+public class CodecStats {
+
+    private static final boolean LOG_MESSAGES = Boolean.getBoolean("viz.codec.log");
+
+    private final CodecStats parent;
+
+    private long sentMessages;
+    private long sentRaw;
+    private long sentWire;
+    private long sentNanos;
+
+    private long receivedMessages;
+    private long receivedRaw;
+    private long receivedWire;
+    private long receivedNanos;
+
+    public CodecStats() {
+        this(null);
+    }
+
+    public CodecStats(CodecStats parent) {
+        this.parent = parent;
+    }
+
+    public void recordSent(int requestId, PayloadCodec codec, long raw, long wire, long nanos) {
+        addSent(raw, wire, nanos);
+        log("→", requestId, codec, raw, wire, nanos);
+    }
+
+    // For payloads inflated straight from the socket the time includes
+    // waiting on the network
+    public void recordReceived(int requestId, PayloadCodec codec, long raw, long wire, long nanos) {
+        addReceived(raw, wire, nanos);
+        log("←", requestId, codec, raw, wire, nanos);
+    }
+
+    public synchronized long sentMessages() {
+        return sentMessages;
+    }
+
+    public synchronized long sentRaw() {
+        return sentRaw;
+    }
+
+    public synchronized long sentWire() {
+        return sentWire;
+    }
+
+    public synchronized long receivedMessages() {
+        return receivedMessages;
+    }
+
+    public synchronized long receivedRaw() {
+        return receivedRaw;
+    }
+
+    public synchronized long receivedWire() {
+        return receivedWire;
+    }
+
+    // e.g. "sent 12 msgs, 3.1 KB → 1.2 KB (2.6x, 0.04 ms/msg); received ..."
+    public synchronized String describe() {
+        return "sent " + describe(sentMessages, sentRaw, sentWire, sentNanos) +
+            "; received " + describe(receivedMessages, receivedRaw, receivedWire, receivedNanos);
+    }
+
+    private void addSent(long raw, long wire, long nanos) {
+        synchronized (this) {
+            sentMessages++;
+            sentRaw += raw;
+            sentWire += wire;
+            sentNanos += nanos;
+        }
+        if (parent != null) {
+            parent.addSent(raw, wire, nanos);
+        }
+    }
+
+    private void addReceived(long raw, long wire, long nanos) {
+        synchronized (this) {
+            receivedMessages++;
+            receivedRaw += raw;
+            receivedWire += wire;
+            receivedNanos += nanos;
+        }
+        if (parent != null) {
+            parent.addReceived(raw, wire, nanos);
+        }
+    }
+
+    private static String describe(long messages, long raw, long wire, long nanos) {
+        return String.format("%d msgs, %s → %s (%.1fx, %.2f ms/msg)", messages,
+            formatBytes(raw), formatBytes(wire), ratio(raw, wire),
+            messages == 0 ? 0.0 : nanos / 1e6 / messages);
+    }
+
+    private static void log(String direction, int requestId, PayloadCodec codec, long raw, long wire, long nanos) {
+        if (LOG_MESSAGES) {
+            System.out.println(String.format("🗜️ %s #%d %s %s → %s (%.1fx) in %.2f ms", direction, requestId,
+                codec.name(), formatBytes(raw), formatBytes(wire), ratio(raw, wire),
+                nanos / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+    }
+
+    private static double ratio(long raw, long wire) {
+        return wire == 0 ? 1.0 : (double) raw / wire;
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
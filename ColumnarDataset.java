@@ -0,0 +1,739 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoublePredicate;
+import java.util.function.Function;
+
+// Client-side copy of the server DataFrame, one primitive array per column.
+//
+// Columns are double[], long[] or int[] arrays, or int[] codes into a string
+// dictionary, each with an optional null bitmap (bit set = missing, LSB first).
+// Accessors and kernels work on primitives only, so previews and statistics
+// never box a value. Row filters return selection vectors (sorted row
+// indices) that the kernels and select() accept; null means every row.
+//
+// Decoded from the binary reply to get_dataset (see _encode_dataset in
+// secure_server.py), all big-endian:
+//   int magic "VCOL", byte version, int rowCount, int columnCount
+//   per column: short nameLength, name (UTF-8), byte type,
+//     byte flags (version 2 only; bit 0 = null bitmap follows),
+//     [ceil(rowCount / 8) bitmap bytes], then
+//     'D'  rowCount float64 values (NaN = missing)
+//     'L'  rowCount int64 values
+//     'I'  rowCount int32 values (version 2)
+//     'S'  int dictionarySize, dictionary entries (int length + UTF-8),
+//          rowCount int32 codes (-1 = missing)
+public final class ColumnarDataset {
+
+    public static final int MAGIC = 0x56434F4C; // "VCOL"
+    public static final byte VERSION = 2;
+
+    public enum ColumnType { DOUBLE, LONG, INT, STRING }
+
+    public abstract static class Column {
+        private final String name;
+        final long[] nulls;
+
+        Column(String name, long[] nulls) {
+            this.name = name;
+            this.nulls = nulls;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public boolean isNull(int row) {
+            return nulls != null && (nulls[row >>> 6] & (1L << row)) != 0;
+        }
+
+        public boolean hasNulls() {
+            return nulls != null;
+        }
+
+        public int nullCount() {
+            if (nulls == null) {
+                return 0;
+            }
+            int count = 0;
+            for (long word : nulls) {
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+
+        public abstract int size();
+
+        public abstract ColumnType type();
+
+        public abstract boolean isNumeric();
+
+        // Numeric view of a row; NaN when missing or not numeric
+        public abstract double getDouble(int row);
+
+        // Display form used by the text previews
+        public abstract String format(int row);
+
+        // Approximate heap footprint, reported as memory_usage
+        public abstract long memoryUsage();
+
+        // Same as pandas dtypes so local stats read like the server's
+        public abstract String dtype();
+
+        abstract Column select(int[] rows);
+
+        long[] selectNulls(int[] rows) {
+            if (nulls == null) {
+                return null;
+            }
+            long[] selected = null;
+            for (int i = 0; i < rows.length; i++) {
+                if (isNull(rows[i])) {
+                    if (selected == null) {
+                        selected = newBitmap(rows.length);
+                    }
+                    setBit(selected, i);
+                }
+            }
+            return selected;
+        }
+
+        long bitmapBytes() {
+            return nulls != null ? 8L * nulls.length : 0;
+        }
+    }
+
+    // Count, sum, mean, std (sample), min and max of the non-null values
+    public static final class Summary {
+        private long count;
+        private double sum;
+        private double mean;
+        private double m2;
+        private double min = Double.NaN;
+        private double max = Double.NaN;
+
+        void add(double value) {
+            if (count == 0 || value < min) {
+                min = value;
+            }
+            if (count == 0 || value > max) {
+                max = value;
+            }
+            count++;
+            sum += value;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+
+        public long count() { return count; }
+        public double sum() { return sum; }
+        public double mean() { return count > 0 ? mean : Double.NaN; }
+        public double std() { return count > 1 ? Math.sqrt(m2 / (count - 1)) : Double.NaN; }
+        public double min() { return min; }
+        public double max() { return max; }
+    }
+
+    public abstract static class NumericColumn extends Column {
+
+        NumericColumn(String name, long[] nulls) {
+            super(name, nulls);
+        }
+
+        public boolean isNumeric() {
+            return true;
+        }
+
+        // Single pass over the selected rows, skipping nulls (and NaN)
+        public abstract Summary summarize(int[] rows);
+
+        public double min(int[] rows) { return summarize(rows).min(); }
+        public double max(int[] rows) { return summarize(rows).max(); }
+        public double sum(int[] rows) { return summarize(rows).sum(); }
+
+        // Equal-width bins over [min, max]; values outside are ignored and max
+        // itself falls into the last bin, like numpy.histogram
+        public long[] histogram(int bins, double min, double max, int[] rows) {
+            long[] counts = new long[bins];
+            double scale = max > min ? bins / (max - min) : 0;
+            int n = rows == null ? size() : rows.length;
+            for (int i = 0; i < n; i++) {
+                int row = rows == null ? i : rows[i];
+                double value = getDouble(row);
+                if (value >= min && value <= max) {
+                    counts[Math.min((int) ((value - min) * scale), bins - 1)]++;
+                }
+            }
+            return counts;
+        }
+
+        public long[] histogram(int bins, int[] rows) {
+            Summary summary = summarize(rows);
+            return summary.count() == 0 ? new long[bins] : histogram(bins, summary.min(), summary.max(), rows);
+        }
+
+        // Rows whose non-null value passes the predicate
+        public int[] where(DoublePredicate predicate) {
+            int[] rows = new int[size()];
+            int count = 0;
+            for (int row = 0; row < rows.length; row++) {
+                if (!isNull(row) && predicate.test(getDouble(row))) {
+                    rows[count++] = row;
+                }
+            }
+            return Arrays.copyOf(rows, count);
+        }
+
+        // Sorted copy of the non-null values, for quantiles
+        double[] sortedValues() {
+            double[] sorted = new double[size()];
+            int count = 0;
+            for (int row = 0; row < sorted.length; row++) {
+                double value = getDouble(row);
+                if (!isNull(row) && !Double.isNaN(value)) {
+                    sorted[count++] = value;
+                }
+            }
+            sorted = Arrays.copyOf(sorted, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    public static final class DoubleColumn extends NumericColumn {
+        private final double[] values;
+
+        DoubleColumn(String name, double[] values, long[] nulls) {
+            super(name, nulls);
+            this.values = values;
+        }
+
+        public ColumnType type() { return ColumnType.DOUBLE; }
+        public int size() { return values.length; }
+        public double getDouble(int row) { return isNull(row) ? Double.NaN : values[row]; }
+        public double[] values() { return values; }
+        public String dtype() { return "float64"; }
+        public long memoryUsage() { return 8L * values.length + bitmapBytes(); }
+
+        public String format(int row) {
+            return formatDouble(getDouble(row));
+        }
+
+        public Summary summarize(int[] rows) {
+            Summary summary = new Summary();
+            int n = rows == null ? values.length : rows.length;
+            for (int i = 0; i < n; i++) {
+                int row = rows == null ? i : rows[i];
+                double value = values[row];
+                if (!Double.isNaN(value) && !isNull(row)) {
+                    summary.add(value);
+                }
+            }
+            return summary;
+        }
+
+        Column select(int[] rows) {
+            double[] selected = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = values[rows[i]];
+            }
+            return new DoubleColumn(name(), selected, selectNulls(rows));
+        }
+    }
+
+    public static final class LongColumn extends NumericColumn {
+        private final long[] values;
+
+        LongColumn(String name, long[] values, long[] nulls) {
+            super(name, nulls);
+            this.values = values;
+        }
+
+        public ColumnType type() { return ColumnType.LONG; }
+        public int size() { return values.length; }
+        public double getDouble(int row) { return isNull(row) ? Double.NaN : values[row]; }
+        public long getLong(int row) { return values[row]; }
+        public long[] values() { return values; }
+        public String dtype() { return nulls != null ? "Int64" : "int64"; }
+        public long memoryUsage() { return 8L * values.length + bitmapBytes(); }
+
+        public String format(int row) {
+            return isNull(row) ? "<NA>" : Long.toString(values[row]);
+        }
+
+        public Summary summarize(int[] rows) {
+            Summary summary = new Summary();
+            int n = rows == null ? values.length : rows.length;
+            for (int i = 0; i < n; i++) {
+                int row = rows == null ? i : rows[i];
+                if (!isNull(row)) {
+                    summary.add(values[row]);
+                }
+            }
+            return summary;
+        }
+
+        Column select(int[] rows) {
+            long[] selected = new long[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = values[rows[i]];
+            }
+            return new LongColumn(name(), selected, selectNulls(rows));
+        }
+    }
+
+    public static final class IntColumn extends NumericColumn {
+        private final int[] values;
+
+        IntColumn(String name, int[] values, long[] nulls) {
+            super(name, nulls);
+            this.values = values;
+        }
+
+        public ColumnType type() { return ColumnType.INT; }
+        public int size() { return values.length; }
+        public double getDouble(int row) { return isNull(row) ? Double.NaN : values[row]; }
+        public int getInt(int row) { return values[row]; }
+        public int[] values() { return values; }
+        public String dtype() { return nulls != null ? "Int32" : "int32"; }
+        public long memoryUsage() { return 4L * values.length + bitmapBytes(); }
+
+        public String format(int row) {
+            return isNull(row) ? "<NA>" : Integer.toString(values[row]);
+        }
+
+        public Summary summarize(int[] rows) {
+            Summary summary = new Summary();
+            int n = rows == null ? values.length : rows.length;
+            for (int i = 0; i < n; i++) {
+                int row = rows == null ? i : rows[i];
+                if (!isNull(row)) {
+                    summary.add(values[row]);
+                }
+            }
+            return summary;
+        }
+
+        Column select(int[] rows) {
+            int[] selected = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = values[rows[i]];
+            }
+            return new IntColumn(name(), selected, selectNulls(rows));
+        }
+    }
+
+    public static final class StringColumn extends Column {
+        private final int[] codes;
+        private final String[] dictionary;
+
+        StringColumn(String name, int[] codes, String[] dictionary, long[] nulls) {
+            super(name, nulls);
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        public ColumnType type() { return ColumnType.STRING; }
+        public boolean isNumeric() { return false; }
+        public int size() { return codes.length; }
+        public double getDouble(int row) { return Double.NaN; }
+        public int code(int row) { return codes[row]; }
+        public int[] codes() { return codes; }
+        public String[] dictionary() { return dictionary; }
+        public String dtype() { return "object"; }
+
+        public boolean isNull(int row) {
+            return codes[row] < 0 || super.isNull(row);
+        }
+
+        public int nullCount() {
+            int count = 0;
+            for (int row = 0; row < codes.length; row++) {
+                if (isNull(row)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        // null when missing
+        public String get(int row) {
+            return isNull(row) ? null : dictionary[codes[row]];
+        }
+
+        public String format(int row) {
+            String value = get(row);
+            return value != null ? value : "NaN";
+        }
+
+        public long memoryUsage() {
+            long bytes = 4L * codes.length + bitmapBytes();
+            for (String value : dictionary) {
+                bytes += 40 + 2L * value.length();
+            }
+            return bytes;
+        }
+
+        // Rows equal to value; compares dictionary codes, not strings
+        public int[] whereEquals(String value) {
+            int code = Arrays.asList(dictionary).indexOf(value);
+            if (code < 0) {
+                return new int[0];
+            }
+            int[] rows = new int[codes.length];
+            int count = 0;
+            for (int row = 0; row < codes.length; row++) {
+                if (codes[row] == code && !super.isNull(row)) {
+                    rows[count++] = row;
+                }
+            }
+            return Arrays.copyOf(rows, count);
+        }
+
+        // Occurrences of each dictionary entry over the selected rows
+        public long[] valueCounts(int[] rows) {
+            long[] counts = new long[dictionary.length];
+            int n = rows == null ? codes.length : rows.length;
+            for (int i = 0; i < n; i++) {
+                int row = rows == null ? i : rows[i];
+                if (!isNull(row)) {
+                    counts[codes[row]]++;
+                }
+            }
+            return counts;
+        }
+
+        Column select(int[] rows) {
+            int[] selected = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = codes[rows[i]];
+            }
+            return new StringColumn(name(), selected, dictionary, selectNulls(rows));
+        }
+    }
+
+    private final int rowCount;
+    private final Map<String, Column> columns;
+    // Binned aggregates by column pair; the dataset is immutable, so they
+    // stay valid for its lifetime
+    private final Map<String, BinnedAggregate> aggregates = new ConcurrentHashMap<>();
+
+    private ColumnarDataset(int rowCount, Map<String, Column> columns) {
+        this.rowCount = rowCount;
+        this.columns = Collections.unmodifiableMap(columns);
+    }
+
+    public static ColumnarDataset of(int rowCount, List<Column> columns) {
+        Map<String, Column> byName = new LinkedHashMap<>();
+        for (Column column : columns) {
+            if (column.size() != rowCount) {
+                throw new IllegalArgumentException("Column " + column.name() + " has " + column.size()
+                    + " rows, expected " + rowCount);
+            }
+            byName.put(column.name(), column);
+        }
+        return new ColumnarDataset(rowCount, byName);
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public int columnCount() {
+        return columns.size();
+    }
+
+    public List<String> columnNames() {
+        return new ArrayList<>(columns.keySet());
+    }
+
+    public Column column(String name) {
+        return columns.get(name);
+    }
+
+    public List<Column> columns() {
+        return new ArrayList<>(columns.values());
+    }
+
+    public List<NumericColumn> numericColumns() {
+        List<NumericColumn> numeric = new ArrayList<>();
+        for (Column column : columns.values()) {
+            if (column.isNumeric()) {
+                numeric.add((NumericColumn) column);
+            }
+        }
+        return numeric;
+    }
+
+    public long memoryUsage() {
+        long bytes = 0;
+        for (Column column : columns.values()) {
+            bytes += column.memoryUsage();
+        }
+        return bytes;
+    }
+
+    // Binned aggregate of x (and y, when not null), built on first use
+    public BinnedAggregate aggregate(String x, String y) {
+        return aggregates.computeIfAbsent(y == null ? x : x + '\u0000' + y,
+            key -> BinnedAggregate.build(numeric(x), y == null ? null : numeric(y), null));
+    }
+
+    private NumericColumn numeric(String name) {
+        Column column = columns.get(name);
+        if (!(column instanceof NumericColumn)) {
+            throw new IllegalArgumentException("Not a numeric column: " + name);
+        }
+        return (NumericColumn) column;
+    }
+
+    // Rows of a numeric column whose value passes the predicate
+    public int[] where(String column, DoublePredicate predicate) {
+        return numeric(column).where(predicate);
+    }
+
+    // A new dataset holding only the given rows, in that order
+    public ColumnarDataset select(int[] rows) {
+        Map<String, Column> selected = new LinkedHashMap<>();
+        for (Column column : columns.values()) {
+            selected.put(column.name(), column.select(rows));
+        }
+        return new ColumnarDataset(rows.length, selected);
+    }
+
+    public ColumnarDataset head(int n) {
+        int[] rows = new int[Math.min(n, rowCount)];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        return select(rows);
+    }
+
+    // Plain-text table in the layout of DataFrame.to_string()
+    public String toText() {
+        List<Column> list = columns();
+        String[][] cells = new String[rowCount + 1][list.size() + 1];
+        cells[0][0] = "";
+        for (int c = 0; c < list.size(); c++) {
+            cells[0][c + 1] = list.get(c).name();
+        }
+        for (int row = 0; row < rowCount; row++) {
+            cells[row + 1][0] = Integer.toString(row);
+            for (int c = 0; c < list.size(); c++) {
+                cells[row + 1][c + 1] = list.get(c).format(row);
+            }
+        }
+        return layoutTable(cells, true);
+    }
+
+    // Local equivalent of df.describe() over the numeric columns
+    public String describeText() {
+        List<NumericColumn> numeric = numericColumns();
+        String[] statistics = {"count", "mean", "std", "min", "25%", "50%", "75%", "max"};
+        String[][] cells = new String[statistics.length + 1][numeric.size() + 1];
+        cells[0][0] = "";
+        for (int s = 0; s < statistics.length; s++) {
+            cells[s + 1][0] = statistics[s];
+        }
+        for (int c = 0; c < numeric.size(); c++) {
+            NumericColumn column = numeric.get(c);
+            Summary summary = column.summarize(null);
+            double[] sorted = column.sortedValues();
+            double[] values = {summary.count(), summary.mean(), summary.std(), summary.min(),
+                quantile(sorted, 0.25), quantile(sorted, 0.5), quantile(sorted, 0.75), summary.max()};
+            cells[0][c + 1] = column.name();
+            for (int s = 0; s < values.length; s++) {
+                cells[s + 1][c + 1] = formatDouble(values[s]);
+            }
+        }
+        return layoutTable(cells, false);
+    }
+
+    // Same JSON shape as the server's get_stats reply
+    public String statsJson() {
+        StringBuilder json = new StringBuilder("{\"shape\": [").append(rowCount).append(", ")
+            .append(columns.size()).append("], \"columns\": [");
+        appendJoined(json, columns.values(), column -> PlotRequest.quote(column.name()));
+        json.append("], \"dtypes\": {");
+        appendJoined(json, columns.values(),
+            column -> PlotRequest.quote(column.name()) + ": " + PlotRequest.quote(column.dtype()));
+        json.append("}, \"memory_usage\": ").append(memoryUsage()).append(", \"null_counts\": {");
+        appendJoined(json, columns.values(),
+            column -> PlotRequest.quote(column.name()) + ": " + column.nullCount());
+        return json.append("}}").toString();
+    }
+
+    public static ColumnarDataset decode(byte[] data, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a columnar dataset payload");
+            }
+            byte version = buffer.get();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported dataset version: " + version);
+            }
+            int rowCount = buffer.getInt();
+            int columnCount = buffer.getInt();
+            if (rowCount < 0 || columnCount < 0) {
+                throw new IOException("Corrupt dataset header");
+            }
+
+            Map<String, Column> columns = new LinkedHashMap<>();
+            for (int c = 0; c < columnCount; c++) {
+                String name = readString(buffer, buffer.getShort() & 0xFFFF);
+                byte type = buffer.get();
+                long[] nulls = null;
+                if (version >= 2 && (buffer.get() & 1) != 0) {
+                    nulls = readBitmap(buffer, rowCount);
+                }
+                switch (type) {
+                    case 'D': {
+                        double[] values = new double[rowCount];
+                        buffer.asDoubleBuffer().get(values);
+                        buffer.position(buffer.position() + rowCount * 8);
+                        columns.put(name, new DoubleColumn(name, values, nulls));
+                        break;
+                    }
+                    case 'L': {
+                        long[] values = new long[rowCount];
+                        buffer.asLongBuffer().get(values);
+                        buffer.position(buffer.position() + rowCount * 8);
+                        columns.put(name, new LongColumn(name, values, nulls));
+                        break;
+                    }
+                    case 'I': {
+                        int[] values = new int[rowCount];
+                        buffer.asIntBuffer().get(values);
+                        buffer.position(buffer.position() + rowCount * 4);
+                        columns.put(name, new IntColumn(name, values, nulls));
+                        break;
+                    }
+                    case 'S': {
+                        String[] dictionary = new String[buffer.getInt()];
+                        for (int i = 0; i < dictionary.length; i++) {
+                            dictionary[i] = readString(buffer, buffer.getInt());
+                        }
+                        int[] codes = new int[rowCount];
+                        buffer.asIntBuffer().get(codes);
+                        buffer.position(buffer.position() + rowCount * 4);
+                        columns.put(name, new StringColumn(name, codes, dictionary, nulls));
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown column type '" + (char) type + "' for " + name);
+                }
+            }
+            return new ColumnarDataset(rowCount, columns);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt dataset payload: " + e, e);
+        }
+    }
+
+    // Loads a local CSV file; see MappedCsvLoader for type inference and
+    // missing-value rules
+    public static ColumnarDataset readCsv(Path file) throws IOException {
+        return MappedCsvLoader.load(file).dataset();
+    }
+
+    static long[] newBitmap(int rows) {
+        return new long[(rows + 63) >>> 6];
+    }
+
+    static void setBit(long[] bitmap, int row) {
+        bitmap[row >>> 6] |= 1L << row;
+    }
+
+    private static long[] readBitmap(ByteBuffer buffer, int rowCount) {
+        long[] bitmap = newBitmap(rowCount);
+        int bytes = (rowCount + 7) >>> 3;
+        for (int i = 0; i < bytes; i++) {
+            bitmap[i >>> 3] |= (buffer.get() & 0xFFL) << ((i & 7) * 8);
+        }
+        return bitmap;
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    // Linear interpolation between closest ranks, pandas' default
+    private static double quantile(double[] sorted, double q) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        double position = q * (sorted.length - 1);
+        int lower = (int) Math.floor(position);
+        int upper = Math.min(lower + 1, sorted.length - 1);
+        return sorted[lower] + (sorted[upper] - sorted[lower]) * (position - lower);
+    }
+
+    static String formatDouble(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return (long) value + ".0";
+        }
+        String text = String.format("%.6f", value);
+        int end = text.length();
+        while (text.charAt(end - 1) == '0') {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    // Right-aligned columns; the first column is left-aligned for row labels
+    private static String layoutTable(String[][] cells, boolean rightAlignLabels) {
+        int columnCount = cells[0].length;
+        int[] widths = new int[columnCount];
+        for (String[] row : cells) {
+            for (int c = 0; c < columnCount; c++) {
+                widths[c] = Math.max(widths[c], row[c].length());
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        for (String[] row : cells) {
+            for (int c = 0; c < columnCount; c++) {
+                String cell = row[c];
+                boolean leftAlign = c == 0 && !rightAlignLabels;
+                if (c > 0) {
+                    text.append("  ");
+                }
+                if (leftAlign) {
+                    text.append(cell);
+                }
+                for (int pad = cell.length(); pad < widths[c]; pad++) {
+                    text.append(' ');
+                }
+                if (!leftAlign) {
+                    text.append(cell);
+                }
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void appendJoined(StringBuilder json, Iterable<Column> columns,
+                                     Function<Column, String> render) {
+        boolean first = true;
+        for (Column column : columns) {
+            if (!first) {
+                json.append(", ");
+            }
+            json.append(render.apply(column));
+            first = false;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+// A single request for the visualization server.
+//
+// The type mirrors the routing in SecureVisualizationServer._process_command
+// so callers (and later the metrics/cache layers) can tell commands apart
+// without re-parsing the text.
+public final class Command {
+
+    public enum Type {
+        EXIT,
+        CSV,
+        PLOT,
+        SUBSCRIBE,
+        UNSUBSCRIBE,
+        GET_COLUMNS,
+        GET_STATS,
+        GET_DATASET,
+        GET_PLOTLYJS,
+        CLEAR_CACHE,
+        PYTHON
+    }
+
+    private final String text;
+    private final Type type;
+
+    private Command(String text, Type type) {
+        this.text = text;
+        this.type = type;
+    }
+
+    public static Command of(String text) {
+        return new Command(text, classify(text));
+    }
+
+    public static Command plot(String plotConfigJson) {
+        return new Command("plot:" + plotConfigJson, Type.PLOT);
+    }
+
+    // Live mode: the server pushes rows appended to the CSV until unsubscribe
+    public static Command subscribe(String configJson) {
+        return new Command("subscribe:" + configJson, Type.SUBSCRIBE);
+    }
+
+    public String text() {
+        return text;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    private static Type classify(String text) {
+        if (text.equals("exit()") || text.equals("quit()")) {
+            return Type.EXIT;
+        } else if (text.endsWith(".csv")) {
+            return Type.CSV;
+        } else if (text.startsWith("plot:")) {
+            return Type.PLOT;
+        } else if (text.startsWith("subscribe:")) {
+            return Type.SUBSCRIBE;
+        } else if (text.equals("unsubscribe")) {
+            return Type.UNSUBSCRIBE;
+        } else if (text.equals("get_columns")) {
+            return Type.GET_COLUMNS;
+        } else if (text.equals("get_stats")) {
+            return Type.GET_STATS;
+        } else if (text.equals("get_dataset")) {
+            return Type.GET_DATASET;
+        } else if (text.equals("get_plotlyjs")) {
+            return Type.GET_PLOTLYJS;
+        } else if (text.equals("clear_cache")) {
+            return Type.CLEAR_CACHE;
+        }
+        return Type.PYTHON;
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + (text.length() > 80 ? text.substring(0, 80) + "..." : text);
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.Arrays;
+
+// Level-of-detail reduction for line, scatter and area charts.
+//
+// Large series are cut down to roughly two points per horizontal pixel before
+// they reach the WebView. Lines and areas use Largest-Triangle-Three-Buckets,
+// which keeps the visual shape; scatter plots keep the minimum and maximum y
+// of each bucket so outliers survive. Both work on row selections, so
+// FigureBuilder only serialises the chosen rows. _downsample in
+// secure_server.py implements the same rules for server-rendered plots.
+public final class Decimator {
+
+    private Decimator() {
+    }
+
+    public static boolean supports(String plotType) {
+        return plotType.equals("line_chart") || plotType.equals("scatter_plot") || plotType.equals("area_chart");
+    }
+
+    // Rows with non-null x and y inside [lo, hi], reduced to at most maxPoints.
+    // NaN bounds are open; non-numeric x columns are placed by row position.
+    public static int[] select(ColumnarDataset.Column x, ColumnarDataset.Column y, double lo, double hi,
+                               int maxPoints, boolean scatter) {
+        int[] rows = new int[x.size()];
+        int count = 0;
+        for (int row = 0; row < rows.length; row++) {
+            if (x.isNull(row) || y.isNull(row) || Double.isNaN(y.getDouble(row))) {
+                continue;
+            }
+            if (x.isNumeric()) {
+                double value = x.getDouble(row);
+                if (Double.isNaN(value) || value < lo || value > hi) {
+                    continue;
+                }
+            }
+            rows[count++] = row;
+        }
+        rows = Arrays.copyOf(rows, count);
+        if (count <= maxPoints) {
+            return rows;
+        }
+        return scatter ? minMax(y, rows, maxPoints) : lttb(x, y, rows, maxPoints);
+    }
+
+    // Largest-Triangle-Three-Buckets (Steinarsson, 2013). Keeps the first and
+    // last row and, from each bucket in between, the row forming the largest
+    // triangle with the previous pick and the next bucket's average.
+    static int[] lttb(ColumnarDataset.Column x, ColumnarDataset.Column y, int[] rows, int threshold) {
+        int n = rows.length;
+        if (threshold >= n || threshold < 3) {
+            return rows;
+        }
+        boolean numericX = x.isNumeric();
+        int[] sampled = new int[threshold];
+        int picked = 0;
+        sampled[picked++] = rows[0];
+
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int avgStart = (int) Math.floor((bucket + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((bucket + 2) * every) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = avgStart; i < avgEnd; i++) {
+                avgX += numericX ? x.getDouble(rows[i]) : rows[i];
+                avgY += y.getDouble(rows[i]);
+            }
+            int avgCount = Math.max(avgEnd - avgStart, 1);
+            avgX /= avgCount;
+            avgY /= avgCount;
+
+            int rangeStart = (int) Math.floor(bucket * every) + 1;
+            int rangeEnd = (int) Math.floor((bucket + 1) * every) + 1;
+            double ax = numericX ? x.getDouble(rows[a]) : rows[a];
+            double ay = y.getDouble(rows[a]);
+            double maxArea = -1;
+            int next = rangeStart;
+            for (int i = rangeStart; i < rangeEnd; i++) {
+                double px = numericX ? x.getDouble(rows[i]) : rows[i];
+                double area = Math.abs((ax - avgX) * (y.getDouble(rows[i]) - ay) - (ax - px) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = i;
+                }
+            }
+            sampled[picked++] = rows[next];
+            a = next;
+        }
+        sampled[picked++] = rows[n - 1];
+        return Arrays.copyOf(sampled, picked);
+    }
+
+    // Minimum and maximum y of each run of consecutive rows, in row order
+    static int[] minMax(ColumnarDataset.Column y, int[] rows, int maxPoints) {
+        int buckets = Math.max(maxPoints / 2, 1);
+        int[] sampled = new int[buckets * 2];
+        int picked = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int start = (int) ((long) bucket * rows.length / buckets);
+            int end = (int) ((long) (bucket + 1) * rows.length / buckets);
+            if (start >= end) {
+                continue;
+            }
+            int min = start;
+            int max = start;
+            for (int i = start + 1; i < end; i++) {
+                double value = y.getDouble(rows[i]);
+                if (value < y.getDouble(rows[min])) {
+                    min = i;
+                }
+                if (value > y.getDouble(rows[max])) {
+                    max = i;
+                }
+            }
+            sampled[picked++] = rows[Math.min(min, max)];
+            if (min != max) {
+                sampled[picked++] = rows[Math.max(min, max)];
+            }
+        }
+        return Arrays.copyOf(sampled, picked);
+    }
+}
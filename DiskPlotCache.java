@@ -0,0 +1,403 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Second plot cache tier on local disk, so rendered plots survive restarts.
+//
+// Plots are streamed GZIP-compressed into segment files (segment-NNNNNN.dat)
+// that roll over once they reach SEGMENT_BYTES. Each record is
+//   int magic, int keyLength, int dataLength, long createdMillis, long crc32,
+//   key bytes (UTF-8), data bytes (GZIP of the HTML or figure JSON)
+// with the CRC covering key and data. On open the index is rebuilt by
+// scanning record headers only; a bad header ends the scan of that segment
+// and a CRC mismatch on read drops the record, so corrupt segments are
+// skipped rather than failing the client. Eviction removes whole segments,
+// oldest first, once the total size or the age limit is exceeded.
+public class DiskPlotCache {
+
+    private static final int RECORD_MAGIC = 0x504C4F54; // "PLOT"
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8;
+    private static final long SEGMENT_BYTES = 16L * 1024 * 1024;
+    private static final int MAX_KEY_BYTES = 64 * 1024;
+    // Records whose compressed data is larger than this are read back into a spool file
+    private static final int INLINE_LIMIT_BYTES = 256 * 1024;
+    // Spool files of recent large hits, reused by later hits on the same key
+    private static final int SPOOLED_HITS = 8;
+
+    private static final class Location {
+        final long segment;
+        final long offset;
+        final int keyLength;
+        final int dataLength;
+        final long created;
+
+        Location(long segment, long offset, int keyLength, int dataLength, long created) {
+            this.segment = segment;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.dataLength = dataLength;
+            this.created = created;
+        }
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+
+    private final Map<String, Location> index = new HashMap<>();
+    private final TreeMap<Long, Long> segmentSizes = new TreeMap<>();
+    private final TreeMap<Long, Long> segmentNewest = new TreeMap<>();
+    private Location newest;
+    private long activeSegment;
+    private FileChannel activeChannel;
+    // Retained while listed, released when pushed out or the key is rewritten
+    private final LinkedHashMap<String, PlotSource> spooledHits = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits = 0;
+    private long misses = 0;
+    private long corruptRecords = 0;
+
+    public DiskPlotCache(Path directory, long maxBytes, long maxAgeMillis) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        Files.createDirectories(directory);
+        rebuildIndex();
+        evict();
+        // Always append to a fresh segment so a torn tail from a previous
+        // crash never hides records written in this session
+        openActiveSegment(segmentSizes.isEmpty() ? 1 : segmentSizes.lastKey() + 1);
+    }
+
+    // Returns the cached plot, or null on a miss or a corrupt record
+    public synchronized PlotSource get(String key) {
+        Location location = index.get(key);
+        if (location == null) {
+            misses++;
+            return null;
+        }
+        PlotSource plot = spooledHits.get(key);
+        if (plot != null) {
+            hits++;
+            return plot;
+        }
+        plot = read(location);
+        if (plot == null) {
+            index.remove(key);
+            misses++;
+            return null;
+        }
+        if (plot.isFile()) {
+            spooledHits.put(key, plot.retain());
+            if (spooledHits.size() > SPOOLED_HITS) {
+                Iterator<PlotSource> eldest = spooledHits.values().iterator();
+                eldest.next().release();
+                eldest.remove();
+            }
+        }
+        hits++;
+        return plot;
+    }
+
+    // The most recently written plot, used to show something on a warm start
+    public synchronized PlotSource latest() {
+        return newest != null ? read(newest) : null;
+    }
+
+    // Streams the plot through GZIP into the active segment, so spooled plots
+    // never have to be held in memory
+    public synchronized void put(String key, PlotSource plot) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_BYTES) {
+            return;
+        }
+        if (segmentSizes.getOrDefault(activeSegment, 0L) >= SEGMENT_BYTES) {
+            openActiveSegment(activeSegment + 1);
+        }
+
+        long offset = activeChannel.size();
+        long dataStart = offset + HEADER_SIZE + keyBytes.length;
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+
+        activeChannel.position(dataStart);
+        OutputStream channelOut = new FilterOutputStream(Channels.newOutputStream(activeChannel)) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                // Keep the segment channel open
+                flush();
+            }
+        };
+        try (InputStream in = plot.openStream();
+             GZIPOutputStream gzipStream = new GZIPOutputStream(
+                 new CheckedOutputStream(new BufferedOutputStream(channelOut, 65536), crc), 8192)) {
+            in.transferTo(gzipStream);
+        }
+        long dataLength = activeChannel.position() - dataStart;
+        if (dataLength > Integer.MAX_VALUE) {
+            activeChannel.truncate(offset);
+            throw new IOException("Plot too large for disk cache: " + dataLength + " bytes");
+        }
+
+        // The header goes in last, so a crash mid-write leaves an unreadable
+        // record that the next scan treats as a torn tail
+        long created = System.currentTimeMillis();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length);
+        header.putInt(RECORD_MAGIC)
+              .putInt(keyBytes.length)
+              .putInt((int) dataLength)
+              .putLong(created)
+              .putLong(crc.getValue())
+              .put(keyBytes)
+              .flip();
+        while (header.hasRemaining()) {
+            activeChannel.write(header, offset + header.position());
+        }
+
+        Location location = new Location(activeSegment, offset, keyBytes.length, (int) dataLength, created);
+        index.put(key, location);
+        dropSpooledHit(key);
+        newest = location;
+        segmentSizes.merge(activeSegment, HEADER_SIZE + keyBytes.length + dataLength, Long::sum);
+        segmentNewest.put(activeSegment, created);
+        evict();
+    }
+
+    public synchronized void clear() throws IOException {
+        closeActiveSegment();
+        for (Long segment : new ArrayList<>(segmentSizes.keySet())) {
+            Files.deleteIfExists(segmentPath(segment));
+        }
+        index.clear();
+        segmentSizes.clear();
+        segmentNewest.clear();
+        newest = null;
+        releaseSpooledHits();
+        openActiveSegment(1);
+    }
+
+    public synchronized void close() {
+        closeActiveSegment();
+        releaseSpooledHits();
+    }
+
+    private void dropSpooledHit(String key) {
+        PlotSource stale = spooledHits.remove(key);
+        if (stale != null) {
+            stale.release();
+        }
+    }
+
+    private void releaseSpooledHits() {
+        spooledHits.values().forEach(PlotSource::release);
+        spooledHits.clear();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized String describe() {
+        long total = 0;
+        for (long size : segmentSizes.values()) {
+            total += size;
+        }
+        return String.format("%d hits / %d misses / %d corrupt · %d plots, %.1f MB on disk",
+            hits, misses, corruptRecords, index.size(), total / (1024.0 * 1024.0));
+    }
+
+    private void rebuildIndex() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.dat")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring(8, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(segments);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        for (long segment : segments) {
+            try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+                long size = channel.size();
+                long offset = 0;
+                long segmentNewestMillis = 0;
+                while (offset + HEADER_SIZE <= size) {
+                    header.clear();
+                    readFully(channel, header, offset);
+                    header.flip();
+                    int magic = header.getInt();
+                    int keyLength = header.getInt();
+                    int dataLength = header.getInt();
+                    long created = header.getLong();
+                    if (magic != RECORD_MAGIC || keyLength <= 0 || keyLength > MAX_KEY_BYTES || dataLength < 0
+                            || offset + HEADER_SIZE + keyLength + dataLength > size) {
+                        corruptRecords++;
+                        System.err.println("Plot disk cache: skipping corrupt tail of segment " + segment
+                            + " at offset " + offset);
+                        break;
+                    }
+
+                    ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+                    readFully(channel, keyBuffer, offset + HEADER_SIZE);
+                    String key = new String(keyBuffer.array(), StandardCharsets.UTF_8);
+
+                    Location location = new Location(segment, offset, keyLength, dataLength, created);
+                    index.put(key, location);
+                    if (newest == null || created >= newest.created) {
+                        newest = location;
+                    }
+                    segmentNewestMillis = Math.max(segmentNewestMillis, created);
+                    offset += HEADER_SIZE + keyLength + dataLength;
+                }
+                segmentSizes.put(segment, size);
+                segmentNewest.put(segment, segmentNewestMillis);
+            } catch (IOException e) {
+                corruptRecords++;
+                System.err.println("Plot disk cache: unreadable segment " + segment + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private PlotSource read(Location location) {
+        try (FileChannel channel = FileChannel.open(segmentPath(location.segment), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, location.offset);
+            header.flip();
+            header.position(4 + 4 + 4 + 8);
+            long expectedCrc = header.getLong();
+
+            // Verify in chunks before inflating anything
+            long dataStart = location.offset + HEADER_SIZE + location.keyLength;
+            long end = dataStart + location.dataLength;
+            CRC32 crc = new CRC32();
+            ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+            for (long position = location.offset + HEADER_SIZE; position < end; ) {
+                chunk.clear();
+                chunk.limit((int) Math.min(chunk.capacity(), end - position));
+                int read = channel.read(chunk, position);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of segment");
+                }
+                crc.update(chunk.array(), 0, read);
+                position += read;
+            }
+            if (crc.getValue() != expectedCrc) {
+                corruptRecords++;
+                System.err.println("Plot disk cache: CRC mismatch in segment " + location.segment);
+                return null;
+            }
+
+            channel.position(dataStart);
+            InputStream data = new BoundedInputStream(Channels.newInputStream(channel), location.dataLength);
+            try (GZIPInputStream gzipStream = new GZIPInputStream(new BufferedInputStream(data, 65536), 8192)) {
+                // Figures are JSON objects, pages never start with '{'
+                if (location.dataLength <= INLINE_LIMIT_BYTES) {
+                    String text = new String(gzipStream.readAllBytes(), StandardCharsets.UTF_8);
+                    return text.startsWith("{") ? PlotSource.figure(text) : PlotSource.inline(text);
+                }
+                Path file = PlotSource.newSpoolFile();
+                boolean figure;
+                try {
+                    Files.copy(gzipStream, file, StandardCopyOption.REPLACE_EXISTING);
+                    try (InputStream in = Files.newInputStream(file)) {
+                        figure = in.read() == '{';
+                    }
+                } catch (IOException e) {
+                    Files.deleteIfExists(file);
+                    throw e;
+                }
+                return figure ? PlotSource.figureFile(file) : PlotSource.file(file);
+            }
+        } catch (IOException e) {
+            corruptRecords++;
+            return null;
+        }
+    }
+
+    // Drops whole segments, oldest first, until both limits hold. The active
+    // segment is only dropped when it alone breaks the age limit.
+    private void evict() throws IOException {
+        long total = 0;
+        for (long size : segmentSizes.values()) {
+            total += size;
+        }
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+
+        while (!segmentSizes.isEmpty()) {
+            long oldest = segmentSizes.firstKey();
+            boolean tooBig = total > maxBytes && oldest != activeSegment;
+            boolean tooOld = segmentNewest.getOrDefault(oldest, 0L) < cutoff;
+            if (!tooBig && !tooOld) {
+                break;
+            }
+            if (oldest == activeSegment) {
+                closeActiveSegment();
+            }
+            total -= segmentSizes.remove(oldest);
+            segmentNewest.remove(oldest);
+            index.values().removeIf(location -> location.segment == oldest);
+            if (newest != null && newest.segment == oldest) {
+                newest = null;
+            }
+            Files.deleteIfExists(segmentPath(oldest));
+        }
+        if (activeChannel == null && activeSegment > 0) {
+            openActiveSegment(activeSegment + 1);
+        }
+    }
+
+    private void openActiveSegment(long segment) throws IOException {
+        closeActiveSegment();
+        activeSegment = segment;
+        activeChannel = FileChannel.open(segmentPath(segment),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        segmentSizes.putIfAbsent(segment, activeChannel.size());
+        segmentNewest.putIfAbsent(segment, System.currentTimeMillis());
+    }
+
+    private void closeActiveSegment() {
+        if (activeChannel != null) {
+            try {
+                activeChannel.close();
+            } catch (IOException e) {
+                System.err.println("Plot disk cache: error closing segment: " + e.getMessage());
+            }
+            activeChannel = null;
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("segment-%06d.dat", segment));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of segment");
+            }
+        }
+    }
+}
@@ -0,0 +1,430 @@
+import java.util.List;
+
+// Builds Plotly figure JSON on the client from a ColumnarDataset, mirroring
+// the plot types of _create_advanced_plot in secure_server.py, so switching
+// axes or plot types in local rendering mode needs no round trip.
+public final class FigureBuilder {
+
+    private FigureBuilder() {
+    }
+
+    // Returns {"data": [...], "layout": {...}}; throws IllegalArgumentException
+    // for unknown plot types or missing columns
+    public static String build(ColumnarDataset dataset, PlotRequest request) {
+        return build(dataset, request, levelOfDetail(dataset, request));
+    }
+
+    // rows, when not null, limits the x/y traces to a selection of rows
+    public static String build(ColumnarDataset dataset, PlotRequest request, int[] rows) {
+        StringBuilder json = new StringBuilder(1024 + dataset.rowCount() * 16);
+        json.append("{\"data\": [");
+
+        String type = request.type();
+        switch (type) {
+            case "line_chart":
+                xyTrace(json, dataset, request, "scatter", ", \"mode\": \"lines\"", rows);
+                break;
+            case "scatter_plot":
+                xyTrace(json, dataset, request, "scatter", ", \"mode\": \"markers\"", rows);
+                break;
+            case "area_chart":
+                xyTrace(json, dataset, request, "scatter", ", \"mode\": \"lines\", \"fill\": \"tozeroy\"", rows);
+                break;
+            case "bar_chart":
+                xyTrace(json, dataset, request, "bar", "", null);
+                break;
+            case "box_plot":
+                xyTrace(json, dataset, request, "box", "", null);
+                break;
+            case "violin_plot":
+                xyTrace(json, dataset, request, "violin", ", \"box\": {\"visible\": true}", null);
+                break;
+            case "histogram":
+                if (require(dataset, request.x()).isNumeric()) {
+                    histogramTrace(json, histogramBins(dataset, request), request.x());
+                } else {
+                    json.append("{\"type\": \"histogram\", \"x\": ");
+                    appendValues(json, require(dataset, request.x()));
+                    json.append('}');
+                }
+                break;
+            case "density_heatmap":
+                densityTrace(json, densityBins(dataset, request));
+                break;
+            case "pie_chart":
+                json.append("{\"type\": \"pie\", \"labels\": ");
+                appendValues(json, require(dataset, request.x()));
+                json.append(", \"values\": ");
+                appendValues(json, require(dataset, request.y()));
+                json.append('}');
+                break;
+            case "3d_scatter":
+                json.append("{\"type\": \"scatter3d\", \"mode\": \"markers\", \"marker\": {\"size\": 4}, \"x\": ");
+                appendValues(json, require(dataset, request.x()));
+                json.append(", \"y\": ");
+                appendValues(json, require(dataset, request.y()));
+                json.append(", \"z\": ");
+                appendValues(json, require(dataset, request.z()));
+                json.append('}');
+                break;
+            case "heatmap":
+                correlationTrace(json, dataset);
+                break;
+            case "surface_plot":
+                surfaceTrace(json, dataset);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown plot type: " + type);
+        }
+
+        json.append("], \"layout\": {\"title\": {\"text\": ")
+            .append(PlotRequest.quote(request.title() != null ? request.title() : defaultTitle(type)))
+            .append("}, \"hovermode\": \"closest\", \"showlegend\": true, \"height\": 600")
+            .append(", \"font\": {\"size\": 12}, \"margin\": {\"l\": 50, \"r\": 50, \"t\": 50, \"b\": 50}")
+            .append(", \"paper_bgcolor\": \"white\", \"plot_bgcolor\": \"white\"");
+        if (type.equals("histogram")) {
+            json.append(", \"bargap\": 0");
+        }
+        if (request.x() != null && !type.equals("pie_chart") && !type.equals("heatmap") && !type.equals("surface_plot")) {
+            json.append(", \"xaxis\": {\"title\": {\"text\": ").append(PlotRequest.quote(request.x())).append('}');
+            if (request.hasXRange()) {
+                json.append(", \"range\": [").append(request.xMin()).append(", ").append(request.xMax()).append(']');
+            }
+            json.append('}');
+        }
+        if (request.y() != null && !type.equals("pie_chart") && !type.equals("heatmap") && !type.equals("surface_plot")) {
+            json.append(", \"yaxis\": {\"title\": {\"text\": ").append(PlotRequest.quote(request.y())).append("}}");
+        }
+        return json.append("}}").toString();
+    }
+
+    // Decimated rows for a request with a point budget, null for all rows
+    public static int[] levelOfDetail(ColumnarDataset dataset, PlotRequest request) {
+        if (request.maxPoints() <= 0 || request.y() == null) {
+            return null;
+        }
+        ColumnarDataset.Column x = require(dataset, request.x());
+        ColumnarDataset.Column y = require(dataset, request.y());
+        double lo = request.hasXRange() ? request.xMin() : Double.NEGATIVE_INFINITY;
+        double hi = request.hasXRange() ? request.xMax() : Double.POSITIVE_INFINITY;
+        return Decimator.select(x, y, lo, hi, request.maxPoints(), request.type().equals("scatter_plot"));
+    }
+
+    // Plotly.restyle update that refines trace 0 for the request's x range:
+    // re-decimated points, or re-binned histogram / density tiles
+    public static String zoomUpdate(ColumnarDataset dataset, PlotRequest request) {
+        if (request.type().equals("histogram")) {
+            BinnedAggregate.Bins bins = histogramBins(dataset, request);
+            StringBuilder json = new StringBuilder(64 + bins.nx() * 24).append("{\"x\": [");
+            appendCenters(json, bins, true);
+            json.append("], \"y\": [");
+            appendCounts(json, bins, 0);
+            json.append("], \"width\": [");
+            appendNumber(json, bins.xWidth());
+            return json.append("]}").toString();
+        }
+        if (request.type().equals("density_heatmap")) {
+            BinnedAggregate.Bins bins = densityBins(dataset, request);
+            StringBuilder json = new StringBuilder(64 + bins.nx() * bins.ny() * 8).append("{\"x\": [");
+            appendCenters(json, bins, true);
+            json.append("], \"y\": [");
+            appendCenters(json, bins, false);
+            json.append("], \"z\": [");
+            appendCountMatrix(json, bins);
+            return json.append("]}").toString();
+        }
+        return restyleUpdate(dataset, request, levelOfDetail(dataset, request));
+    }
+
+    // Plotly.restyle update replacing the x/y data of trace 0
+    private static String restyleUpdate(ColumnarDataset dataset, PlotRequest request, int[] rows) {
+        StringBuilder json = new StringBuilder(256 + (rows != null ? rows.length : dataset.rowCount()) * 24);
+        json.append("{\"x\": [");
+        appendValues(json, require(dataset, request.x()), rows);
+        json.append("], \"y\": [");
+        appendValues(json, require(dataset, request.y()), rows);
+        return json.append("]}").toString();
+    }
+
+    static final int DEFAULT_HISTOGRAM_BINS = 20;
+    static final int DEFAULT_DENSITY_BINS = 40;
+
+    private static BinnedAggregate.Bins histogramBins(ColumnarDataset dataset, PlotRequest request) {
+        int bins = request.bins() > 0 ? request.bins() : DEFAULT_HISTOGRAM_BINS;
+        return dataset.aggregate(request.x(), null).query(bins, request.xMin(), request.xMax());
+    }
+
+    private static BinnedAggregate.Bins densityBins(ColumnarDataset dataset, PlotRequest request) {
+        require(dataset, request.x());
+        require(dataset, request.y());
+        int bins = request.bins() > 0 ? request.bins() : DEFAULT_DENSITY_BINS;
+        return dataset.aggregate(request.x(), request.y())
+            .query(bins, bins, request.xMin(), request.xMax(), Double.NaN, Double.NaN);
+    }
+
+    // Pre-binned histogram drawn as touching bars
+    private static void histogramTrace(StringBuilder json, BinnedAggregate.Bins bins, String name) {
+        json.append("{\"type\": \"bar\", \"name\": ").append(PlotRequest.quote(name)).append(", \"x\": [");
+        appendCenters(json, bins, true);
+        json.append("], \"y\": [");
+        appendCounts(json, bins, 0);
+        json.append("], \"width\": ");
+        appendNumber(json, bins.xWidth());
+        json.append(", \"marker\": {\"line\": {\"width\": 0}}}");
+    }
+
+    private static void densityTrace(StringBuilder json, BinnedAggregate.Bins bins) {
+        json.append("{\"type\": \"heatmap\", \"colorscale\": \"Viridis\", \"x\": [");
+        appendCenters(json, bins, true);
+        json.append("], \"y\": [");
+        appendCenters(json, bins, false);
+        json.append("], \"z\": ");
+        appendCountMatrix(json, bins);
+        json.append('}');
+    }
+
+    private static void appendCenters(StringBuilder json, BinnedAggregate.Bins bins, boolean xAxis) {
+        int n = xAxis ? bins.nx() : bins.ny();
+        json.append('[');
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendNumber(json, xAxis ? bins.xCenter(i) : bins.yCenter(i));
+        }
+        json.append(']');
+    }
+
+    private static void appendCounts(StringBuilder json, BinnedAggregate.Bins bins, int yBin) {
+        json.append('[');
+        for (int i = 0; i < bins.nx(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(bins.count(i, yBin));
+        }
+        json.append(']');
+    }
+
+    // One row of counts per y bin, as Plotly heatmaps expect
+    private static void appendCountMatrix(StringBuilder json, BinnedAggregate.Bins bins) {
+        json.append('[');
+        for (int yBin = 0; yBin < bins.ny(); yBin++) {
+            if (yBin > 0) {
+                json.append(',');
+            }
+            appendCounts(json, bins, yBin);
+        }
+        json.append(']');
+    }
+
+    private static void xyTrace(StringBuilder json, ColumnarDataset dataset, PlotRequest request,
+                                String traceType, String extra, int[] rows) {
+        json.append("{\"type\": \"").append(traceType).append('"').append(extra).append(", \"x\": ");
+        appendValues(json, require(dataset, request.x()), rows);
+        if (request.y() != null) {
+            json.append(", \"y\": ");
+            appendValues(json, require(dataset, request.y()), rows);
+        }
+        json.append('}');
+    }
+
+    private static void correlationTrace(StringBuilder json, ColumnarDataset dataset) {
+        List<ColumnarDataset.NumericColumn> numeric = dataset.numericColumns();
+        int n = numeric.size();
+        double[][] corr = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            corr[i][i] = 1.0;
+            for (int j = i + 1; j < n; j++) {
+                corr[i][j] = corr[j][i] = pearson(numeric.get(i), numeric.get(j), dataset.rowCount());
+            }
+        }
+
+        json.append("{\"type\": \"heatmap\", \"colorscale\": \"RdBu\", \"reversescale\": true")
+            .append(", \"zmin\": -1, \"zmax\": 1, \"x\": ");
+        appendNames(json, numeric);
+        json.append(", \"y\": ");
+        appendNames(json, numeric);
+        json.append(", \"z\": [");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append('[');
+            for (int j = 0; j < n; j++) {
+                if (j > 0) {
+                    json.append(", ");
+                }
+                appendNumber(json, corr[i][j]);
+            }
+            json.append(']');
+        }
+        json.append("]}");
+    }
+
+    // Same shape as the server: first 10 rows of the first 3 numeric columns
+    private static void surfaceTrace(StringBuilder json, ColumnarDataset dataset) {
+        List<ColumnarDataset.NumericColumn> numeric = dataset.numericColumns();
+        if (numeric.size() < 3) {
+            throw new IllegalArgumentException("Need at least 3 numeric columns for surface plot");
+        }
+        json.append("{\"type\": \"surface\", \"z\": [");
+        int rows = Math.min(10, dataset.rowCount());
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) {
+                json.append(", ");
+            }
+            json.append('[');
+            for (int c = 0; c < 3; c++) {
+                if (c > 0) {
+                    json.append(", ");
+                }
+                appendNumber(json, numeric.get(c).getDouble(r));
+            }
+            json.append(']');
+        }
+        json.append("]}");
+    }
+
+    // Pairwise-complete Pearson correlation, like DataFrame.corr()
+    private static double pearson(ColumnarDataset.Column a, ColumnarDataset.Column b, int rows) {
+        double sumA = 0, sumB = 0, sumAA = 0, sumBB = 0, sumAB = 0;
+        int n = 0;
+        for (int r = 0; r < rows; r++) {
+            double x = a.getDouble(r);
+            double y = b.getDouble(r);
+            if (Double.isNaN(x) || Double.isNaN(y)) {
+                continue;
+            }
+            sumA += x;
+            sumB += y;
+            sumAA += x * x;
+            sumBB += y * y;
+            sumAB += x * y;
+            n++;
+        }
+        double cov = sumAB - sumA * sumB / n;
+        double varA = sumAA - sumA * sumA / n;
+        double varB = sumBB - sumB * sumB / n;
+        return n < 2 || varA <= 0 || varB <= 0 ? Double.NaN : cov / Math.sqrt(varA * varB);
+    }
+
+    private static ColumnarDataset.Column require(ColumnarDataset dataset, String name) {
+        ColumnarDataset.Column column = name != null ? dataset.column(name) : null;
+        if (column == null) {
+            throw new IllegalArgumentException("Column not found: " + name + ". Available columns: "
+                + dataset.columnNames());
+        }
+        return column;
+    }
+
+    private static void appendValues(StringBuilder json, ColumnarDataset.Column column) {
+        appendValues(json, column, null);
+    }
+
+    // Values of the selected rows (all rows when null), missing values as null
+    private static void appendValues(StringBuilder json, ColumnarDataset.Column column, int[] rows) {
+        int n = rows == null ? column.size() : rows.length;
+        json.append('[');
+        switch (column.type()) {
+            case DOUBLE: {
+                ColumnarDataset.DoubleColumn doubles = (ColumnarDataset.DoubleColumn) column;
+                for (int i = 0; i < n; i++) {
+                    if (i > 0) {
+                        json.append(',');
+                    }
+                    appendNumber(json, doubles.getDouble(rows == null ? i : rows[i]));
+                }
+                break;
+            }
+            case LONG: {
+                ColumnarDataset.LongColumn longs = (ColumnarDataset.LongColumn) column;
+                for (int i = 0; i < n; i++) {
+                    int row = rows == null ? i : rows[i];
+                    if (i > 0) {
+                        json.append(',');
+                    }
+                    if (longs.isNull(row)) {
+                        json.append("null");
+                    } else {
+                        json.append(longs.getLong(row));
+                    }
+                }
+                break;
+            }
+            case INT: {
+                ColumnarDataset.IntColumn ints = (ColumnarDataset.IntColumn) column;
+                for (int i = 0; i < n; i++) {
+                    int row = rows == null ? i : rows[i];
+                    if (i > 0) {
+                        json.append(',');
+                    }
+                    if (ints.isNull(row)) {
+                        json.append("null");
+                    } else {
+                        json.append(ints.getInt(row));
+                    }
+                }
+                break;
+            }
+            case STRING: {
+                ColumnarDataset.StringColumn strings = (ColumnarDataset.StringColumn) column;
+                // Quote each dictionary entry once, not once per row
+                String[] dictionary = strings.dictionary();
+                String[] quoted = new String[dictionary.length];
+                for (int i = 0; i < dictionary.length; i++) {
+                    quoted[i] = PlotRequest.quote(dictionary[i]);
+                }
+                int[] codes = strings.codes();
+                for (int i = 0; i < n; i++) {
+                    int row = rows == null ? i : rows[i];
+                    if (i > 0) {
+                        json.append(',');
+                    }
+                    json.append(strings.isNull(row) ? "null" : quoted[codes[row]]);
+                }
+                break;
+            }
+        }
+        json.append(']');
+    }
+
+    private static void appendNames(StringBuilder json, List<ColumnarDataset.NumericColumn> columns) {
+        json.append('[');
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append(PlotRequest.quote(columns.get(i).name()));
+        }
+        json.append(']');
+    }
+
+    private static void appendNumber(StringBuilder json, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            json.append("null");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            json.append((long) value);
+        } else {
+            json.append(value);
+        }
+    }
+
+    private static String defaultTitle(String type) {
+        switch (type) {
+            case "line_chart": return "Line Chart";
+            case "bar_chart": return "Bar Chart";
+            case "scatter_plot": return "Scatter Plot";
+            case "histogram": return "Histogram";
+            case "heatmap": return "Correlation Heatmap";
+            case "density_heatmap": return "Density Heatmap";
+            case "3d_scatter": return "3D Scatter Plot";
+            case "surface_plot": return "3D Surface Plot";
+            case "box_plot": return "Box Plot";
+            case "violin_plot": return "Violin Plot";
+            case "pie_chart": return "Pie Chart";
+            case "area_chart": return "Area Chart";
+            default: return "Data Visualization";
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+// Length-prefixed binary framing for the secure client protocol.
+//
+// Every frame is a 10 byte big-endian header followed by the raw payload:
+//   int  payload length
+//   byte message type   (TYPE_*)
+//   byte payload codec  (CODEC_*)
+//   int  request id     (echoed back by the server on the matching reply)
+//
+// Must stay in sync with FRAME_HEADER in secure_server.py.
+public final class FrameCodec {
+
+    public static final int HEADER_SIZE = 10;
+    public static final int MAX_PAYLOAD_SIZE = 256 * 1024 * 1024;
+
+    // Message types
+    public static final byte TYPE_COMMAND = 1;
+    public static final byte TYPE_RESPONSE = 2;
+    public static final byte TYPE_DATASET = 3;   // binary ColumnarDataset payload
+    public static final byte TYPE_TRACE = 4;     // trace id before a command, server timings before its reply
+
+    // Payload codecs
+    public static final byte CODEC_NONE = 0;
+    public static final byte CODEC_GZIP = 1;
+    public static final byte CODEC_DEFLATE = 2;  // zlib, level 1 (see PayloadCodec)
+
+    private FrameCodec() {
+    }
+
+    // A decoded frame. The payload is a view into the reader's buffer and is
+    // only valid until the next call to FrameReader.read(); it is null when
+    // only the header has been read.
+    public static final class Frame {
+        private byte type;
+        private byte codec;
+        private int requestId;
+        private byte[] payload;
+        private int length;
+
+        public byte type() { return type; }
+        public byte codec() { return codec; }
+        public int requestId() { return requestId; }
+        public byte[] payload() { return payload; }
+        public int length() { return length; }
+    }
+
+    // Reads frames with readFully into a single buffer that only grows when a
+    // larger payload arrives, so steady-state reads do not allocate.
+    public static final class FrameReader {
+        private static final int INITIAL_CAPACITY = 64 * 1024;
+
+        private final byte[] header = new byte[HEADER_SIZE];
+        private final Frame frame = new Frame();
+        private byte[] buffer = new byte[INITIAL_CAPACITY];
+
+        // Returns null on a clean end of stream between frames.
+        public Frame read(DataInputStream in) throws IOException {
+            Frame header = readHeader(in);
+            return header == null ? null : readPayload(in);
+        }
+
+        // Reads only the header; the caller must then either call
+        // readPayload() or fully consume payloadStream().
+        public Frame readHeader(DataInputStream in) throws IOException {
+            int first = in.read();
+            if (first == -1) {
+                return null;
+            }
+            header[0] = (byte) first;
+
+            // Once the first byte is in, a timeout or EOF would leave the
+            // stream out of sync, so both are fatal for the connection.
+            try {
+                in.readFully(header, 1, HEADER_SIZE - 1);
+            } catch (EOFException e) {
+                throw new IOException("Connection closed mid-frame", e);
+            } catch (SocketTimeoutException e) {
+                throw new IOException("Timed out mid-frame header", e);
+            }
+
+            int length = readInt(header, 0);
+            if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+                throw new IOException("Invalid frame length: " + length);
+            }
+            frame.type = header[4];
+            frame.codec = header[5];
+            frame.requestId = readInt(header, 6);
+            frame.payload = null;
+            frame.length = length;
+            return frame;
+        }
+
+        public Frame readPayload(DataInputStream in) throws IOException {
+            ensureCapacity(frame.length);
+            try {
+                in.readFully(buffer, 0, frame.length);
+            } catch (EOFException e) {
+                throw new IOException("Connection closed mid-frame", e);
+            } catch (SocketTimeoutException e) {
+                throw new IOException("Timed out mid-frame (" + frame.length + " byte payload)", e);
+            }
+            frame.payload = buffer;
+            return frame;
+        }
+
+        // The current frame's payload as a stream, for payloads too large to
+        // buffer. Closing it skips any unread remainder.
+        public InputStream payloadStream(DataInputStream in) {
+            return new BoundedInputStream(in, frame.length);
+        }
+
+        private void ensureCapacity(int length) {
+            if (buffer.length < length) {
+                int newCapacity = buffer.length;
+                while (newCapacity < length) {
+                    newCapacity = newCapacity << 1;
+                }
+                buffer = new byte[Math.min(newCapacity, MAX_PAYLOAD_SIZE)];
+            }
+        }
+    }
+
+    public static void writeFrame(DataOutputStream out, byte type, byte codec, int requestId,
+                                  byte[] payload, int offset, int length) throws IOException {
+        synchronized (out) {
+            appendFrame(out, type, codec, requestId, payload, offset, length);
+            out.flush();
+        }
+    }
+
+    // Buffers a frame without flushing. Callers hold the lock on out while
+    // appending frames that must stay adjacent, then flush once.
+    public static void appendFrame(DataOutputStream out, byte type, byte codec, int requestId,
+                                   byte[] payload, int offset, int length) throws IOException {
+        if (length > MAX_PAYLOAD_SIZE) {
+            throw new IOException("Frame payload too large: " + length);
+        }
+        out.writeInt(length);
+        out.writeByte(type);
+        out.writeByte(codec);
+        out.writeInt(requestId);
+        out.write(payload, offset, length);
+    }
+
+    private static int readInt(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 24) |
+               ((b[offset + 1] & 0xFF) << 16) |
+               ((b[offset + 2] & 0xFF) << 8) |
+               (b[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Fixed-size log-linear latency histogram in the style of HdrHistogram:
+// microsecond values below 32 get a bucket each, and every power of two
+// above that is split into 16 linear sub-buckets, so a percentile is within
+// about 6% of the true value from 1 µs up to days. Recording is lock-free
+// and allocation-free, cheap enough for every request.
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int MAX_MAGNITUDE = 40;                     // 2^40 µs ≈ 12 days
+    private static final long MAX_MICROS = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_MICROS) + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.min(MAX_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        counts.incrementAndGet(indexOf(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public double meanMillis() {
+        long n = count.get();
+        return n == 0 ? 0.0 : totalMicros.get() / 1000.0 / n;
+    }
+
+    public double totalSeconds() {
+        return totalMicros.get() / 1e6;
+    }
+
+    public double maxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    // Upper bound of the bucket holding the given quantile (0..1), in ms;
+    // never more than the largest value recorded
+    public double percentileMillis(double quantile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return maxMillis();
+    }
+
+    // e.g. "42 reqs · p50 3.1 ms · p99 18.0 ms · max 20.3 ms"
+    public String describe() {
+        if (count() == 0) {
+            return "no requests";
+        }
+        return String.format("%d reqs · p50 %.1f ms · p90 %.1f ms · p99 %.1f ms · max %.1f ms",
+            count(), percentileMillis(0.50), percentileMillis(0.90), percentileMillis(0.99), maxMillis());
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (micros >>> shift);
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
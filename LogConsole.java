@@ -0,0 +1,255 @@
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableListBase;
+import javafx.collections.WeakListChangeListener;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.control.TextField;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.stage.Stage;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Output console backed by a VizConsole. Each view is a ListView over the
+// buffer itself, so only the visible rows exist as nodes and an append is a
+// ring write plus one list change, however long the session has run. Any
+// thread may append: text is queued and applied on the FX thread by flush(),
+// which UiUpdateBatcher calls once per pulse. If the FX thread falls so far
+// behind that maxPending messages are waiting, further ones are dropped and
+// counted. Several views (main window, full screen) share one console.
+//
+// VizConsole is shared with the plain-socket clients, so build with their
+// common directory on the source path, e.g.
+//   javac -sourcepath .:implementation_i222050_i221981_i220566/common *.java
+public final class LogConsole {
+
+    private static final int HISTORY_MATCH_LIMIT = 2000;
+
+    private final VizConsole buffer;
+    private final Lines lines = new Lines();
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+    private final int maxPending;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger droppedSinceFlush = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // The buffer as an ObservableList; only read and changed on the FX thread
+    private final class Lines extends ObservableListBase<String> {
+        @Override
+        public String get(int index) {
+            return buffer.get(index);
+        }
+
+        @Override
+        public int size() {
+            return buffer.size();
+        }
+
+        void changed(int removed, int added) {
+            if (removed == 0 && added == 0) {
+                return;
+            }
+            beginChange();
+            if (removed > 0) {
+                // The lines are gone from the ring; listeners only need the count
+                nextRemove(0, Collections.<String>nCopies(removed, null));
+            }
+            if (added > 0) {
+                nextAdd(buffer.size() - added, buffer.size());
+            }
+            endChange();
+        }
+    }
+
+    // spillFile may be null to drop lines past the cap
+    public LogConsole(int maxLines, Path spillFile, int maxPending) {
+        this.buffer = new VizConsole(maxLines, spillFile);
+        this.maxPending = maxPending;
+    }
+
+    // False if the message was dropped because too many are waiting
+    public boolean append(String text) {
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            droppedSinceFlush.incrementAndGet();
+            dropped.incrementAndGet();
+            return false;
+        }
+        pending.add(text);
+        return true;
+    }
+
+    public boolean hasPending() {
+        return pendingCount.get() > 0 || droppedSinceFlush.get() > 0;
+    }
+
+    // Messages dropped since the start
+    public long dropped() {
+        return dropped.get();
+    }
+
+    // Applies everything queued as one list change. FX thread only.
+    public void flush() {
+        int before = buffer.size();
+        long evictedBefore = buffer.evictedLines();
+        String text;
+        while ((text = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            buffer.append(text);
+        }
+        int droppedNow = droppedSinceFlush.getAndSet(0);
+        if (droppedNow > 0) {
+            buffer.append("⚠️ " + droppedNow + " messages dropped while the UI was behind");
+        }
+        long evicted = buffer.evictedLines() - evictedBefore;
+        long added = evicted + buffer.size() - before;
+        // Lines that arrived and left within this batch were never shown
+        lines.changed((int) Math.min(evicted, before), (int) Math.min(added, buffer.size()));
+    }
+
+    // FX thread only; cleared lines go to the spill file like evicted ones
+    public void clear() {
+        flush();
+        int removed = buffer.size();
+        buffer.clear();
+        lines.changed(removed, 0);
+    }
+
+    // FX thread only
+    public String text() {
+        flush();
+        return buffer.text();
+    }
+
+    public void close() {
+        buffer.close();
+    }
+
+    // A new view with its own search bar. The list follows new output
+    // until a line is selected; Esc clears the selection and resumes.
+    public Region view(int fontSize) {
+        ListView<String> list = new ListView<>(lines);
+        list.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        list.setFixedCellSize(Math.round(fontSize * 1.6));
+        list.setStyle("-fx-font-family: 'Monospace'; -fx-font-size: " + fontSize + "px;");
+
+        Label status = new Label(buffer.describe());
+        status.setStyle("-fx-text-fill: #7f8c8d; -fx-font-size: 11px;");
+
+        ListChangeListener<String> follow = change -> {
+            if (list.getSelectionModel().isEmpty() && !lines.isEmpty()) {
+                list.scrollTo(lines.size() - 1);
+            }
+            status.setText(buffer.describe());
+        };
+        list.setOnKeyPressed(event -> {
+            if (event.isShortcutDown() && event.getCode() == KeyCode.C) {
+                ClipboardContent content = new ClipboardContent();
+                content.putString(String.join("\n", list.getSelectionModel().getSelectedItems()) + "\n");
+                Clipboard.getSystemClipboard().setContent(content);
+                event.consume();
+            } else if (event.getCode() == KeyCode.ESCAPE) {
+                list.getSelectionModel().clearSelection();
+                list.scrollTo(Math.max(0, lines.size() - 1));
+                event.consume();
+            }
+        });
+
+        TextField searchField = new TextField();
+        searchField.setPromptText("🔎 Search output (Enter: older, Shift+Enter: newer)");
+        Button olderBtn = new Button("▲");
+        Button newerBtn = new Button("▼");
+        Button historyBtn = new Button("📜 History");
+        historyBtn.setStyle("-fx-background-color: #7f8c8d; -fx-text-fill: white;");
+
+        Runnable findOlder = () -> find(list, status, searchField.getText(), true);
+        Runnable findNewer = () -> find(list, status, searchField.getText(), false);
+        searchField.setOnAction(e -> findOlder.run());
+        searchField.addEventFilter(KeyEvent.KEY_PRESSED, event -> {
+            if (event.getCode() == KeyCode.ENTER && event.isShiftDown()) {
+                findNewer.run();
+                event.consume();
+            }
+        });
+        olderBtn.setOnAction(e -> findOlder.run());
+        newerBtn.setOnAction(e -> findNewer.run());
+        historyBtn.setOnAction(e -> searchHistory(searchField.getText(), status));
+
+        HBox searchBar = new HBox(5, searchField, olderBtn, newerBtn, historyBtn, status);
+        searchBar.setAlignment(Pos.CENTER_LEFT);
+        searchBar.setPadding(new Insets(4, 0, 0, 0));
+        HBox.setHgrow(searchField, Priority.ALWAYS);
+
+        BorderPane view = new BorderPane(list);
+        view.setBottom(searchBar);
+        // Held by the view, so a closed full screen window can be collected
+        view.getProperties().put(LogConsole.class, follow);
+        lines.addListener(new WeakListChangeListener<>(follow));
+        return view;
+    }
+
+    private void find(ListView<String> list, Label status, String query, boolean older) {
+        flush();
+        int found = buffer.find(query, list.getSelectionModel().getSelectedIndex(), older);
+        if (found < 0) {
+            status.setText(query.isEmpty() ? buffer.describe()
+                : "No match in the last " + buffer.size() + " lines" + (buffer.spilledLines() > 0 ? ", try 📜 History" : ""));
+            return;
+        }
+        list.getSelectionModel().clearAndSelect(found);
+        list.scrollTo(Math.max(0, found - 3));
+        status.setText("Line " + buffer.lineNumber(found) + " · " + buffer.describe());
+    }
+
+    // Scans the spill file off the FX thread and lists the matches
+    private void searchHistory(String query, Label status) {
+        if (buffer.spilledLines() == 0) {
+            status.setText("No older output on disk yet · " + buffer.describe());
+            return;
+        }
+        status.setText("📜 Searching " + buffer.spilledLines() + " older lines...");
+        Callable<List<String>> search = buffer.historySearch(query, HISTORY_MATCH_LIMIT);
+        ClientExecutors.startThread("console-history-search", () -> {
+            try {
+                List<String> matches = search.call();
+                Platform.runLater(() -> {
+                    status.setText(matches.size() + " older matches · " + buffer.describe());
+                    showMatches(query, matches);
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> status.setText("⚠️ History search failed: " + e.getMessage()));
+            }
+        });
+    }
+
+    private void showMatches(String query, List<String> matches) {
+        ListView<String> results = new ListView<>();
+        results.getItems().setAll(matches);
+        results.setStyle("-fx-font-family: 'Monospace'; -fx-font-size: 12px;");
+        results.scrollTo(Math.max(0, matches.size() - 1));
+
+        Stage stage = new Stage();
+        stage.setTitle("📜 Older output matching \"" + query + "\"" +
+            (matches.size() == HISTORY_MATCH_LIMIT ? " (newest " + HISTORY_MATCH_LIMIT + ")" : ""));
+        stage.setScene(new Scene(results, 900, 450));
+        stage.show();
+    }
+}
@@ -0,0 +1,729 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+// Loads a local CSV into a ColumnarDataset without going through the server.
+//
+// The file is split into chunks at newline boundaries and each chunk is
+// memory-mapped and parsed on a ForkJoinPool. Numbers are parsed straight from
+// the mapped bytes and strings are dictionary-encoded per chunk, so only new
+// dictionary entries allocate. Column types are settled after parsing: a
+// column is int/long if every value was integral, double if every value was
+// numeric, otherwise string (chunks that guessed numeric are re-parsed).
+//
+// Like pandas.read_csv, empty cells and NA/NaN/null/N/A are missing values.
+// Quoted fields may contain commas and "" escapes but not line breaks.
+public final class MappedCsvLoader {
+
+    // Below this a single chunk is cheaper than splitting
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+    // Keeps every mapping well under the 2 GB MappedByteBuffer limit
+    private static final long MAX_CHUNK_BYTES = 64L << 20;
+
+    private static final int MODE_LONG = 0;
+    private static final int MODE_DOUBLE = 1;
+    private static final int MODE_STRING = 2;
+
+    public static final class Result {
+        private final ColumnarDataset dataset;
+        private final long bytes;
+        private final long nanos;
+        private final int chunks;
+
+        Result(ColumnarDataset dataset, long bytes, long nanos, int chunks) {
+            this.dataset = dataset;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.chunks = chunks;
+        }
+
+        public ColumnarDataset dataset() { return dataset; }
+        public long bytes() { return bytes; }
+        public long nanos() { return nanos; }
+        public int chunks() { return chunks; }
+
+        public double megabytesPerSecond() {
+            return nanos > 0 ? (bytes / (1024.0 * 1024.0)) / (nanos / 1e9) : 0;
+        }
+
+        public String describe() {
+            return String.format("%,d rows × %d columns, %.1f MB in %d ms (%.0f MB/s, %d chunks)",
+                dataset.rowCount(), dataset.columnCount(), bytes / (1024.0 * 1024.0),
+                nanos / 1_000_000, megabytesPerSecond(), chunks);
+        }
+    }
+
+    private MappedCsvLoader() {
+    }
+
+    public static Result load(Path file) throws IOException {
+        return load(file, ForkJoinPool.commonPool());
+    }
+
+    public static Result load(Path file, ForkJoinPool pool) throws IOException {
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                throw new IOException("Empty CSV file: " + file);
+            }
+
+            long headerEnd = nextLineStart(channel, 0, size);
+            MappedByteBuffer headerBytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerEnd);
+            String[] names = parseHeader(headerBytes);
+
+            long[] bounds = chunkBounds(channel, headerEnd, size, pool.getParallelism());
+            Chunk[] chunks = new Chunk[bounds.length - 1];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = new Chunk(channel, bounds[i], bounds[i + 1], names.length);
+            }
+            invokeAll(pool, chunks, chunk -> chunk.parse(null));
+
+            // Settle column types, then re-parse string columns that some
+            // chunks took for numbers
+            int[] modes = new int[names.length];
+            for (Chunk chunk : chunks) {
+                for (int c = 0; c < names.length; c++) {
+                    modes[c] = Math.max(modes[c], chunk.columns[c].mode);
+                }
+            }
+            invokeAll(pool, chunks, chunk -> {
+                boolean[] reparse = new boolean[names.length];
+                boolean any = false;
+                for (int c = 0; c < names.length; c++) {
+                    ColumnChunk part = chunk.columns[c];
+                    reparse[c] = modes[c] == MODE_STRING && (part.mode != MODE_STRING || part.stale);
+                    any |= reparse[c];
+                }
+                if (any) {
+                    chunk.parse(reparse);
+                }
+            });
+
+            ColumnarDataset dataset = merge(pool, names, modes, chunks);
+            return new Result(dataset, size, System.nanoTime() - started, chunks.length);
+        }
+    }
+
+    private interface ChunkAction {
+        void run(Chunk chunk) throws IOException;
+    }
+
+    private static void invokeAll(ForkJoinPool pool, Chunk[] chunks, ChunkAction action) throws IOException {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            tasks.add(new RecursiveAction() {
+                protected void compute() {
+                    try {
+                        action.run(chunk);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        try {
+            pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null && !(cause instanceof IOException)) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw e;
+        }
+    }
+
+    // Nominal chunk starts, each moved forward to the next line start
+    private static long[] chunkBounds(FileChannel channel, long start, long size, int parallelism)
+            throws IOException {
+        long body = size - start;
+        long target = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, body / (4L * parallelism) + 1));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        long position = start + target;
+        while (position < size) {
+            long lineStart = nextLineStart(channel, position, size);
+            if (lineStart >= size) {
+                break;
+            }
+            bounds.add(lineStart);
+            position = lineStart + target;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // Offset just past the first '\n' at or after position, or size
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        long window = 64 * 1024;
+        while (position < size) {
+            long length = Math.min(window, size - position);
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int i = 0; i < length; i++) {
+                if (bytes.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += length;
+        }
+        return size;
+    }
+
+    private static String[] parseHeader(MappedByteBuffer bytes) {
+        int start = 0;
+        int end = bytes.limit();
+        if (end >= 3 && (bytes.get(0) & 0xFF) == 0xEF && (bytes.get(1) & 0xFF) == 0xBB
+                && (bytes.get(2) & 0xFF) == 0xBF) {
+            start = 3;
+        }
+        List<String> names = new ArrayList<>();
+        int fieldStart = start;
+        boolean quoted = false;
+        for (int i = start; i <= end; i++) {
+            byte b = i < end ? bytes.get(i) : (byte) '\n';
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (!quoted && (b == ',' || b == '\n')) {
+                String name = decodeField(bytes, fieldStart, i).trim();
+                if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+                    name = name.substring(1, name.length() - 1).replace("\"\"", "\"");
+                }
+                names.add(name.trim());
+                fieldStart = i + 1;
+                if (b == '\n') {
+                    break;
+                }
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    // One column of one chunk. Values are held as long bits: plain longs while
+    // every value is integral, Double.doubleToRawLongBits once a fraction
+    // shows up, dictionary codes in string mode.
+    private static final class ColumnChunk {
+        int mode = MODE_LONG;
+        long[] values = new long[1024];
+        long[] nulls;
+        int rows;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        ByteDictionary dictionary;
+        // Turned into a string column after rows were parsed as numbers;
+        // values are dropped until the second pass re-parses the chunk
+        boolean stale;
+
+        void reset(int newMode) {
+            mode = newMode;
+            rows = 0;
+            nulls = null;
+            stale = false;
+            if (newMode == MODE_STRING) {
+                dictionary = new ByteDictionary();
+            }
+        }
+
+        void switchToStrings() {
+            boolean fresh = rows == 0;
+            reset(MODE_STRING);
+            stale = !fresh;
+        }
+
+        void add(long value) {
+            if (rows == values.length) {
+                values = Arrays.copyOf(values, rows * 2);
+            }
+            values[rows++] = value;
+        }
+
+        void addNull() {
+            if (stale) {
+                return;
+            }
+            int word = rows >>> 6;
+            if (nulls == null) {
+                nulls = new long[Math.max(word + 1, (values.length + 63) >>> 6)];
+            } else if (word >= nulls.length) {
+                nulls = Arrays.copyOf(nulls, Math.max(word + 1, nulls.length * 2));
+            }
+            nulls[word] |= 1L << rows;
+            add(mode == MODE_DOUBLE ? Double.doubleToRawLongBits(Double.NaN) : mode == MODE_STRING ? -1 : 0);
+        }
+
+        void switchToDouble() {
+            for (int i = 0; i < rows; i++) {
+                values[i] = Double.doubleToRawLongBits(isNull(i) ? Double.NaN : (double) values[i]);
+            }
+            mode = MODE_DOUBLE;
+        }
+
+        boolean isNull(int row) {
+            return nulls != null && (row >>> 6) < nulls.length && (nulls[row >>> 6] & (1L << row)) != 0;
+        }
+    }
+
+    private static final class Chunk {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        final ColumnChunk[] columns;
+        int rows;
+
+        Chunk(FileChannel channel, long start, long end, int columnCount) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.columns = new ColumnChunk[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                columns[c] = new ColumnChunk();
+            }
+        }
+
+        // Parses every column, or only the flagged ones in string mode
+        void parse(boolean[] stringsOnly) throws IOException {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            for (int c = 0; c < columns.length; c++) {
+                if (stringsOnly != null && stringsOnly[c]) {
+                    columns[c].reset(MODE_STRING);
+                }
+            }
+
+            int limit = bytes.limit();
+            int position = 0;
+            int rowCount = 0;
+            while (position < limit) {
+                int lineEnd = position;
+                while (lineEnd < limit && bytes.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int contentEnd = lineEnd > position && bytes.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (contentEnd > position) {
+                    parseLine(bytes, position, contentEnd, stringsOnly);
+                    rowCount++;
+                }
+                position = lineEnd + 1;
+            }
+            rows = rowCount;
+        }
+
+        private void parseLine(MappedByteBuffer bytes, int position, int end, boolean[] stringsOnly) {
+            int fieldStart = position;
+            int column = 0;
+            boolean quoted = false;
+            for (int i = position; i <= end && column < columns.length; i++) {
+                byte b = i < end ? bytes.get(i) : (byte) ',';
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == ',' && !quoted) {
+                    if (stringsOnly == null || stringsOnly[column]) {
+                        addField(columns[column], bytes, fieldStart, i);
+                    }
+                    column++;
+                    fieldStart = i + 1;
+                }
+            }
+            // Short rows are padded with missing values
+            for (; column < columns.length; column++) {
+                if (stringsOnly == null || stringsOnly[column]) {
+                    columns[column].addNull();
+                }
+            }
+        }
+
+        private static void addField(ColumnChunk column, MappedByteBuffer bytes, int start, int end) {
+            while (start < end && bytes.get(start) == ' ') {
+                start++;
+            }
+            while (end > start && bytes.get(end - 1) == ' ') {
+                end--;
+            }
+            if (isNullToken(bytes, start, end)) {
+                column.addNull();
+                return;
+            }
+            boolean quoted = end - start >= 2 && bytes.get(start) == '"' && bytes.get(end - 1) == '"';
+            if (quoted) {
+                start++;
+                end--;
+            }
+
+            if (column.mode == MODE_LONG) {
+                long value = parseLong(bytes, start, end);
+                if (value != NOT_A_LONG) {
+                    column.add(value);
+                    column.min = Math.min(column.min, value);
+                    column.max = Math.max(column.max, value);
+                    return;
+                }
+                double parsed = parseDouble(bytes, start, end);
+                if (!Double.isNaN(parsed)) {
+                    column.switchToDouble();
+                    column.add(Double.doubleToRawLongBits(parsed));
+                    return;
+                }
+                column.switchToStrings();
+            } else if (column.mode == MODE_DOUBLE) {
+                double parsed = parseDouble(bytes, start, end);
+                if (!Double.isNaN(parsed)) {
+                    column.add(Double.doubleToRawLongBits(parsed));
+                    return;
+                }
+                column.switchToStrings();
+            }
+            if (!column.stale) {
+                column.add(column.dictionary.code(bytes, start, end, quoted));
+            }
+        }
+    }
+
+    private static final long NOT_A_LONG = Long.MIN_VALUE;
+
+    // Optional sign and up to 18 digits; NOT_A_LONG otherwise
+    private static long parseLong(MappedByteBuffer bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return NOT_A_LONG;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_A_LONG;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Decimal with optional fraction and exponent; NaN when not a number.
+    // Up to 15 significant digits and |exponent| <= 22 are exact with one
+    // multiply or divide; anything longer falls back to Double.parseDouble.
+    private static double parseDouble(MappedByteBuffer bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            byte b = bytes.get(i);
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (seenPoint) {
+                        scale--;
+                    }
+                } else if (!seenPoint) {
+                    scale++;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!seenDigit) {
+            return Double.NaN;
+        }
+        if (i < end) {
+            byte b = bytes.get(i);
+            if (b != 'e' && b != 'E') {
+                return Double.NaN;
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+                negativeExponent = bytes.get(i) == '-';
+                i++;
+            }
+            if (i == end) {
+                return Double.NaN;
+            }
+            int exponent = 0;
+            for (; i < end; i++) {
+                int digit = bytes.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return Double.NaN;
+                }
+                exponent = Math.min(exponent * 10 + digit, 10_000);
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        double value;
+        if (digits <= 15 && scale >= -22 && scale <= 22) {
+            value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+        } else {
+            value = Double.parseDouble(decodeField(bytes, start, end));
+            return value;
+        }
+        return negative ? -value : value;
+    }
+
+    private static final byte[][] NULL_TOKENS = {
+        "NA".getBytes(StandardCharsets.US_ASCII), "NaN".getBytes(StandardCharsets.US_ASCII),
+        "nan".getBytes(StandardCharsets.US_ASCII), "null".getBytes(StandardCharsets.US_ASCII),
+        "N/A".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    private static boolean isNullToken(MappedByteBuffer bytes, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return true;
+        }
+        if (length > 4) {
+            return false;
+        }
+        for (byte[] token : NULL_TOKENS) {
+            if (token.length == length && regionEquals(bytes, start, token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(MappedByteBuffer bytes, int start, byte[] other) {
+        for (int i = 0; i < other.length; i++) {
+            if (bytes.get(start + i) != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String decodeField(MappedByteBuffer bytes, int start, int end) {
+        byte[] raw = new byte[end - start];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = bytes.get(start + i);
+        }
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    // Open-addressing map from raw field bytes to chunk-local codes; lookups
+    // compare against the mapped bytes, so repeated values never allocate
+    private static final class ByteDictionary {
+        private int[] slots = new int[64];
+        private byte[][] keys = new byte[16][];
+        private int[] hashes = new int[16];
+        final List<String> values = new ArrayList<>();
+
+        ByteDictionary() {
+            Arrays.fill(slots, -1);
+        }
+
+        int code(MappedByteBuffer bytes, int start, int end, boolean quoted) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + bytes.get(i);
+            }
+            int mask = slots.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                int code = slots[slot];
+                if (code < 0) {
+                    return insert(slot, hash, bytes, start, end, quoted);
+                }
+                if (hashes[code] == hash && keys[code].length == end - start && regionEquals(bytes, start, keys[code])) {
+                    return code;
+                }
+            }
+        }
+
+        private int insert(int slot, int hash, MappedByteBuffer bytes, int start, int end, boolean quoted) {
+            int code = values.size();
+            if (code == keys.length) {
+                keys = Arrays.copyOf(keys, code * 2);
+                hashes = Arrays.copyOf(hashes, code * 2);
+            }
+            byte[] key = new byte[end - start];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = bytes.get(start + i);
+            }
+            keys[code] = key;
+            hashes[code] = hash;
+            String value = decodeField(bytes, start, end);
+            values.add(quoted ? value.replace("\"\"", "\"") : value);
+            slots[slot] = code;
+            if (values.size() * 2 > slots.length) {
+                rehash();
+            }
+            return code;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            Arrays.fill(slots, -1);
+            int mask = slots.length - 1;
+            for (int code = 0; code < values.size(); code++) {
+                int slot = mix(hashes[code]) & mask;
+                while (slots[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = code;
+            }
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private static ColumnarDataset merge(ForkJoinPool pool, String[] names, int[] modes, Chunk[] chunks)
+            throws IOException {
+        int[] offsets = new int[chunks.length + 1];
+        for (int i = 0; i < chunks.length; i++) {
+            long total = (long) offsets[i] + chunks[i].rows;
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IOException("CSV has more rows than a Java array can hold");
+            }
+            offsets[i + 1] = (int) total;
+        }
+        int rowCount = offsets[chunks.length];
+
+        List<ColumnarDataset.Column> columns = new ArrayList<>();
+        for (int c = 0; c < names.length; c++) {
+            final int column = c;
+            long[] nulls = null;
+            for (Chunk chunk : chunks) {
+                if (chunk.columns[c].nulls != null) {
+                    nulls = ColumnarDataset.newBitmap(rowCount);
+                    break;
+                }
+            }
+            final long[] bitmap = nulls;
+
+            if (modes[c] == MODE_STRING) {
+                // Global codes follow first appearance across chunks, like pandas.factorize
+                Map<String, Integer> globalCodes = new HashMap<>();
+                List<String> dictionary = new ArrayList<>();
+                int[][] remap = new int[chunks.length][];
+                for (int i = 0; i < chunks.length; i++) {
+                    List<String> local = chunks[i].columns[c].dictionary.values;
+                    remap[i] = new int[local.size()];
+                    for (int code = 0; code < local.size(); code++) {
+                        Integer global = globalCodes.get(local.get(code));
+                        if (global == null) {
+                            global = dictionary.size();
+                            globalCodes.put(local.get(code), global);
+                            dictionary.add(local.get(code));
+                        }
+                        remap[i][code] = global;
+                    }
+                }
+                int[] codes = new int[rowCount];
+                copyChunks(pool, chunks, offsets, (i, chunk, offset) -> {
+                    ColumnChunk part = chunk.columns[column];
+                    for (int row = 0; row < chunk.rows; row++) {
+                        int code = (int) part.values[row];
+                        codes[offset + row] = code < 0 ? -1 : remap[i][code];
+                    }
+                    copyNulls(part, bitmap, offset, chunk.rows);
+                });
+                columns.add(new ColumnarDataset.StringColumn(names[c], codes,
+                    dictionary.toArray(new String[0]), bitmap));
+            } else if (modes[c] == MODE_DOUBLE) {
+                double[] values = new double[rowCount];
+                copyChunks(pool, chunks, offsets, (i, chunk, offset) -> {
+                    ColumnChunk part = chunk.columns[column];
+                    for (int row = 0; row < chunk.rows; row++) {
+                        values[offset + row] = part.mode == MODE_DOUBLE
+                            ? Double.longBitsToDouble(part.values[row])
+                            : part.isNull(row) ? Double.NaN : (double) part.values[row];
+                    }
+                    copyNulls(part, bitmap, offset, chunk.rows);
+                });
+                columns.add(new ColumnarDataset.DoubleColumn(names[c], values, bitmap));
+            } else {
+                long min = 0;
+                long max = 0;
+                for (Chunk chunk : chunks) {
+                    if (chunk.columns[c].min <= chunk.columns[c].max) {
+                        min = Math.min(min, chunk.columns[c].min);
+                        max = Math.max(max, chunk.columns[c].max);
+                    }
+                }
+                if (min >= Integer.MIN_VALUE && max <= Integer.MAX_VALUE) {
+                    int[] values = new int[rowCount];
+                    copyChunks(pool, chunks, offsets, (i, chunk, offset) -> {
+                        ColumnChunk part = chunk.columns[column];
+                        for (int row = 0; row < chunk.rows; row++) {
+                            values[offset + row] = (int) part.values[row];
+                        }
+                        copyNulls(part, bitmap, offset, chunk.rows);
+                    });
+                    columns.add(new ColumnarDataset.IntColumn(names[c], values, bitmap));
+                } else {
+                    long[] values = new long[rowCount];
+                    copyChunks(pool, chunks, offsets, (i, chunk, offset) -> {
+                        ColumnChunk part = chunk.columns[column];
+                        System.arraycopy(part.values, 0, values, offset, chunk.rows);
+                        copyNulls(part, bitmap, offset, chunk.rows);
+                    });
+                    columns.add(new ColumnarDataset.LongColumn(names[c], values, bitmap));
+                }
+            }
+        }
+        return ColumnarDataset.of(rowCount, columns);
+    }
+
+    private interface ChunkCopy {
+        void copy(int index, Chunk chunk, int offset);
+    }
+
+    private static void copyChunks(ForkJoinPool pool, Chunk[] chunks, int[] offsets, ChunkCopy copy) {
+        pool.submit(() -> IntStream.range(0, chunks.length).parallel()
+            .forEach(i -> copy.copy(i, chunks[i], offsets[i]))).join();
+    }
+
+    // Chunks start at arbitrary row offsets, so bits are set one by one; the
+    // shared bitmap words at chunk edges make this synchronized
+    private static void copyNulls(ColumnChunk part, long[] bitmap, int offset, int rows) {
+        if (part.nulls == null) {
+            return;
+        }
+        synchronized (bitmap) {
+            for (int row = 0; row < rows; row++) {
+                if (part.isNull(row)) {
+                    ColumnarDataset.setBit(bitmap, offset + row);
+                }
+            }
+        }
+    }
+}
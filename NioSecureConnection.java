@@ -0,0 +1,579 @@
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One authenticated TLS connection driven by an NioTransport.
+//
+// Same command API as SecureConnection, but the socket is a non-blocking
+// SocketChannel and TLS is done by an SSLEngine on the transport's selector
+// thread: queued command frames are wrapped into a direct buffer, incoming
+// records are unwrapped into another, and each complete reply frame is
+// decoded on the worker executor, one frame at a time and in arrival order
+// so unsolicited pushes reach the listener in sequence. Only the framed
+// protocol is supported; legacy Base64 replies have no boundaries to find.
+public final class NioSecureConnection implements ServerConnection {
+
+    private enum State { CONNECTING, HANDSHAKING, AUTHENTICATING, OPEN, CLOSED }
+
+    private static final long RESPONSE_TIMEOUT_SECONDS = 300;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final NioTransport transport;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final SecureConnection.Listener listener;
+    private final CompletableFuture<NioSecureConnection> ready = new CompletableFuture<>();
+
+    // Selector thread only
+    private SocketChannel channel;
+    private SelectionKey key;
+    private SSLEngine engine;
+    private ByteBuffer netIn;   // encrypted, from the socket (write mode)
+    private ByteBuffer netOut;  // encrypted, for the socket (read mode)
+    private ByteBuffer appIn;   // decrypted (write mode)
+    private boolean tasksRunning;
+    private long handshakeStartMillis;
+    private long handshakeStartNanos;
+
+    // Authentication reply being assembled
+    private final SecureConnection.AuthReply authReply = new SecureConnection.AuthReply();
+
+    // Reply frame being assembled
+    private final byte[] header = new byte[FrameCodec.HEADER_SIZE];
+    private int headerFilled;
+    private byte[] payload;
+    private int payloadFilled;
+
+    private volatile State state = State.CONNECTING;
+    private volatile long handshakeNanos;
+    private volatile boolean resumed;
+    private volatile PayloadCodec codec = PayloadCodec.GZIP;
+    private volatile CodecStats codecStats = new CodecStats();
+
+    private final ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private final Map<Integer, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Runnable> inbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    NioSecureConnection(NioTransport transport, String host, int port, String username, String password,
+                        SecureConnection.Listener listener) {
+        this.transport = transport;
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.listener = listener;
+    }
+
+    CompletableFuture<NioSecureConnection> ready() {
+        return ready;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return state == State.OPEN;
+    }
+
+    @Override
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public String codecSummary() {
+        return codec.name() + ": " + codecStats.describe() + "; " + BufferPool.describe();
+    }
+
+    @Override
+    public void reportCodecStatsTo(CodecStats totals) {
+        codecStats = new CodecStats(totals);
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public long handshakeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(handshakeNanos);
+    }
+
+    @Override
+    public CompletableFuture<Response> submit(Command command) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        if (state != State.OPEN) {
+            future.completeExceptionally(new IOException("Not connected to server"));
+            return future;
+        }
+
+        int requestId = nextRequestId.getAndIncrement();
+        pending.put(requestId, future);
+        future.orTimeout(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+              .whenComplete((response, error) -> pending.remove(requestId));
+
+        // The frame outlives this call in the write queue, so only the
+        // encoding scratch buffer is pooled
+        BufferPool.Buffer body = BufferPool.acquire(0);
+        try {
+            byte[] raw = command.text().getBytes(StandardCharsets.UTF_8);
+            PayloadCodec frameCodec = codec.forSize(raw.length);
+            long start = System.nanoTime();
+            int length = frameCodec.encode(raw, 0, raw.length, body);
+            codecStats.recordSent(requestId, frameCodec, raw.length, length, System.nanoTime() - start);
+            if (length > FrameCodec.MAX_PAYLOAD_SIZE) {
+                throw new IOException("Frame payload too large: " + length);
+            }
+            ByteBuffer frame = ByteBuffer.allocate(FrameCodec.HEADER_SIZE + length);
+            frame.putInt(length)
+                 .put(FrameCodec.TYPE_COMMAND)
+                 .put(frameCodec.id())
+                 .putInt(requestId)
+                 .put(body.array(), 0, length)
+                 .flip();
+            send(frame);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        } finally {
+            BufferPool.release(body);
+        }
+        return future;
+    }
+
+    @Override
+    public void close() {
+        onSelector(() -> shutdown(null));
+    }
+
+    // --- Selector thread ---
+
+    void start() {
+        onSelector(() -> {
+            transport.register(this);
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            key = channel.register(transport.selector(), SelectionKey.OP_CONNECT, this);
+            if (channel.connect(new InetSocketAddress(host, port))) {
+                onConnectable();
+            }
+        });
+    }
+
+    void onReady(SelectionKey readyKey) {
+        try {
+            if (readyKey.isValid() && readyKey.isConnectable()) {
+                onConnectable();
+            }
+            if (readyKey.isValid() && readyKey.isReadable()) {
+                onReadable();
+            }
+            if (readyKey.isValid() && readyKey.isWritable()) {
+                onWritable();
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void onConnectable() throws IOException {
+        if (!channel.finishConnect()) {
+            return;
+        }
+        try {
+            engine = SecureConnection.sslContext().createSSLEngine(host, port);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("SSL configuration failed: " + e.getMessage(), e);
+        }
+        engine.setUseClientMode(true);
+        engine.setEnabledProtocols(SecureConnection.ENABLED_PROTOCOLS);
+        engine.setEnabledCipherSuites(SecureConnection.ENABLED_CIPHER_SUITES);
+
+        SSLSession session = engine.getSession();
+        netIn = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+        netOut = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+        netOut.flip();
+        appIn = ByteBuffer.allocateDirect(session.getApplicationBufferSize());
+
+        state = State.HANDSHAKING;
+        key.interestOps(SelectionKey.OP_READ);
+        handshakeStartMillis = System.currentTimeMillis();
+        handshakeStartNanos = System.nanoTime();
+        engine.beginHandshake();
+        handshake();
+    }
+
+    private void onReadable() throws IOException {
+        if (channel.read(netIn) == -1) {
+            shutdown("Server closed connection");
+            return;
+        }
+        if (state == State.HANDSHAKING) {
+            handshake();
+        }
+        processIncoming();
+    }
+
+    private void onWritable() throws IOException {
+        if (state == State.HANDSHAKING) {
+            handshake();
+        } else {
+            flushOutbound();
+        }
+    }
+
+    // Drives the handshake as far as the buffered bytes allow
+    private void handshake() throws IOException {
+        while (state == State.HANDSHAKING && !tasksRunning) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_WRAP:
+                    if (!flushNetOut()) {
+                        return;
+                    }
+                    wrap(EMPTY);
+                    break;
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN:
+                    // Our last flight has to reach the server before it answers
+                    if (!flushNetOut() || !unwrap()) {
+                        return;
+                    }
+                    break;
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    return;
+                default:
+                    if (!flushNetOut()) {
+                        return;
+                    }
+                    handshakeFinished();
+                    return;
+            }
+        }
+    }
+
+    private void handshakeFinished() throws IOException {
+        handshakeNanos = System.nanoTime() - handshakeStartNanos;
+        // A resumed session keeps the creation time of the one it resumes
+        resumed = engine.getSession().getCreationTime() < handshakeStartMillis;
+        state = State.AUTHENTICATING;
+        // Tracing is not requested: this transport does not read TRACE frames
+        outbound.add(ByteBuffer.wrap(SecureConnection.authRequest(username, password, "framed", false)));
+        flushOutbound();
+    }
+
+    // Handshake crypto runs on a worker; the handshake resumes on the selector
+    private void runDelegatedTasks() {
+        tasksRunning = true;
+        transport.workers().execute(() -> {
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            onSelector(() -> {
+                tasksRunning = false;
+                if (state == State.HANDSHAKING) {
+                    handshake();
+                }
+                processIncoming();
+                flushOutbound();
+            });
+        });
+    }
+
+    // Unwraps every complete record already buffered once the handshake is done
+    private void processIncoming() throws IOException {
+        while ((state == State.AUTHENTICATING || state == State.OPEN) && !tasksRunning) {
+            if (netIn.position() == 0 || !unwrap()) {
+                return;
+            }
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+            } else if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                flushOutbound();
+            }
+        }
+    }
+
+    // Returns false when more bytes are needed from the socket
+    private boolean unwrap() throws IOException {
+        netIn.flip();
+        SSLEngineResult result;
+        try {
+            result = engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+        }
+        switch (result.getStatus()) {
+            case BUFFER_UNDERFLOW:
+                if (!netIn.hasRemaining()) {
+                    netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+                }
+                return false;
+            case BUFFER_OVERFLOW:
+                appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+                return true;
+            case CLOSED:
+                shutdown("Server closed connection");
+                return false;
+            default:
+                if (appIn.position() > 0) {
+                    consumeApplicationData();
+                }
+                return true;
+        }
+    }
+
+    // Queued plain bytes are wrapped one record at a time, each record written
+    // out before the next is produced
+    private void flushOutbound() throws IOException {
+        flushScheduled.set(false);
+        if (state != State.AUTHENTICATING && state != State.OPEN) {
+            return;
+        }
+        while (flushNetOut()) {
+            ByteBuffer next = outbound.peek();
+            if (next == null) {
+                if (engine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    return;
+                }
+                wrap(EMPTY);
+                continue;
+            }
+            wrap(next);
+            if (!next.hasRemaining()) {
+                outbound.poll();
+            }
+        }
+    }
+
+    // Only called with netOut fully flushed
+    private void wrap(ByteBuffer source) throws IOException {
+        while (true) {
+            netOut.clear();
+            SSLEngineResult result = engine.wrap(source, netOut);
+            netOut.flip();
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW:
+                    netOut = ByteBuffer.allocateDirect(Math.max(netOut.capacity() * 2,
+                        engine.getSession().getPacketBufferSize()));
+                    continue;
+                case CLOSED:
+                    throw new SSLException("TLS engine closed");
+                default:
+                    return;
+            }
+        }
+    }
+
+    // Writes pending TLS records; false (with OP_WRITE armed) if the socket is full
+    private boolean flushNetOut() throws IOException {
+        while (netOut.hasRemaining()) {
+            if (channel.write(netOut) == 0) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return false;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        return true;
+    }
+
+    private void consumeApplicationData() throws IOException {
+        appIn.flip();
+        try {
+            if (state == State.AUTHENTICATING) {
+                authenticate();
+            }
+            while (appIn.hasRemaining() && state == State.OPEN) {
+                if (payload == null) {
+                    int count = Math.min(FrameCodec.HEADER_SIZE - headerFilled, appIn.remaining());
+                    appIn.get(header, headerFilled, count);
+                    headerFilled += count;
+                    if (headerFilled < FrameCodec.HEADER_SIZE) {
+                        break;
+                    }
+                    int length = ByteBuffer.wrap(header).getInt(0);
+                    if (length < 0 || length > FrameCodec.MAX_PAYLOAD_SIZE) {
+                        throw new IOException("Invalid frame length: " + length);
+                    }
+                    payload = new byte[length];
+                    payloadFilled = 0;
+                }
+                int count = Math.min(payload.length - payloadFilled, appIn.remaining());
+                appIn.get(payload, payloadFilled, count);
+                payloadFilled += count;
+                if (payloadFilled == payload.length) {
+                    deliver(header[4], header[5], ByteBuffer.wrap(header).getInt(6), payload);
+                    payload = null;
+                    headerFilled = 0;
+                }
+            }
+        } finally {
+            appIn.clear();
+        }
+    }
+
+    // The server answers authentication with one JSON object before any frame.
+    // It may span several reads and share one with the first frames, so bytes
+    // are taken up to the closing brace and the rest is left for the frame parser
+    private void authenticate() throws IOException {
+        boolean complete = false;
+        while (appIn.hasRemaining() && !complete) {
+            complete = authReply.add(appIn.get());
+        }
+        if (!complete) {
+            return;
+        }
+        String response = authReply.text();
+        if (!SecureConnection.authSucceeded(response)) {
+            throw new IOException("Authentication failed: " + response);
+        }
+        if (!SecureConnection.grantedProtocol(response, "framed")) {
+            throw new IOException("Server does not support the framed protocol");
+        }
+        codec = PayloadCodec.negotiated(response);
+        state = State.OPEN;
+        ready.complete(this);
+    }
+
+    private void deliver(byte type, byte codec, int requestId, byte[] body) {
+        inbound.add(() -> {
+            try {
+                dispatch(SecureConnection.decodeFrame(type, codec, requestId,
+                    body, 0, body.length, codecStats));
+            } catch (IOException e) {
+                CompletableFuture<Response> future = pending.remove(requestId);
+                if (future != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    System.err.println("Error processing response: " + e.getMessage());
+                }
+            }
+        });
+        if (draining.compareAndSet(false, true)) {
+            transport.workers().execute(this::drainInbound);
+        }
+    }
+
+    // At most one worker drains the queue, so frames are handled in arrival order
+    private void drainInbound() {
+        do {
+            Runnable task;
+            while ((task = inbound.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error processing response: " + e);
+                }
+            }
+            draining.set(false);
+        } while (!inbound.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private void dispatch(Response response) {
+        CompletableFuture<Response> future = pending.remove(response.requestId());
+        if (future != null) {
+            future.complete(response);
+        } else {
+            listener.onUnsolicitedResponse(response);
+        }
+    }
+
+    private void send(ByteBuffer frame) {
+        outbound.add(frame);
+        if (flushScheduled.compareAndSet(false, true)) {
+            onSelector(this::flushOutbound);
+        }
+    }
+
+    private void fail(Exception e) {
+        ready.completeExceptionally(e);
+        shutdown(e.getMessage() != null ? e.getMessage() : e.toString());
+    }
+
+    // Closes the channel and fails everything still waiting; reason is null
+    // for a requested close
+    void shutdown(String reason) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        boolean wasOpen = state == State.OPEN;
+        state = State.CLOSED;
+        transport.unregister(this);
+
+        if (engine != null) {
+            engine.closeOutbound();
+            try {
+                // Best effort close_notify; never wait for the socket
+                if (!netOut.hasRemaining()) {
+                    wrap(EMPTY);
+                }
+                channel.write(netOut);
+            } catch (IOException | RuntimeException e) {
+                // Closing anyway
+            }
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+
+        IOException closed = new IOException(reason != null ? reason : "Connection closed");
+        ready.completeExceptionally(closed);
+        for (CompletableFuture<Response> future : pending.values()) {
+            future.completeExceptionally(closed);
+        }
+        pending.clear();
+        outbound.clear();
+
+        if (wasOpen && reason != null) {
+            listener.onDisconnected(reason);
+        }
+    }
+
+    private interface SelectorTask {
+        void run() throws IOException;
+    }
+
+    private void onSelector(SelectorTask task) {
+        transport.execute(() -> {
+            try {
+                task.run();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        });
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int minimum) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, minimum));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
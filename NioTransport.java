@@ -0,0 +1,114 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+// One selector thread driving any number of NioSecureConnections.
+//
+// Meant for headless services that hold hundreds of server connections:
+// instead of a listener thread and write executor per connection, all socket
+// reads, writes and TLS record processing happen on this loop. CPU-heavy work
+// (SSLEngine delegated tasks, inflating and decoding replies) is handed to the
+// worker executor so one slow reply never stalls the other connections.
+public final class NioTransport implements Closeable {
+
+    private final Selector selector;
+    private final Executor workers;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Set<NioSecureConnection> connections = ConcurrentHashMap.newKeySet();
+    private final Thread loop;
+    private volatile boolean running = true;
+
+    public NioTransport() throws IOException {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public NioTransport(Executor workers) throws IOException {
+        this.workers = workers;
+        this.selector = Selector.open();
+        this.loop = new Thread(this::run, "Nio-Selector");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    // Connects, handshakes and authenticates without blocking the caller.
+    // The future completes once the connection is ready for submit().
+    public CompletableFuture<NioSecureConnection> connect(String host, int port, String username, String password,
+                                                          SecureConnection.Listener listener) {
+        NioSecureConnection connection = new NioSecureConnection(this, host, port, username, password, listener);
+        connection.start();
+        return connection.ready();
+    }
+
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    // Runs the task on the selector thread
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    Executor workers() {
+        return workers;
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    void register(NioSecureConnection connection) {
+        connections.add(connection);
+    }
+
+    void unregister(NioSecureConnection connection) {
+        connections.remove(connection);
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.err.println("Selector error: " + e.getMessage());
+                break;
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                ((NioSecureConnection) key.attachment()).onReady(key);
+            }
+        }
+
+        for (NioSecureConnection connection : connections) {
+            connection.shutdown("Transport closed");
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing selector: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,352 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Compression codecs for framed payloads.
+//
+// The codec byte of every frame header says how that payload is encoded, so
+// each side may pick per message: payloads under MIN_COMPRESS_BYTES always go
+// as NONE (a GZIP header alone is 18 bytes), larger ones use the codec agreed
+// at login. The client offers its codecs in preference order (viz.codecs,
+// default "deflate,gzip,none") and the server answers with the one it chose.
+//
+// Payloads held in memory are encoded and decoded with pooled Deflaters,
+// Inflaters and buffers (BufferPool); GZIP is framed by hand so a reply can
+// be inflated straight into a buffer sized from the trailer's ISIZE.
+//
+// Must stay in sync with PAYLOAD_CODECS in secure_server.py.
+public abstract class PayloadCodec {
+
+    public static final int MIN_COMPRESS_BYTES = Integer.getInteger("viz.codec.minBytes", 512);
+
+    private static final int BUFFER_SIZE = 65536;
+    private static final Pattern CODEC_FIELD = Pattern.compile("\"codec\"\\s*:\\s*\"([a-z0-9]+)\"");
+
+    // Deflate cannot expand data by more than this factor
+    private static final int MAX_INFLATE_RATIO = 1032;
+
+    public static final PayloadCodec NONE = new PayloadCodec(FrameCodec.CODEC_NONE, "none") {
+        @Override
+        public int encode(byte[] raw, int offset, int length, BufferPool.Buffer out) {
+            System.arraycopy(raw, offset, out.reserve(length), 0, length);
+            out.setLength(length);
+            return length;
+        }
+
+        @Override
+        public int decode(byte[] encoded, int offset, int length, BufferPool.Buffer out) {
+            return encode(encoded, offset, length, out);
+        }
+
+        @Override
+        public InputStream decode(InputStream encoded) {
+            return encoded;
+        }
+    };
+
+    // GZIP at the default level; what every server before negotiation speaks
+    public static final PayloadCodec GZIP = new PayloadCodec(FrameCodec.CODEC_GZIP, "gzip") {
+        private final byte[] header = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        @Override
+        public int encode(byte[] raw, int offset, int length, BufferPool.Buffer out) {
+            CRC32 crc = new CRC32();
+            crc.update(raw, offset, length);
+            System.arraycopy(header, 0, out.reserve(header.length + length / 2 + 64), 0, header.length);
+
+            Deflater deflater = BufferPool.gzipDeflater();
+            try {
+                int end = deflate(deflater, raw, offset, length, out, header.length);
+                byte[] array = out.ensureCapacity(end + 8);
+                writeIntLE(array, end, (int) crc.getValue());
+                writeIntLE(array, end + 4, length);
+                out.setLength(end + 8);
+                return end + 8;
+            } finally {
+                BufferPool.releaseGzipDeflater(deflater);
+            }
+        }
+
+        @Override
+        public int decode(byte[] encoded, int offset, int length, BufferPool.Buffer out) throws IOException {
+            int start = dataStart(encoded, offset, length);
+            int size = readIntLE(encoded, offset + length - 4);
+            if (start < 0 || size < 0 || (long) size > (long) length * MAX_INFLATE_RATIO) {
+                return decodeStreamed(encoded, offset, length, out);
+            }
+
+            byte[] array = out.reserve(size);
+            Inflater inflater = BufferPool.gzipInflater();
+            try {
+                inflater.setInput(encoded, start, offset + length - 8 - start);
+                int produced = 0;
+                while (produced < size) {
+                    int n = inflater.inflate(array, produced, size - produced);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    produced += n;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(array, 0, produced);
+                if (produced != size || (int) crc.getValue() != readIntLE(encoded, offset + length - 8)) {
+                    // Concatenated members or a size past 4 GB: let GZIPInputStream sort it out
+                    return decodeStreamed(encoded, offset, length, out);
+                }
+                out.setLength(produced);
+                return produced;
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt GZIP payload: " + e.getMessage(), e);
+            } finally {
+                BufferPool.releaseGzipInflater(inflater);
+            }
+        }
+
+        @Override
+        public InputStream decode(InputStream encoded) throws IOException {
+            return new GZIPInputStream(encoded, BUFFER_SIZE);
+        }
+
+        // Offset of the deflate data after the (variable length) GZIP header,
+        // -1 if this is not a GZIP member
+        private int dataStart(byte[] b, int offset, int length) {
+            if (length < 18 || b[offset] != 0x1f || b[offset + 1] != (byte) 0x8b || b[offset + 2] != Deflater.DEFLATED) {
+                return -1;
+            }
+            int flags = b[offset + 3] & 0xff;
+            int position = offset + 10;
+            int end = offset + length - 8;
+            if ((flags & 0x04) != 0 && position + 2 <= end) {     // FEXTRA
+                position += 2 + ((b[position] & 0xff) | (b[position + 1] & 0xff) << 8);
+            }
+            if ((flags & 0x08) != 0) {                              // FNAME
+                position = skipZeroTerminated(b, position, end);
+            }
+            if ((flags & 0x10) != 0) {                              // FCOMMENT
+                position = skipZeroTerminated(b, position, end);
+            }
+            if ((flags & 0x02) != 0) {                              // FHCRC
+                position += 2;
+            }
+            return position <= end ? position : -1;
+        }
+
+        private int skipZeroTerminated(byte[] b, int position, int end) {
+            while (position < end && b[position] != 0) {
+                position++;
+            }
+            return position + 1;
+        }
+
+        private int decodeStreamed(byte[] encoded, int offset, int length, BufferPool.Buffer out) throws IOException {
+            out.reserve(sizeGuess(length));
+            try (InputStream in = decode(new ByteArrayInputStream(encoded, offset, length))) {
+                return readFully(in, out, 0);
+            }
+        }
+    };
+
+    // zlib stream at level 1: several times faster than GZIP for a somewhat
+    // lower ratio, the better trade on fast links and large plot replies
+    public static final PayloadCodec DEFLATE = new PayloadCodec(FrameCodec.CODEC_DEFLATE, "deflate") {
+        @Override
+        public int encode(byte[] raw, int offset, int length, BufferPool.Buffer out) {
+            out.reserve(length / 2 + 64);
+            Deflater deflater = BufferPool.fastDeflater();
+            try {
+                int end = deflate(deflater, raw, offset, length, out, 0);
+                out.setLength(end);
+                return end;
+            } finally {
+                BufferPool.releaseFastDeflater(deflater);
+            }
+        }
+
+        @Override
+        public int decode(byte[] encoded, int offset, int length, BufferPool.Buffer out) throws IOException {
+            byte[] array = out.reserve(sizeGuess(length));
+            Inflater inflater = BufferPool.zlibInflater();
+            try {
+                inflater.setInput(encoded, offset, length);
+                int produced = 0;
+                while (!inflater.finished()) {
+                    if (produced == array.length) {
+                        array = out.ensureCapacity(produced + 1);
+                    }
+                    int n = inflater.inflate(array, produced, array.length - produced);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated deflate payload");
+                    }
+                    produced += n;
+                }
+                out.setLength(produced);
+                return produced;
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt deflate payload: " + e.getMessage(), e);
+            } finally {
+                BufferPool.releaseZlibInflater(inflater);
+            }
+        }
+
+        @Override
+        public InputStream decode(InputStream encoded) {
+            Inflater inflater = BufferPool.zlibInflater();
+            return new InflaterInputStream(encoded, inflater, BUFFER_SIZE) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        super.close();
+                        BufferPool.releaseZlibInflater(inflater);
+                    }
+                }
+            };
+        }
+    };
+
+    private static final List<PayloadCodec> ALL = Arrays.asList(NONE, GZIP, DEFLATE);
+
+    private final byte id;
+    private final String name;
+
+    private PayloadCodec(byte id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public byte id() {
+        return id;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    // Encodes raw[offset, offset + length) into out, growing it as needed;
+    // returns the encoded length
+    public abstract int encode(byte[] raw, int offset, int length, BufferPool.Buffer out);
+
+    // Decodes a payload held in memory into out; returns the decoded length
+    public abstract int decode(byte[] encoded, int offset, int length, BufferPool.Buffer out) throws IOException;
+
+    // Wraps an encoded payload stream; closing the result closes the source
+    public abstract InputStream decode(InputStream encoded) throws IOException;
+
+    // Encoded copy of raw, for callers outside the hot path
+    public byte[] encode(byte[] raw) {
+        BufferPool.Buffer out = BufferPool.acquire(0);
+        try {
+            int length = encode(raw, 0, raw.length, out);
+            return Arrays.copyOf(out.array(), length);
+        } finally {
+            BufferPool.release(out);
+        }
+    }
+
+    // The codec to send a payload of this many raw bytes with
+    public PayloadCodec forSize(int rawLength) {
+        return rawLength < MIN_COMPRESS_BYTES ? NONE : this;
+    }
+
+    public static PayloadCodec forId(byte id) throws IOException {
+        for (PayloadCodec codec : ALL) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IOException("Unsupported payload codec: " + id);
+    }
+
+    public static PayloadCodec forName(String name) {
+        for (PayloadCodec codec : ALL) {
+            if (codec.name.equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    // Names offered at login, most preferred first
+    public static List<String> offered() {
+        List<String> names = new ArrayList<>();
+        for (String name : System.getProperty("viz.codecs", "deflate,gzip,none").split(",")) {
+            if (forName(name.trim()) != null) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    // The codec the server picked in its auth response; servers that predate
+    // negotiation always use GZIP
+    public static PayloadCodec negotiated(String authResponse) {
+        Matcher matcher = CODEC_FIELD.matcher(authResponse);
+        PayloadCodec codec = matcher.find() ? forName(matcher.group(1)) : null;
+        return codec != null ? codec : GZIP;
+    }
+
+    // Reads the rest of the stream into out starting at position; returns
+    // the new length
+    static int readFully(InputStream in, BufferPool.Buffer out, int position) throws IOException {
+        byte[] array = out.array();
+        while (true) {
+            if (position == array.length) {
+                array = out.ensureCapacity(position + 1);
+            }
+            int n = in.read(array, position, array.length - position);
+            if (n < 0) {
+                out.setLength(position);
+                return position;
+            }
+            position += n;
+        }
+    }
+
+    // Starting capacity for a decoded payload of unknown size
+    static int sizeGuess(int encodedLength) {
+        return (int) Math.min(Math.max(64, encodedLength * 4L), 64 * 1024 * 1024);
+    }
+
+    private static int deflate(Deflater deflater, byte[] raw, int offset, int length,
+                               BufferPool.Buffer out, int position) {
+        deflater.setInput(raw, offset, length);
+        deflater.finish();
+        byte[] array = out.array();
+        while (!deflater.finished()) {
+            if (position == array.length) {
+                array = out.ensureCapacity(position + 1);
+            }
+            position += deflater.deflate(array, position, array.length - position);
+        }
+        return position;
+    }
+
+    private static void writeIntLE(byte[] b, int offset, int value) {
+        b[offset] = (byte) value;
+        b[offset + 1] = (byte) (value >>> 8);
+        b[offset + 2] = (byte) (value >>> 16);
+        b[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static int readIntLE(byte[] b, int offset) {
+        return (b[offset] & 0xff) | (b[offset + 1] & 0xff) << 8 | (b[offset + 2] & 0xff) << 16 | (b[offset + 3] & 0xff) << 24;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
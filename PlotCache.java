@@ -0,0 +1,94 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Byte-budgeted LRU cache of rendered plots, keyed by PlotRequest.cacheKey().
+//
+// In-memory HTML is charged at two bytes per char and spooled plots at their
+// file size; entries larger than the whole budget are never stored. All
+// methods are synchronized since lookups happen on the FX thread and inserts
+// on the connection listener thread. Stored plots are retained, and released
+// when evicted, replaced or cleared, so their spool files go with them.
+public class PlotCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, PlotSource> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public PlotCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized PlotSource get(String key) {
+        PlotSource plot = entries.get(key);
+        if (plot != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return plot;
+    }
+
+    public synchronized void put(String key, PlotSource plot) {
+        long size = sizeOf(key, plot);
+        if (size > maxBytes) {
+            return;
+        }
+
+        PlotSource previous = entries.put(key, plot.retain());
+        if (previous != null) {
+            currentBytes -= sizeOf(key, previous);
+            previous.release();
+        }
+        currentBytes += size;
+
+        Iterator<Map.Entry<String, PlotSource>> eldest = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, PlotSource> entry = eldest.next();
+            currentBytes -= sizeOf(entry.getKey(), entry.getValue());
+            eldest.remove();
+            entry.getValue().release();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.values().forEach(PlotSource::release);
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long currentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized String describe() {
+        return String.format("%d hits / %d misses / %d evictions · %d plots, %.1f of %.0f MB",
+            hits, misses, evictions, entries.size(),
+            currentBytes / (1024.0 * 1024.0), maxBytes / (1024.0 * 1024.0));
+    }
+
+    private static long sizeOf(String key, PlotSource plot) {
+        return 2L * key.length() + plot.sizeInBytes();
+    }
+}
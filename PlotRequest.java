@@ -0,0 +1,156 @@
+import java.util.Locale;
+
+// The plot configuration built from the visualization controls.
+//
+// Values are normalized (trimmed, z only kept for 3D plots, empty title
+// dropped) so that equivalent control states produce the same JSON and the
+// same cache key. Line, scatter and area requests may carry a level-of-detail
+// budget (max_points); histograms and density heatmaps a bin count (nbins).
+// Both kinds may carry the visible x range (x_range) to refine after a zoom.
+// format "figure" asks for Plotly figure JSON instead of a page.
+public final class PlotRequest {
+
+    private final String type;
+    private final String x;
+    private final String y;
+    private final String z;
+    private final String title;
+    private final int maxPoints;
+    private final int bins;
+    private final double xMin;
+    private final double xMax;
+    private final String format;
+
+    public PlotRequest(String type, String x, String y, String z, String title) {
+        this.type = type.trim().toLowerCase(Locale.ROOT).replace(" ", "_");
+        this.x = normalize(x);
+        this.y = normalize(y);
+        this.z = this.type.contains("3d") ? normalize(z) : null;
+        this.title = normalize(title);
+        this.maxPoints = 0;
+        this.bins = 0;
+        this.xMin = Double.NaN;
+        this.xMax = Double.NaN;
+        this.format = null;
+    }
+
+    private PlotRequest(PlotRequest base, int maxPoints, int bins, double xMin, double xMax, String format) {
+        this.type = base.type;
+        this.x = base.x;
+        this.y = base.y;
+        this.z = base.z;
+        this.title = base.title;
+        boolean lod = Decimator.supports(type) && maxPoints > 0;
+        boolean binned = BinnedAggregate.supports(type);
+        this.maxPoints = lod ? maxPoints : 0;
+        this.bins = binned ? Math.max(bins, 0) : 0;
+        this.xMin = lod || binned ? xMin : Double.NaN;
+        this.xMax = lod || binned ? xMax : Double.NaN;
+        this.format = format;
+    }
+
+    // The same plot decimated to maxPoints within [xMin, xMax] (NaN = the
+    // full range); the point budget only applies to line, scatter and area
+    public PlotRequest withDetail(int maxPoints, double xMin, double xMax) {
+        return new PlotRequest(this, maxPoints, bins, xMin, xMax, format);
+    }
+
+    // The same plot with a bin count (0 = the server default); only kept
+    // for histograms and density heatmaps
+    public PlotRequest withBins(int bins) {
+        return new PlotRequest(this, maxPoints, bins, xMin, xMax, format);
+    }
+
+    // The same plot in another server output format (null = an HTML page)
+    public PlotRequest withFormat(String format) {
+        return new PlotRequest(this, maxPoints, bins, xMin, xMax, normalize(format));
+    }
+
+    public String type() { return type; }
+    public String x() { return x; }
+    public String y() { return y; }
+    public String z() { return z; }
+    public String title() { return title; }
+    public int maxPoints() { return maxPoints; }
+    public int bins() { return bins; }
+    public double xMin() { return xMin; }
+    public double xMax() { return xMax; }
+    public String format() { return format; }
+
+    public boolean hasXRange() {
+        return !Double.isNaN(xMin) && !Double.isNaN(xMax);
+    }
+
+    // JSON sent after the "plot:" prefix
+    public String toJson() {
+        return toJson(null);
+    }
+
+    // The request for a figure that will replace baseFigure (a PlotView
+    // figure id), so the server may answer with just the changes. The base
+    // is not part of the plot, so it stays out of cacheKey().
+    public String deltaJson(String baseFigure) {
+        return toJson(baseFigure);
+    }
+
+    private String toJson(String baseFigure) {
+        StringBuilder json = new StringBuilder(96);
+        json.append("{\"type\": ").append(quote(type));
+        appendField(json, "x", x);
+        appendField(json, "y", y);
+        appendField(json, "z", z);
+        appendField(json, "title", title);
+        if (maxPoints > 0) {
+            json.append(", \"max_points\": ").append(maxPoints);
+        }
+        if (bins > 0) {
+            json.append(", \"nbins\": ").append(bins);
+        }
+        if (hasXRange()) {
+            json.append(", \"x_range\": [").append(xMin).append(", ").append(xMax).append(']');
+        }
+        appendField(json, "format", format);
+        appendField(json, "base", baseFigure);
+        return json.append('}').toString();
+    }
+
+    // Identifies the rendered plot for a given version of the loaded dataset
+    public String cacheKey(long datasetVersion) {
+        return datasetVersion + "|" + toJson();
+    }
+
+    private static void appendField(StringBuilder json, String name, String value) {
+        if (value != null) {
+            json.append(", \"").append(name).append("\": ").append(quote(value));
+        }
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
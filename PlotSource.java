@@ -0,0 +1,132 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Rendered plot HTML, either held in memory or spooled to a temp file.
+// Figures (isFigure()) hold Plotly figure JSON instead, for PlotView to draw
+// into its resident page.
+//
+// Large plots are inflated straight from the socket (or the disk cache) into
+// a spool file and handed to the WebView by URL, so the heap never holds a
+// full copy of them.
+//
+// A spool file belongs to whoever holds the plot: PlotCache, DiskPlotCache's
+// spooled hits and each PlotView retain() it and release() it once they drop
+// the plot, and the file is deleted when the last of them lets go. A plot
+// nobody retained keeps its file until the JVM exits.
+public final class PlotSource {
+
+    private static Path spoolDirectory;
+
+    private final String html;
+    private final Path file;
+    private final long sizeInBytes;
+    private final boolean figure;
+    private final boolean spooled;
+    private final AtomicInteger owners = new AtomicInteger();
+
+    private PlotSource(String html, Path file, long sizeInBytes, boolean figure) {
+        this.html = html;
+        this.file = file;
+        this.sizeInBytes = sizeInBytes;
+        this.figure = figure;
+        this.spooled = file != null && isSpoolFile(file);
+    }
+
+    public static PlotSource inline(String html) {
+        return new PlotSource(html, null, 2L * html.length(), false);
+    }
+
+    public static PlotSource file(Path file) {
+        return new PlotSource(null, file, sizeOf(file), false);
+    }
+
+    public static PlotSource figure(String json) {
+        return new PlotSource(json, null, 2L * json.length(), true);
+    }
+
+    public static PlotSource figureFile(Path file) {
+        return new PlotSource(null, file, sizeOf(file), true);
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    public boolean isFile() {
+        return file != null;
+    }
+
+    public boolean isFigure() {
+        return figure;
+    }
+
+    public String html() {
+        return html;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public InputStream openStream() throws IOException {
+        return file != null ? Files.newInputStream(file)
+                            : new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Reads a spooled plot back into memory; avoid for large files
+    public String readHtml() throws IOException {
+        return html != null ? html : new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    // Adds an owner of the spool file; no-op for in-memory plots
+    public PlotSource retain() {
+        if (spooled) {
+            owners.incrementAndGet();
+        }
+        return this;
+    }
+
+    // Drops an owner; the last one deletes the spool file
+    public void release() {
+        if (spooled && owners.decrementAndGet() == 0) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Still removed on exit
+            }
+        }
+    }
+
+    // Approximate footprint charged against the plot cache budget
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    // A new, empty spool file that is removed when the JVM exits
+    public static Path newSpoolFile() throws IOException {
+        Path file = Files.createTempFile(spoolDirectory(), "plot-", ".html");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    private static synchronized boolean isSpoolFile(Path file) {
+        return spoolDirectory != null && file.toAbsolutePath().startsWith(spoolDirectory.toAbsolutePath());
+    }
+
+    private static synchronized Path spoolDirectory() throws IOException {
+        if (spoolDirectory == null || !Files.isDirectory(spoolDirectory)) {
+            spoolDirectory = Files.createTempDirectory("secure-viz-plots");
+            spoolDirectory.toFile().deleteOnExit();
+        }
+        return spoolDirectory;
+    }
+}
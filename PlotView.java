@@ -0,0 +1,334 @@
+import javafx.concurrent.Worker;
+import javafx.scene.web.WebEngine;
+import javafx.scene.web.WebView;
+import netscape.javascript.JSObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// A WebView that keeps one page with plotly.js loaded for the whole session.
+//
+// Once prepare() has the local plotly.min.js, the view loads a small shell
+// page next to it; figures (PlotSource.isFigure()) are then handed to that
+// page as JSON and drawn with Plotly.react, which updates the existing plot
+// in place instead of parsing a new document and plotly.js for every plot.
+// HTML plots (older servers, restored cache entries) still load as pages of
+// their own, and the shell is brought back for the next figure. A figure
+// that arrives while the shell is loading waits; only the newest is drawn.
+//
+// Each figure shown in the shell has an id (see figureId()) that plot
+// requests pass to the server as their base; a FIGURE_DELTA: reply against
+// it goes to applyDelta(), which changes just those attributes with
+// Plotly.restyle and Plotly.relayout. extend() appends live rows to the
+// first trace, after which the figure has no id until the next full one.
+//
+// The plot on screen is retained (see PlotSource) until the next one
+// replaces it. onRendered runs on the FX thread after each plot is on
+// screen. FX thread only.
+public final class PlotView {
+
+    private static final String SHELL_FILE_NAME = "plot-shell.html";
+    private static final String SHELL_HTML =
+        "<!DOCTYPE html><html><head><meta charset=\"utf-8\">"
+        + "<script src=\"%s\"></script>"
+        + "<style>html, body { margin: 0; height: 100%%; } #plot { width: 100%%; height: 100%%; }</style>"
+        + "</head><body><div id=\"plot\"></div><script>"
+        + "var vizConfig = {responsive: true, displayModeBar: true, scrollZoom: true, displaylogo: false};"
+        + "var vizFigureId = null;"
+        // Set while a delta moves the axes, so zoom listeners can tell it from the user
+        + "var vizApplying = false;"
+        + "function vizDone(promise) {"
+        + "  promise.then(function () { vizBridge.rendered(); }, function (e) { vizBridge.failed(String(e)); });"
+        + "}"
+        + "function vizRender(json, id) {"
+        + "  var figure = JSON.parse(json);"
+        + "  vizFigureId = id;"
+        + "  vizDone(Plotly.react('plot', figure.data || [], figure.layout || {}, vizConfig));"
+        + "}"
+        // restyle takes one value per listed trace, hence the [value] wrapping
+        + "function vizApplyDelta(json) {"
+        + "  var delta = JSON.parse(json);"
+        + "  if (vizFigureId === null || delta.base !== vizFigureId) { return null; }"
+        + "  var done = Promise.resolve();"
+        + "  delta.data.forEach(function (trace) {"
+        + "    var update = {};"
+        + "    Object.keys(trace.set).forEach(function (path) { update[path] = [trace.set[path]]; });"
+        + "    done = done.then(function () { return Plotly.restyle('plot', update, [trace.index]); });"
+        + "  });"
+        + "  if (Object.keys(delta.layout).length > 0) {"
+        + "    done = done.then(function () {"
+        + "      vizApplying = true;"
+        + "      return Plotly.relayout('plot', delta.layout).then("
+        + "        function (gd) { vizApplying = false; return gd; },"
+        + "        function (e) { vizApplying = false; throw e; });"
+        + "    });"
+        + "  }"
+        + "  vizFigureId = delta.id;"
+        + "  vizDone(done);"
+        + "  return delta.id;"
+        + "}"
+        // Typed array specs from fig.to_json() are only decoded into _fullData
+        + "function vizExtend(json, maxPoints) {"
+        + "  var gd = document.getElementById('plot');"
+        + "  if (!gd.data || gd.data.length === 0) { return false; }"
+        + "  var rows = JSON.parse(json);"
+        + "  var trace = gd.data[0];"
+        + "  ['x', 'y'].forEach(function (axis) {"
+        + "    if (!Array.isArray(trace[axis])) {"
+        + "      var values = ArrayBuffer.isView(trace[axis]) ? trace[axis] : gd._fullData[0][axis] || [];"
+        + "      trace[axis] = Array.prototype.slice.call(values);"
+        + "    }"
+        + "  });"
+        + "  vizFigureId = null;"
+        + "  vizDone(Plotly.extendTraces(gd, {x: [rows.x], y: [rows.y]}, [0], maxPoints));"
+        + "  return true;"
+        + "}"
+        + "function vizSnapshot() {"
+        + "  var gd = document.getElementById('plot');"
+        + "  return JSON.stringify({data: gd.data, layout: gd.layout}, function (key, value) {"
+        + "    return ArrayBuffer.isView(value) ? Array.prototype.slice.call(value) : value; });"
+        + "}"
+        + "</script></body></html>";
+
+    private final WebView view;
+    private final Runnable onRendered;
+    private final Bridge bridge = new Bridge();
+    private Path shellFile;
+    private boolean shellLoading;
+    private boolean shellReady;
+    private String pendingFigure;
+    private String pendingFigureId;
+    private String figureId;
+    private boolean changedInPage;
+    private PlotSource current;
+    private String lastError;
+
+    // Called from JavaScript on the FX thread; must stay public
+    public class Bridge {
+        public void rendered() {
+            onRendered.run();
+        }
+
+        public void failed(String message) {
+            lastError = message;
+            System.err.println("Plotly.react failed: " + message);
+        }
+    }
+
+    public PlotView(WebView view, Runnable onRendered) {
+        this.view = view;
+        this.onRendered = onRendered;
+        view.getEngine().getLoadWorker().stateProperty().addListener((obs, old, state) -> {
+            if (state == Worker.State.SUCCEEDED) {
+                pageLoaded();
+            } else if (state == Worker.State.FAILED || state == Worker.State.CANCELLED) {
+                shellLoading = false;
+            }
+        });
+    }
+
+    public WebEngine engine() {
+        return view.getEngine();
+    }
+
+    // Writes the shell page next to plotly.min.js and starts loading it
+    public void prepare(Path plotlyJs) throws IOException {
+        if (shellFile == null) {
+            Path shell = plotlyJs.resolveSibling(SHELL_FILE_NAME);
+            String html = String.format(SHELL_HTML, plotlyJs.getFileName());
+            Files.write(shell, html.getBytes(StandardCharsets.UTF_8));
+            shellFile = shell;
+        }
+        if (!shellReady && !shellLoading && (current == null || current.isFigure())) {
+            loadShell();
+        }
+    }
+
+    // True once figures can be shown, i.e. plot requests may ask for JSON
+    public boolean acceptsFigures() {
+        return shellFile != null;
+    }
+
+    // After applyDelta() or extend() this is read back from the page, so it costs a
+    // JSON.stringify of the whole figure
+    public PlotSource current() {
+        if (changedInPage && shellReady) {
+            current.release();
+            current = PlotSource.figure((String) engine().executeScript("vizSnapshot()"));
+            changedInPage = false;
+        }
+        return current;
+    }
+
+    public boolean showsFigure() {
+        return current != null && current.isFigure();
+    }
+
+    // Appends a STREAM_ROWS: payload ({"x": [...], "y": [...]}) to the first
+    // trace, keeping its newest maxPoints points. False when no figure is shown.
+    public boolean extend(String json, int maxPoints) {
+        if (!shellReady || !showsFigure()) {
+            return false;
+        }
+        Object extended;
+        try {
+            JSObject window = (JSObject) engine().executeScript("window");
+            extended = window.call("vizExtend", json, maxPoints);
+        } catch (RuntimeException e) {
+            lastError = e.getMessage();
+            System.err.println("Extending the figure failed: " + e.getMessage());
+            return false;
+        }
+        if (!Boolean.TRUE.equals(extended)) {
+            return false;
+        }
+        figureId = null;
+        changedInPage = true;
+        return true;
+    }
+
+    // Id of the figure on screen, for requests that can take a delta; null
+    // while it is still loading or not a figure
+    public String figureId() {
+        return shellReady && current != null && current.isFigure() ? figureId : null;
+    }
+
+    // Applies a FIGURE_DELTA: payload. False when the figure on screen is not
+    // the one the delta was made against; the caller then needs the full one.
+    public boolean applyDelta(String json) {
+        if (figureId() == null) {
+            return false;
+        }
+        Object id;
+        try {
+            JSObject window = (JSObject) engine().executeScript("window");
+            id = window.call("vizApplyDelta", json);
+        } catch (RuntimeException e) {
+            lastError = e.getMessage();
+            System.err.println("Figure delta failed: " + e.getMessage());
+            return false;
+        }
+        if (!(id instanceof String)) {
+            return false;
+        }
+        figureId = (String) id;
+        changedInPage = true;
+        return true;
+    }
+
+    public String lastError() {
+        return lastError;
+    }
+
+    public void show(PlotSource plot) {
+        plot.retain();
+        if (current != null) {
+            current.release();
+        }
+        current = plot;
+        changedInPage = false;
+        figureId = null;
+        if (!plot.isFigure()) {
+            pendingFigure = null;
+            shellReady = false;
+            shellLoading = false;
+            if (plot.isFile()) {
+                engine().load(plot.file().toUri().toString());
+            } else {
+                engine().loadContent(plot.html());
+            }
+            return;
+        }
+        String json;
+        try {
+            json = plot.readHtml();
+        } catch (IOException e) {
+            lastError = e.getMessage();
+            System.err.println("Could not read figure: " + e.getMessage());
+            return;
+        }
+        String id = figureId(json);
+        if (shellReady) {
+            render(json, id);
+        } else {
+            pendingFigure = json;
+            pendingFigureId = id;
+            if (!shellLoading && shellFile != null) {
+                loadShell();
+            }
+        }
+    }
+
+    // Lets go of the plot on screen when the view is discarded
+    public void close() {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+        pendingFigure = null;
+    }
+
+    // Shows the current plot again from scratch (a fresh shell for figures)
+    public void reload() {
+        if (current() != null && current.isFigure() && shellFile != null) {
+            loadShell();
+            show(current);
+        } else {
+            engine().reload();
+        }
+    }
+
+    private void loadShell() {
+        shellReady = false;
+        shellLoading = true;
+        engine().load(shellFile.toUri().toString());
+    }
+
+    private void pageLoaded() {
+        if (!shellLoading) {
+            // A standalone HTML plot
+            onRendered.run();
+            return;
+        }
+        shellLoading = false;
+        JSObject window = (JSObject) engine().executeScript("window");
+        window.setMember("vizBridge", bridge);
+        shellReady = true;
+        if (pendingFigure != null) {
+            String json = pendingFigure;
+            pendingFigure = null;
+            render(json, pendingFigureId);
+        }
+    }
+
+    private void render(String json, String id) {
+        try {
+            JSObject window = (JSObject) engine().executeScript("window");
+            window.call("vizRender", json, id);
+            figureId = id;
+        } catch (RuntimeException e) {
+            // plotly.js missing or broken: the shell cannot draw anything
+            lastError = e.getMessage();
+            System.err.println("Figure render failed: " + e.getMessage());
+        }
+    }
+
+    // First 16 hex digits of the SHA-1 of the figure JSON, as the server
+    // computes them
+    static String figureId(String json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(json.getBytes(StandardCharsets.UTF_8));
+            StringBuilder id = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                id.append(String.format("%02x", digest[i]));
+            }
+            return id.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
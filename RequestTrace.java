@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Timestamps for one request on both sides of the connection.
+//
+// The client marks each stage as it finishes (dequeued by the writer,
+// encoded, sent, reply header received, decoded, displayed), relative to
+// submit. When tracing was agreed at login the server does the same from the
+// moment the command frame arrived and sends its stages in a TRACE frame
+// ahead of the reply; those are placed inside the client's sent → header
+// window, centred, since the two clocks are not comparable. Whatever is left
+// of that window is network and queueing.
+//
+// Must stay in sync with _trace_frame in secure_server.py.
+public final class RequestTrace {
+
+    private static final Pattern SERVER_STAGE = Pattern.compile("\\[\\s*\"([a-z_]+)\"\\s*,\\s*([-0-9.eE+]+)\\s*\\]");
+    private static final int BAR_WIDTH = 40;
+
+    private final String id;
+    private final int requestId;
+    private final Command.Type type;
+    private final long startNanos = System.nanoTime();
+    private final long startEpochMillis = System.currentTimeMillis();
+    private final List<String> clientStages = new ArrayList<>();
+    private final List<Long> clientNanos = new ArrayList<>();
+    private final List<String> serverStages = new ArrayList<>();
+    private final List<Double> serverMillis = new ArrayList<>();
+
+    public RequestTrace(int requestId, Command.Type type) {
+        this.id = String.format("%016x", ThreadLocalRandom.current().nextLong());
+        this.requestId = requestId;
+        this.type = type;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public Command.Type type() {
+        return type;
+    }
+
+    public synchronized void mark(String stage) {
+        clientStages.add(stage);
+        clientNanos.add(System.nanoTime() - startNanos);
+    }
+
+    // The server's stages: [["decoded", 0.1], ["processed", 812.4], ...] in
+    // ms since it read the command frame
+    public synchronized void setServerTimings(String json) {
+        serverStages.clear();
+        serverMillis.clear();
+        Matcher matcher = SERVER_STAGE.matcher(json);
+        while (matcher.find()) {
+            serverStages.add(matcher.group(1));
+            serverMillis.add(Double.parseDouble(matcher.group(2)));
+        }
+    }
+
+    public synchronized boolean hasServerTimings() {
+        return !serverStages.isEmpty();
+    }
+
+    // Submit to the last client stage so far
+    public synchronized double totalMillis() {
+        return clientNanos.isEmpty() ? 0.0 : clientNanos.get(clientNanos.size() - 1) / 1e6;
+    }
+
+    private synchronized double clientMillis(String stage) {
+        int index = clientStages.indexOf(stage);
+        return index < 0 ? -1 : clientNanos.get(index) / 1e6;
+    }
+
+    // Client offset of the server's first stage: the network time either
+    // side of the server's span is assumed equal
+    private synchronized double serverOffsetMillis() {
+        double sent = clientMillis("sent");
+        double received = clientMillis("received");
+        if (sent < 0 || received < 0 || serverStages.isEmpty()) {
+            return -1;
+        }
+        double serverTotal = serverMillis.get(serverMillis.size() - 1);
+        return sent + Math.max(0, received - sent - serverTotal) / 2;
+    }
+
+    // One row per stage, with a bar placed on the request's timeline:
+    //   client encoded              0.3 ms      +0.2  █
+    //   server figure_built      130.8 ms    +128.0   ███████████
+    public synchronized String waterfall() {
+        StringBuilder text = new StringBuilder(String.format("⏱️ Trace %s · %s #%d · %.1f ms%n",
+            id, type.name().toLowerCase(Locale.ROOT), requestId, totalMillis()));
+        double total = Math.max(totalMillis(), 0.001);
+        double previous = 0;
+        double serverStart = serverOffsetMillis();
+        boolean serverShown = serverStart < 0;
+        for (int i = 0; i < clientStages.size(); i++) {
+            double end = clientNanos.get(i) / 1e6;
+            if (!serverShown && clientStages.get(i).equals("received")) {
+                double serverPrevious = serverStart;
+                for (int j = 0; j < serverStages.size(); j++) {
+                    double serverEnd = serverStart + serverMillis.get(j);
+                    row(text, "server", serverStages.get(j), serverPrevious, serverEnd, total);
+                    serverPrevious = serverEnd;
+                }
+                serverShown = true;
+            }
+            row(text, "client", clientStages.get(i), previous, end, total);
+            previous = end;
+        }
+        return text.toString();
+    }
+
+    // The longest single stage on either side, e.g. "server to_html 5210.4 ms".
+    // The client's wait for the reply counts only the part the server did not
+    // account for (network and queueing).
+    public synchronized String slowestStage() {
+        String slowest = null;
+        double longest = -1;
+        double previous = 0;
+        double serverTotal = serverMillis.isEmpty() ? 0 : serverMillis.get(serverMillis.size() - 1);
+        for (int i = 0; i < clientStages.size(); i++) {
+            double end = clientNanos.get(i) / 1e6;
+            boolean waiting = clientStages.get(i).equals("received");
+            double duration = end - previous - (waiting ? serverTotal : 0);
+            if (duration > longest) {
+                longest = duration;
+                slowest = waiting && serverTotal > 0 ? "network" : "client " + clientStages.get(i);
+            }
+            previous = end;
+        }
+        previous = 0;
+        for (int i = 0; i < serverStages.size(); i++) {
+            double end = serverMillis.get(i);
+            if (end - previous > longest) {
+                longest = end - previous;
+                slowest = "server " + serverStages.get(i);
+            }
+            previous = end;
+        }
+        return slowest == null ? "none" : String.format("%s %.1f ms", slowest, longest);
+    }
+
+    private static void row(StringBuilder text, String side, String stage, double start, double end, double total) {
+        int from = (int) Math.round(start / total * BAR_WIDTH);
+        int to = Math.max(from + 1, (int) Math.round(end / total * BAR_WIDTH));
+        StringBuilder bar = new StringBuilder();
+        for (int i = 0; i < Math.min(to, BAR_WIDTH + 1); i++) {
+            bar.append(i < from ? ' ' : '█');
+        }
+        text.append(String.format("  %-6s %-14s %9.1f ms %+9.1f  %s%n", side, stage, end, end - start, bar));
+    }
+
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"trace\": \"").append(id)
+            .append("\", \"request_id\": ").append(requestId)
+            .append(", \"type\": \"").append(type.name().toLowerCase(Locale.ROOT))
+            .append("\", \"start_epoch_ms\": ").append(startEpochMillis)
+            .append(", \"client\": [");
+        for (int i = 0; i < clientStages.size(); i++) {
+            json.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT, "[\"%s\", %.3f]",
+                clientStages.get(i), clientNanos.get(i) / 1e6));
+        }
+        json.append("], \"server\": [");
+        for (int i = 0; i < serverStages.size(); i++) {
+            json.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT, "[\"%s\", %.3f]",
+                serverStages.get(i), serverMillis.get(i)));
+        }
+        double serverStart = serverOffsetMillis();
+        if (serverStart >= 0) {
+            json.append(String.format(Locale.ROOT, "], \"server_offset_ms\": %.3f}", serverStart));
+        } else {
+            json.append("]}");
+        }
+        return json.toString();
+    }
+}
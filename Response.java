@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// A server reply, tagged with the request id it answers.
+//
+// The server still marks its replies with text prefixes (HTML_PLOT:, COLUMNS:,
+// ...); the prefix is parsed once here so consumers switch on kind() instead
+// of repeating startsWith chains.
+public final class Response {
+
+    public enum Kind {
+        PLOT("HTML_PLOT:"),
+        PLOT_FALLBACK("HTML_PLOT_FALLBACK:"),
+        FIGURE("FIGURE_PLOT:"),            // Plotly figure JSON, for format=figure plot requests
+        FIGURE_FALLBACK("FIGURE_PLOT_FALLBACK:"),
+        FIGURE_DELTA("FIGURE_DELTA:"),     // Changes against the figure a plot request named as its base
+        PNG("PNG_PLOT:"),                  // Base64 PNG, for format=png plot requests
+        COLUMNS("COLUMNS:"),
+        STATS("STATS:"),
+        PLOTLYJS("PLOTLYJS:"),
+        SUBSCRIBED("SUBSCRIBED:"),
+        STREAM_ROWS("STREAM_ROWS:"),       // Pushed (request id 0) while subscribed: {"x", "y", "rows", "total"}
+        DISCONNECT("DISCONNECT"),
+        DATASET(""),
+        ERROR(""),
+        TEXT("");
+
+        private final String prefix;
+
+        Kind(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String prefix() {
+            return prefix;
+        }
+
+        // Replies PlotView can show: a page or a figure
+        public boolean isPlot() {
+            return this == PLOT || this == PLOT_FALLBACK || this == FIGURE || this == FIGURE_FALLBACK;
+        }
+
+        public boolean isFigure() {
+            return this == FIGURE || this == FIGURE_FALLBACK;
+        }
+    }
+
+    private final int requestId;
+    private final String body;
+    private final Kind kind;
+    private final Path file;
+    private final byte[] data;
+    private volatile RequestTrace trace;
+    private PlotSource plot;
+
+    public Response(int requestId, String body) {
+        this.requestId = requestId;
+        this.body = body;
+        this.kind = classify(body);
+        this.file = null;
+        this.data = null;
+    }
+
+    // A reply whose payload was streamed to a spool file instead of memory
+    public Response(int requestId, Kind kind, Path file) {
+        this.requestId = requestId;
+        this.body = kind.prefix();
+        this.kind = kind;
+        this.file = file;
+        this.data = null;
+    }
+
+    // A binary reply (TYPE_DATASET frame)
+    public Response(int requestId, byte[] data) {
+        this.requestId = requestId;
+        this.body = "";
+        this.kind = Kind.DATASET;
+        this.file = null;
+        this.data = data;
+    }
+
+    public int requestId() {
+        return requestId;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    // The full reply text, including any prefix. Only the prefix for
+    // streamed replies.
+    public String body() {
+        return body;
+    }
+
+    // The reply text with the kind prefix stripped. Streamed replies are read
+    // back from their spool file, so prefer plot() for those.
+    public String payload() {
+        if (file != null) {
+            try {
+                return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return body.substring(kind.prefix().length());
+    }
+
+    // Raw bytes of a DATASET reply, null for text replies
+    public byte[] data() {
+        return data;
+    }
+
+    public boolean isStreamed() {
+        return file != null;
+    }
+
+    // The payload of a plot reply, without copying a streamed file into memory.
+    // Always the same PlotSource, so its spool file has a single owner count.
+    public synchronized PlotSource plot() {
+        if (plot == null) {
+            if (kind.isFigure()) {
+                plot = file != null ? PlotSource.figureFile(file) : PlotSource.figure(payload());
+            } else {
+                plot = file != null ? PlotSource.file(file) : PlotSource.inline(payload());
+            }
+        }
+        return plot;
+    }
+
+    // Stage timings for the request this answers; null for unsolicited replies
+    public RequestTrace trace() {
+        return trace;
+    }
+
+    void attachTrace(RequestTrace trace) {
+        this.trace = trace;
+    }
+
+    public boolean isError() {
+        return kind == Kind.ERROR;
+    }
+
+    // Kind of a reply given (at least) its first few characters
+    public static Kind classify(String body) {
+        if (body.startsWith("HTML_PLOT:")) {
+            return Kind.PLOT;
+        } else if (body.startsWith("HTML_PLOT_FALLBACK:")) {
+            return Kind.PLOT_FALLBACK;
+        } else if (body.startsWith("FIGURE_PLOT:")) {
+            return Kind.FIGURE;
+        } else if (body.startsWith("FIGURE_PLOT_FALLBACK:")) {
+            return Kind.FIGURE_FALLBACK;
+        } else if (body.startsWith("FIGURE_DELTA:")) {
+            return Kind.FIGURE_DELTA;
+        } else if (body.startsWith("PNG_PLOT:")) {
+            return Kind.PNG;
+        } else if (body.startsWith("COLUMNS:")) {
+            return Kind.COLUMNS;
+        } else if (body.startsWith("STATS:")) {
+            return Kind.STATS;
+        } else if (body.startsWith("PLOTLYJS:")) {
+            return Kind.PLOTLYJS;
+        } else if (body.startsWith("SUBSCRIBED:")) {
+            return Kind.SUBSCRIBED;
+        } else if (body.startsWith("STREAM_ROWS:")) {
+            return Kind.STREAM_ROWS;
+        } else if (body.equals("DISCONNECT")) {
+            return Kind.DISCONNECT;
+        } else if (body.startsWith("ERROR") || body.startsWith("EXEC_ERROR")) {
+            return Kind.ERROR;
+        }
+        return Kind.TEXT;
+    }
+}
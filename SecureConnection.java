@@ -0,0 +1,624 @@
+import javax.net.ssl.*;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One authenticated TLS connection to the visualization server.
+//
+// submit() tags every command with a request id and returns a future that is
+// completed when the reply carrying the same id comes back, so any number of
+// commands can be in flight on the single socket. Legacy (Base64 stream)
+// servers have no ids; there replies are matched to requests in send order.
+public class SecureConnection implements ServerConnection {
+
+    public interface Listener {
+        // A reply that no pending request was waiting for
+        void onUnsolicitedResponse(Response response);
+
+        // The connection dropped without close() being called
+        void onDisconnected(String reason);
+    }
+
+    private static final long RESPONSE_TIMEOUT_SECONDS = 300;
+    // Frames above this compressed size are inflated as a stream, never buffered whole
+    private static final int STREAM_THRESHOLD_BYTES =
+        Integer.getInteger("viz.stream.thresholdBytes", 256 * 1024);
+    private static final int PREFIX_PEEK_BYTES = 32;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    // Ask the server for per-stage timings (RequestTrace) unless -Dviz.trace=false
+    private static final boolean REQUEST_TRACING = !"false".equals(System.getProperty("viz.trace"));
+    // Resumable sessions (TLS 1.3 tickets, TLS 1.2 session ids) are kept this long
+    private static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+    // Enable modern TLS protocols
+    static final String[] ENABLED_PROTOCOLS = {"TLSv1.2", "TLSv1.3"};
+    static final String[] ENABLED_CIPHER_SUITES = {
+        "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+        "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+        "TLS_AES_256_GCM_SHA384",
+        "TLS_AES_128_GCM_SHA256"
+    };
+
+    // Shared for the life of the process: the context's client session cache
+    // is what lets a reconnect resume instead of doing a full handshake
+    private static SSLContext sslContext;
+    private static SSLSocketFactory socketFactory;
+
+    private final String host;
+    private final int port;
+    private final Executor writeExecutor;
+    // Set when the connection owns its write executor; shut down on close so
+    // writes still in flight are cancelled with the connection
+    private final ExecutorService ownedExecutor;
+    private final Listener listener;
+
+    private SSLSocket socket;
+    private DataInputStream dataIn;
+    private DataOutputStream dataOut;
+    private volatile boolean connected = false;
+    private volatile boolean framed = false;
+    private volatile boolean traced = false;
+    // Negotiated at login; legacy servers always get GZIP+Base64
+    private volatile PayloadCodec codec = PayloadCodec.GZIP;
+    private volatile CodecStats codecStats = new CodecStats();
+
+    // Timings of the last connect()
+    private long connectNanos;
+    private long handshakeNanos;
+    private long authNanos;
+    private boolean resumed;
+    private String tlsProtocol = "";
+
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private final Map<Integer, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+    private final Map<Integer, RequestTrace> traces = new ConcurrentHashMap<>();
+    // Legacy mode only: request ids in the order they went out on the wire
+    private final ConcurrentLinkedQueue<Integer> legacyOrder = new ConcurrentLinkedQueue<>();
+
+    public SecureConnection(String host, int port, Executor writeExecutor, Listener listener) {
+        this(host, port, writeExecutor, null, listener);
+    }
+
+    // Each command is compressed and written by a task of its own
+    // (see ClientExecutors), cancelled when the connection closes
+    public SecureConnection(String host, int port, Listener listener) {
+        this(host, port, null, ClientExecutors.newTaskExecutor("Server-Writer"), listener);
+    }
+
+    private SecureConnection(String host, int port, Executor writeExecutor, ExecutorService ownedExecutor,
+                             Listener listener) {
+        this.host = host;
+        this.port = port;
+        this.writeExecutor = writeExecutor != null ? writeExecutor : ownedExecutor;
+        this.ownedExecutor = ownedExecutor;
+        this.listener = listener;
+    }
+
+    // SSL Trust Manager that accepts all certificates (Development Only)
+    private static class TrustAllManager implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            // Trust all client certificates
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            // Trust all server certificates - DEVELOPMENT ONLY!
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+
+    // Create SSL context that trusts all certificates
+    private static SSLContext createTrustAllSSLContext() throws GeneralSecurityException {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{new TrustAllManager()}, new SecureRandom());
+        sslContext.getClientSessionContext().setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        return sslContext;
+    }
+
+    static synchronized SSLContext sslContext() throws GeneralSecurityException {
+        if (sslContext == null) {
+            sslContext = createTrustAllSSLContext();
+        }
+        return sslContext;
+    }
+
+    private static synchronized SSLSocketFactory socketFactory() throws GeneralSecurityException {
+        if (socketFactory == null) {
+            socketFactory = sslContext().getSocketFactory();
+        }
+        return socketFactory;
+    }
+
+    // Opens the socket, authenticates and starts the listener thread.
+    // Returns the raw authentication response.
+    public String connect(String username, String password, boolean requestFramed)
+            throws IOException, GeneralSecurityException {
+        try {
+            SSLSocketFactory factory = socketFactory();
+
+            long start = System.nanoTime();
+            socket = (SSLSocket) factory.createSocket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(30000);
+            long tcpDone = System.nanoTime();
+
+            socket.setEnabledProtocols(ENABLED_PROTOCOLS);
+            socket.setEnabledCipherSuites(ENABLED_CIPHER_SUITES);
+
+            // Handshake explicitly so it can be timed apart from authentication.
+            // A resumed session keeps the creation time of the one it resumes.
+            long handshakeStart = System.currentTimeMillis();
+            socket.startHandshake();
+            long handshakeDone = System.nanoTime();
+            SSLSession session = socket.getSession();
+            resumed = session.getCreationTime() < handshakeStart;
+            tlsProtocol = session.getProtocol();
+            connectNanos = tcpDone - start;
+            handshakeNanos = handshakeDone - tcpDone;
+
+            dataIn = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+            // Buffered so a frame header and its payload leave as one TLS record
+            dataOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+
+            // Send authentication (and ask for the framed protocol)
+            dataOut.write(authRequest(username, password, requestFramed ? "framed" : "legacy", REQUEST_TRACING));
+            dataOut.flush();
+
+            // Read authentication response with timeout; stop at its closing
+            // brace so the first frame stays buffered for the listener
+            AuthReply reply = new AuthReply();
+            boolean complete = false;
+            while (!complete) {
+                int b = dataIn.read();
+                if (b == -1) {
+                    throw new IOException("Server closed connection during authentication");
+                }
+                complete = reply.add((byte) b);
+            }
+
+            String response = reply.text();
+            authNanos = System.nanoTime() - handshakeDone;
+
+            if (!authSucceeded(response)) {
+                throw new IOException("Authentication failed: " + response);
+            }
+
+            // Older servers ignore the protocol field and keep talking Base64
+            framed = requestFramed && grantedProtocol(response, "framed");
+            codec = framed ? PayloadCodec.negotiated(response) : PayloadCodec.GZIP;
+            traced = framed && REQUEST_TRACING && grantedTracing(response);
+            connected = true;
+            startListener();
+            return response;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    static byte[] authRequest(String username, String password, String protocol, boolean trace) {
+        return String.format(
+            "{\"username\": \"%s\", \"password\": \"%s\", \"protocol\": \"%s\", \"codecs\": [%s]%s}",
+            username, password, protocol, offeredCodecs(), trace ? ", \"trace\": true" : ""
+        ).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String offeredCodecs() {
+        StringBuilder names = new StringBuilder();
+        for (String name : PayloadCodec.offered()) {
+            names.append(names.length() == 0 ? "\"" : ", \"").append(name).append('"');
+        }
+        return names.toString();
+    }
+
+    // The server's authentication reply is one JSON object with no delimiter
+    // after it, so it ends where the top-level braces balance. Fed one byte
+    // at a time, from a stream or from unwrapped TLS records
+    static final class AuthReply {
+        private static final int MAX_AUTH_RESPONSE = 64 * 1024;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+
+        // True once b closes the object
+        boolean add(byte b) throws IOException {
+            if (bytes.size() == MAX_AUTH_RESPONSE) {
+                throw new IOException("Authentication response too large");
+            }
+            bytes.write(b);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{') {
+                depth++;
+            } else if (b == '}') {
+                return --depth == 0;
+            }
+            return false;
+        }
+
+        String text() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    static boolean authSucceeded(String response) {
+        return response.contains("\"status\": \"success\"") ||
+               response.contains("\"status\":\"success\"") ||
+               (response.contains("success") && response.contains("token"));
+    }
+
+    // Servers that predate tracing ignore the request and would reject TRACE frames
+    static boolean grantedTracing(String response) {
+        return response.contains("\"trace\": true") || response.contains("\"trace\":true");
+    }
+
+    static boolean grantedProtocol(String response, String protocol) {
+        return response.contains("\"protocol\": \"" + protocol + "\"") ||
+               response.contains("\"protocol\":\"" + protocol + "\"");
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isFramed() {
+        return framed;
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public long handshakeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(handshakeNanos);
+    }
+
+    // e.g. "TCP 1 ms, TLSv1.3 4 ms (resumed), auth 2 ms"
+    public String timingSummary() {
+        return String.format("TCP %d ms, %s %d ms (%s), auth %d ms",
+            TimeUnit.NANOSECONDS.toMillis(connectNanos), tlsProtocol, handshakeMillis(),
+            resumed ? "resumed" : "full handshake", TimeUnit.NANOSECONDS.toMillis(authNanos));
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public PayloadCodec codec() {
+        return codec;
+    }
+
+    @Override
+    public String codecSummary() {
+        return codec.name() + ": " + codecStats.describe() + "; " + BufferPool.describe();
+    }
+
+    @Override
+    public void reportCodecStatsTo(CodecStats totals) {
+        codecStats = new CodecStats(totals);
+    }
+
+    public CompletableFuture<Response> submit(Command command) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        if (!connected) {
+            future.completeExceptionally(new IOException("Not connected to server"));
+            return future;
+        }
+
+        int requestId = nextRequestId.getAndIncrement();
+        RequestTrace trace = new RequestTrace(requestId, command.type());
+        pending.put(requestId, future);
+        traces.put(requestId, trace);
+        future.orTimeout(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+              .whenComplete((response, error) -> {
+                  pending.remove(requestId);
+                  traces.remove(requestId);
+              });
+
+        try {
+            writeExecutor.execute(() -> {
+                try {
+                    trace.mark("dequeued");
+                    write(requestId, command.text(), trace);
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new IOException("Connection is shutting down", e));
+        }
+        return future;
+    }
+
+    private void write(int requestId, String text, RequestTrace trace) throws IOException {
+        if (framed) {
+            byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+            PayloadCodec frameCodec = codec.forSize(raw.length);
+            BufferPool.Buffer payload = BufferPool.acquire(raw.length);
+            try {
+                long start = System.nanoTime();
+                int length = frameCodec.encode(raw, 0, raw.length, payload);
+                codecStats.recordSent(requestId, frameCodec, raw.length, length, System.nanoTime() - start);
+                trace.mark("encoded");
+                synchronized (dataOut) {
+                    // The trace id goes just ahead of its command, in the same flush
+                    if (traced) {
+                        byte[] traceId = trace.id().getBytes(StandardCharsets.US_ASCII);
+                        FrameCodec.appendFrame(dataOut, FrameCodec.TYPE_TRACE, FrameCodec.CODEC_NONE,
+                            requestId, traceId, 0, traceId.length);
+                    }
+                    FrameCodec.appendFrame(dataOut, FrameCodec.TYPE_COMMAND, frameCodec.id(),
+                        requestId, payload.array(), 0, length);
+                    dataOut.flush();
+                }
+            } finally {
+                BufferPool.release(payload);
+            }
+        } else {
+            byte[] payload = compressData(text);
+            trace.mark("encoded");
+            synchronized (dataOut) {
+                legacyOrder.add(requestId);
+                dataOut.write(payload);
+                dataOut.flush();
+            }
+        }
+        trace.mark("sent");
+    }
+
+    private void startListener() {
+        ClientExecutors.startThread("Server-Listener", () -> {
+            byte[] buffer = new byte[65536];
+            FrameCodec.FrameReader frameReader = new FrameCodec.FrameReader();
+            String reason = null;
+
+            while (connected) {
+                try {
+                    if (framed) {
+                        FrameCodec.Frame frame = frameReader.readHeader(dataIn);
+                        if (frame == null) {
+                            reason = "Server closed connection";
+                            break;
+                        }
+                        RequestTrace trace = traces.get(frame.requestId());
+                        if (frame.type() == FrameCodec.TYPE_TRACE) {
+                            frameReader.readPayload(dataIn);
+                            if (trace != null) {
+                                trace.setServerTimings(new String(frame.payload(), 0, frame.length(),
+                                    StandardCharsets.UTF_8));
+                            }
+                            continue;
+                        }
+                        if (trace != null) {
+                            trace.mark("received");
+                        }
+                        if (frame.type() == FrameCodec.TYPE_DATASET || frame.length() > STREAM_THRESHOLD_BYTES) {
+                            dispatch(readStreamed(frameReader, frame));
+                        } else {
+                            frameReader.readPayload(dataIn);
+                            dispatch(decodeFrame(frame.type(), frame.codec(), frame.requestId(),
+                                frame.payload(), 0, frame.length(), codecStats));
+                        }
+                    } else {
+                        int bytesRead = dataIn.read(buffer);
+                        if (bytesRead == -1) {
+                            reason = "Server closed connection";
+                            break;
+                        }
+                        Integer requestId = legacyOrder.poll();
+                        RequestTrace trace = requestId != null ? traces.get(requestId) : null;
+                        if (trace != null) {
+                            trace.mark("received");
+                        }
+                        dispatch(requestId != null ? requestId : 0, decompressData(buffer, bytesRead));
+                    }
+                } catch (SocketTimeoutException e) {
+                    continue;
+                } catch (IOException e) {
+                    reason = "Connection error: " + e.getMessage();
+                    break;
+                } catch (Exception e) {
+                    System.err.println("Error processing response: " + e.getMessage());
+                }
+            }
+
+            if (connected) {
+                close();
+                listener.onDisconnected(reason != null ? reason : "Connection lost");
+            }
+        });
+    }
+
+    // Inflates a large or binary frame straight from the socket
+    private Response readStreamed(FrameCodec.FrameReader frameReader, FrameCodec.Frame frame) throws IOException {
+        try {
+            return decodeFrame(frame.type(), frame.codec(), frame.requestId(),
+                frameReader.payloadStream(dataIn), frame.length(), codecStats);
+        } catch (SocketTimeoutException e) {
+            // A timeout inside a frame leaves the stream out of sync
+            throw new IOException("Timed out mid-frame (" + frame.length() + " byte payload)", e);
+        }
+    }
+
+    // Decodes one reply frame from its encoded payload. Binary frames are
+    // always inflated into a byte array of their own, plot HTML above the
+    // stream threshold goes to a spool file, and anything else is collected
+    // in memory. Closing the payload stream must skip whatever is left of it.
+    static Response decodeFrame(byte type, byte codecId, int requestId, InputStream payload, int length,
+                                CodecStats stats) throws IOException {
+        PayloadCodec codec;
+        try {
+            codec = PayloadCodec.forId(codecId);
+        } catch (IOException e) {
+            payload.close();
+            throw e;
+        }
+
+        long start = System.nanoTime();
+        Response response;
+        long raw;
+        try (InputStream body = codec.decode(payload)) {
+            if (type == FrameCodec.TYPE_DATASET) {
+                byte[] data = body.readAllBytes();
+                response = new Response(requestId, data);
+                raw = data.length;
+            } else {
+                byte[] head = new byte[PREFIX_PEEK_BYTES];
+                int headLength = body.readNBytes(head, 0, head.length);
+                Response.Kind kind = Response.classify(new String(head, 0, headLength, "ISO-8859-1"));
+
+                if (length > STREAM_THRESHOLD_BYTES && kind.isPlot()) {
+                    int prefixLength = kind.prefix().length();
+                    Path file = PlotSource.newSpoolFile();
+                    try (OutputStream out = Files.newOutputStream(file)) {
+                        out.write(head, prefixLength, headLength - prefixLength);
+                        raw = headLength + body.transferTo(out);
+                    }
+                    response = new Response(requestId, kind, file);
+                } else {
+                    BufferPool.Buffer text = BufferPool.acquire(PayloadCodec.sizeGuess(length));
+                    try {
+                        System.arraycopy(head, 0, text.array(), 0, headLength);
+                        int textLength = PayloadCodec.readFully(body, text, headLength);
+                        response = new Response(requestId, new String(text.array(), 0, textLength, StandardCharsets.UTF_8));
+                        raw = textLength;
+                    } finally {
+                        BufferPool.release(text);
+                    }
+                }
+            }
+        }
+        stats.recordReceived(requestId, codec, raw, length, System.nanoTime() - start);
+        return response;
+    }
+
+    // Decodes a reply frame already read into memory, the common case for
+    // command replies: inflates into a pooled buffer sized from the payload
+    // itself and keeps only the final String. Shared with NioSecureConnection.
+    static Response decodeFrame(byte type, byte codecId, int requestId, byte[] payload, int offset, int length,
+                                CodecStats stats) throws IOException {
+        if (type == FrameCodec.TYPE_DATASET || length > STREAM_THRESHOLD_BYTES) {
+            return decodeFrame(type, codecId, requestId, new ByteArrayInputStream(payload, offset, length), length,
+                stats);
+        }
+        PayloadCodec codec = PayloadCodec.forId(codecId);
+        BufferPool.Buffer text = BufferPool.acquire(0);
+        try {
+            long start = System.nanoTime();
+            int textLength = codec.decode(payload, offset, length, text);
+            Response response = new Response(requestId, new String(text.array(), 0, textLength, StandardCharsets.UTF_8));
+            stats.recordReceived(requestId, codec, textLength, length, System.nanoTime() - start);
+            return response;
+        } finally {
+            BufferPool.release(text);
+        }
+    }
+
+    private void dispatch(int requestId, String body) {
+        dispatch(new Response(requestId, body));
+    }
+
+    private void dispatch(Response response) {
+        int requestId = response.requestId();
+        RequestTrace trace = traces.remove(requestId);
+        if (trace != null) {
+            trace.mark("decoded");
+            response.attachTrace(trace);
+        }
+        CompletableFuture<Response> future = pending.remove(requestId);
+        if (future != null) {
+            future.complete(response);
+        } else {
+            listener.onUnsolicitedResponse(response);
+        }
+    }
+
+    @Override
+    public void close() {
+        connected = false;
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdownNow();
+        }
+        try {
+            if (socket != null && !socket.isClosed()) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+
+        IOException closed = new IOException("Connection closed");
+        for (CompletableFuture<Response> future : pending.values()) {
+            future.completeExceptionally(closed);
+        }
+        pending.clear();
+        traces.clear();
+        legacyOrder.clear();
+    }
+
+    // Compression Methods
+    // Legacy servers only speak GZIP, Base64 encoded
+    private static byte[] compressData(String data) {
+        long startTime = System.currentTimeMillis();
+        byte[] raw = data.getBytes(StandardCharsets.UTF_8);
+        BufferPool.Buffer compressed = BufferPool.acquire(raw.length);
+        try {
+            int length = PayloadCodec.GZIP.encode(raw, 0, raw.length, compressed);
+            long duration = System.currentTimeMillis() - startTime;
+            if (duration > 100) {
+                System.out.println("Compression took: " + duration + "ms");
+            }
+            return Base64.getEncoder().encode(ByteBuffer.wrap(compressed.array(), 0, length)).array();
+        } finally {
+            BufferPool.release(compressed);
+        }
+    }
+
+    private static String decompressData(byte[] data, int length) {
+        BufferPool.Buffer text = BufferPool.acquire(0);
+        try {
+            ByteBuffer compressed = Base64.getDecoder().decode(ByteBuffer.wrap(data, 0, length));
+            int textLength = PayloadCodec.GZIP.decode(compressed.array(), compressed.arrayOffset() + compressed.position(),
+                compressed.remaining(), text);
+            return new String(text.array(), 0, textLength, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            System.err.println("❌ Decompression error: " + e.getMessage());
+            return new String(data, 0, length, StandardCharsets.UTF_8);
+        } finally {
+            BufferPool.release(text);
+        }
+    }
+}
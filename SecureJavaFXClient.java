@@ -1,37 +1,53 @@
+import com.sun.net.httpserver.HttpServer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
 import javafx.scene.layout.*;
+import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
+import netscape.javascript.JSObject;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.Modality;
 
-import javax.net.ssl.*;
 import java.io.*;
-import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
-import java.util.Base64;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class SecureJavaFXClient extends Application {
     
     // UI Components
     private TextArea commandInput;
-    private TextArea outputArea;
+    private Region outputView;
     private WebView plotWebView;
+    // Keeps plotly.js loaded in plotWebView; figures update it with Plotly.react
+    private PlotView plotView;
+    private final AtomicReference<PlotSource> queuedPlot = new AtomicReference<>();
     private Button sendButton;
     private Button disconnectButton;
     private Button loginButton;
@@ -40,9 +56,7 @@ public class SecureJavaFXClient extends Application {
     private ProgressIndicator connectionProgress;
     
     // Connection components
-    private SSLSocket clientSocket;
-    private DataInputStream dataIn;
-    private DataOutputStream dataOut;
+    private volatile SecureConnection connection;
     private volatile boolean connected = false;
     private volatile boolean authenticating = false;
     
@@ -51,9 +65,54 @@ public class SecureJavaFXClient extends Application {
     private String username = "admin";
     private String password = "password123";
     
+    // Framed binary protocol unless started with -Dviz.protocol=legacy
+    private static final boolean REQUEST_FRAMED_PROTOCOL =
+        !"legacy".equalsIgnoreCase(System.getProperty("viz.protocol", "framed"));
+    
     // Performance optimization
-    private Map<String, String> plotCache = new HashMap<>();
-    private ScheduledExecutorService scheduler;
+    private static final long PLOT_CACHE_MAX_BYTES =
+        Long.getLong("viz.plotCache.maxBytes", 64L * 1024 * 1024);
+    private final PlotCache plotCache = new PlotCache(PLOT_CACHE_MAX_BYTES);
+    // Bumped whenever the server-side DataFrame may have changed
+    private volatile long datasetVersion = 0;
+    // Content hash of the loaded CSV; null when unknown or modified by a statement
+    private volatile String datasetFingerprint;
+    private volatile DiskPlotCache diskPlotCache;
+    private static final Path DISK_CACHE_DIR = Paths.get(System.getProperty("viz.diskCache.dir",
+        Paths.get(System.getProperty("user.home"), ".secure-viz", "plot-cache").toString()));
+    private static final long DISK_CACHE_MAX_BYTES =
+        Long.getLong("viz.diskCache.maxBytes", 512L * 1024 * 1024);
+    private static final long DISK_CACHE_MAX_AGE_MILLIS =
+        TimeUnit.DAYS.toMillis(Long.getLong("viz.diskCache.maxAgeDays", 7));
+    // Local rendering: columns fetched once with get_dataset, figures built client-side
+    private static final Path PLOTLY_JS_FILE = Paths.get(System.getProperty("user.home"),
+        ".secure-viz", "plotly.min.js");
+    private volatile ColumnarDataset localDataset;
+    private volatile long localDatasetVersion = -1;
+    // Set while the local store holds a CSV opened on this machine rather
+    // than a copy of the server's DataFrame
+    private volatile boolean localDatasetFromFile = false;
+    private CompletableFuture<Path> plotlyJsFuture;
+    
+    // Level of detail: line/scatter/area plots are decimated to a point budget
+    // tied to the WebView width and refined for the visible range on zoom
+    private static final int LOD_POINTS_PER_PIXEL = Integer.getInteger("viz.lod.pointsPerPixel", 2);
+    private final LodBridge lodBridge = new LodBridge();
+    private volatile PlotRequest activeLodRequest;
+    private volatile boolean activeLodLocal;
+    private ScheduledFuture<?> pendingZoom;
+    
+    // Live mode: the server tails the loaded CSV and pushes appended rows,
+    // which extend the plot on screen up to its newest viz.stream.windowPoints
+    private static final int STREAM_WINDOW_POINTS = Integer.getInteger("viz.stream.windowPoints", 10_000);
+    private static final Pattern STREAM_TOTAL_PATTERN = Pattern.compile("\"total\":\\s*(\\d+)");
+    private volatile boolean liveStreaming;
+    // Client work (connects, retries, cache I/O, local rendering) runs on
+    // tasks; the timer only fires the health check and the zoom debounce
+    private ExecutorService tasks;
+    private ScheduledExecutorService timer;
+    private Future<?> connectTask;
+    private ScheduledFuture<?> healthCheckTask;
     private int retryCount = 0;
     private final int MAX_RETRIES = 3;
     
@@ -63,9 +122,46 @@ public class SecureJavaFXClient extends Application {
     private ComboBox<String> yAxisCombo;
     private ComboBox<String> zAxisCombo;
     private TextField plotTitleField;
+    private Spinner<Integer> binsSpinner;
+    private CheckBox localRenderCheck;
+    private CheckBox lodCheck;
+    private CheckBox liveCheck;
+    private Spinner<Integer> streamIntervalSpinner;
+    private Label cacheStatsLabel;
+    
+    // Metrics: latency per command type, bytes, reconnects and gauges, shown
+    // in the live stats panel and exported as Prometheus text on a loopback
+    // port (-Dviz.metrics.port) and/or to a file (-Dviz.metrics.file)
+    private final ClientMetrics metrics = new ClientMetrics();
+    private static final int METRICS_PORT = Integer.getInteger("viz.metrics.port", 0);
+    private static final String METRICS_FILE = System.getProperty("viz.metrics.file");
+    private static final long METRICS_FILE_INTERVAL_SECONDS = Long.getLong("viz.metrics.fileIntervalSeconds", 15);
+    private HttpServer metricsServer;
+    private TitledPane statsPane;
+    private Label statsLabel;
+    // Per-request timings from both sides (RequestTrace); plots get their
+    // last stage when the WebView finishes loading them
+    private final TraceLog traceLog = new TraceLog(Integer.getInteger("viz.trace.keep", 500));
+    private static final Path TRACE_DUMP_DIR = Paths.get(System.getProperty("user.home"), ".secure-viz", "traces");
+    private RequestTrace displayingTrace;
+    // Output console: the newest viz.console.maxLines lines in memory, older
+    // ones spilled to a per-session file under viz.console.dir (the last
+    // viz.console.keepSessions files are kept) for history search
+    private static final int CONSOLE_MAX_LINES = Integer.getInteger("viz.console.maxLines", 5000);
+    private static final Path CONSOLE_DIR = Paths.get(System.getProperty("viz.console.dir",
+        Paths.get(System.getProperty("user.home"), ".secure-viz", "console").toString()));
+    private final LogConsole console = new LogConsole(CONSOLE_MAX_LINES,
+        VizConsole.sessionSpillFile(CONSOLE_DIR, Integer.getInteger("viz.console.keepSessions", 5)),
+        Integer.getInteger("viz.ui.maxPendingMessages", 10_000));
+    // Background threads hand log lines, status changes and plot swaps to the
+    // FX thread through this, applied once per pulse
+    private final UiUpdateBatcher uiUpdates = new UiUpdateBatcher(console);
     
     // Full screen stages
     private Stage fullScreenPlotStage;
+    private PlotView fullScreenPlotView;
+    // plotly.js the plot views were prepared with, null until it is on disk
+    private Path preparedPlotlyJs;
     private Stage fullScreenOutputStage;
     
     @Override
@@ -79,7 +175,13 @@ public class SecureJavaFXClient extends Application {
     }
     
     private void initializeScheduler() {
-        scheduler = Executors.newScheduledThreadPool(2);
+        tasks = ClientExecutors.newTaskExecutor("Client-Task");
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Client-Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        System.out.println("🧵 Client I/O on " + ClientExecutors.describe());
     }
     
     private void showLoginDialog(Stage primaryStage) {
@@ -142,79 +244,42 @@ public class SecureJavaFXClient extends Application {
         setupLayout();
         setupEventHandlers();
         setupAdvancedControls();
+        setupStatsPanel();
+        startMetrics();
         
         Scene scene = new Scene(mainLayout, 1400, 900);
         primaryStage.setScene(scene);
         
-        primaryStage.setOnShown(e -> connectToServerWithRetry());
+        primaryStage.setOnShown(e -> {
+            openDiskCache();
+            connectToServerWithRetry();
+        });
         primaryStage.setOnCloseRequest(e -> shutdownApplication());
         
         primaryStage.show();
     }
     
-    private void setupSecurityWarning() {
-        System.out.println("🔒 SSL Security: Trusting self-signed certificate for development");
-        System.out.println("⚠️  For production, use properly signed certificates");
-    }
-    
-    // Security and Compression Methods
-    private String compressData(String data) throws IOException {
-        long startTime = System.currentTimeMillis();
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        try (GZIPOutputStream gzipStream = new GZIPOutputStream(byteStream)) {
-            gzipStream.write(data.getBytes("UTF-8"));
-        }
-        String result = Base64.getEncoder().encodeToString(byteStream.toByteArray());
-        long duration = System.currentTimeMillis() - startTime;
-        if (duration > 100) {
-            System.out.println("Compression took: " + duration + "ms");
-        }
-        return result;
-    }
-    
-    private String decompressData(String compressedData) throws IOException {
-        try {
-            byte[] compressedBytes = Base64.getDecoder().decode(compressedData);
-            ByteArrayInputStream byteStream = new ByteArrayInputStream(compressedBytes);
-            ByteArrayOutputStream resultStream = new ByteArrayOutputStream();
-            
-            try (GZIPInputStream gzipStream = new GZIPInputStream(byteStream)) {
-                byte[] buffer = new byte[4096];
-                int length;
-                while ((length = gzipStream.read(buffer)) != -1) {
-                    resultStream.write(buffer, 0, length);
+    // Opens the persistent plot cache and shows the last plot from the previous session
+    private void openDiskCache() {
+        tasks.execute(() -> {
+            try {
+                DiskPlotCache cache = new DiskPlotCache(DISK_CACHE_DIR, DISK_CACHE_MAX_BYTES, DISK_CACHE_MAX_AGE_MILLIS);
+                diskPlotCache = cache;
+                PlotSource lastPlot = cache.latest();
+                if (lastPlot != null) {
+                    displayInteractivePlot(lastPlot);
+                    appendOutput("💾 Restored last plot from disk cache\n");
                 }
+                refreshCacheStats();
+            } catch (IOException e) {
+                appendOutput("⚠️ Disk plot cache unavailable: " + e.getMessage() + "\n");
             }
-            return resultStream.toString("UTF-8");
-        } catch (Exception e) {
-            appendOutput("❌ Decompression error: " + e.getMessage() + "\n");
-            return compressedData;
-        }
-    }
-    
-    // SSL Trust Manager that accepts all certificates (Development Only)
-    private static class TrustAllManager implements X509TrustManager {
-        @Override
-        public void checkClientTrusted(X509Certificate[] chain, String authType) {
-            // Trust all client certificates
-        }
-        
-        @Override
-        public void checkServerTrusted(X509Certificate[] chain, String authType) {
-            // Trust all server certificates - DEVELOPMENT ONLY!
-        }
-        
-        @Override
-        public X509Certificate[] getAcceptedIssuers() {
-            return new X509Certificate[0];
-        }
+        });
     }
     
-    // Create SSL context that trusts all certificates
-    private SSLContext createTrustAllSSLContext() throws NoSuchAlgorithmException, KeyManagementException {
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(null, new TrustManager[]{new TrustAllManager()}, new SecureRandom());
-        return sslContext;
+    private void setupSecurityWarning() {
+        System.out.println("🔒 SSL Security: Trusting self-signed certificate for development");
+        System.out.println("⚠️  For production, use properly signed certificates");
     }
     
     // Connection Management with Retry Logic
@@ -226,31 +291,28 @@ public class SecureJavaFXClient extends Application {
         
         authenticating = true;
         retryCount = 0;
-        scheduler.execute(this::attemptConnectionWithRetry);
+        // Back-off sleeps park only this task, and disconnect interrupts them
+        connectTask = tasks.submit(this::attemptConnectionWithRetry);
     }
     
     private void attemptConnectionWithRetry() {
         while (retryCount < MAX_RETRIES && !connected) {
             try {
-                Platform.runLater(() -> {
-                    updateConnectionStatus(false);
-                    appendOutput("🔒 Attempting secure connection (" + (retryCount + 1) + "/" + MAX_RETRIES + ")...\n");
-                });
+                updateConnectionStatus(false);
+                appendOutput("🔒 Attempting secure connection (" + (retryCount + 1) + "/" + MAX_RETRIES + ")...\n");
                 
                 attemptSecureConnection();
                 
                 if (connected) {
-                    Platform.runLater(() -> {
-                        appendOutput("✅ Secure connection established\n");
-                        loadInitialData();
-                    });
+                    appendOutput("✅ Secure connection established\n");
+                    loadInitialData();
                     break;
                 }
                 
             } catch (Exception e) {
                 retryCount++;
-                Platform.runLater(() -> 
-                    appendOutput("❌ Connection attempt " + retryCount + " failed: " + e.getMessage() + "\n"));
+                metrics.recordFailedConnect();
+                appendOutput("❌ Connection attempt " + retryCount + " failed: " + e.getMessage() + "\n");
                 
                 if (retryCount < MAX_RETRIES) {
                     try {
@@ -266,214 +328,233 @@ public class SecureJavaFXClient extends Application {
         authenticating = false;
         
         if (!connected && retryCount >= MAX_RETRIES) {
-            Platform.runLater(() -> {
-                appendOutput("💥 Failed to connect after " + MAX_RETRIES + " attempts\n");
-                appendOutput("💡 Check if server is running and certificates are trusted\n");
-            });
+            appendOutput("💥 Failed to connect after " + MAX_RETRIES + " attempts\n");
+            appendOutput("💡 Check if server is running and certificates are trusted\n");
         }
     }
     
     private void attemptSecureConnection() {
-        try {
-            // Create custom SSL context that trusts all certificates
-            SSLContext sslContext = createTrustAllSSLContext();
-            SSLSocketFactory factory = sslContext.getSocketFactory();
-            
-            clientSocket = (SSLSocket) factory.createSocket("localhost", 1234);
-            clientSocket.setSoTimeout(30000);
-            
-            // Enable modern TLS protocols
-            clientSocket.setEnabledProtocols(new String[]{"TLSv1.2", "TLSv1.3"});
-            clientSocket.setEnabledCipherSuites(new String[]{
-                "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
-                "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
-                "TLS_AES_256_GCM_SHA384",
-                "TLS_AES_128_GCM_SHA256"
+        SecureConnection newConnection = new SecureConnection("localhost", 1234,
+            new SecureConnection.Listener() {
+                @Override
+                public void onUnsolicitedResponse(Response response) {
+                    processServerResponse(response);
+                }
+                
+                @Override
+                public void onDisconnected(String reason) {
+                    appendOutput("🔌 " + reason + "\n");
+                    updateConnectionStatus(false);
+                }
             });
-            
-            dataIn = new DataInputStream(clientSocket.getInputStream());
-            dataOut = new DataOutputStream(clientSocket.getOutputStream());
-            
-            // Send authentication
-            String authData = String.format(
-                "{\"username\": \"%s\", \"password\": \"%s\"}",
-                username, password
-            );
-            dataOut.write(authData.getBytes("UTF-8"));
-            dataOut.flush();
-            
-            // Read authentication response with timeout
-            byte[] authResponse = new byte[1024];
-            int bytesRead = dataIn.read(authResponse);
-            if (bytesRead == -1) {
-                throw new IOException("Server closed connection during authentication");
-            }
-            
-            String response = new String(authResponse, 0, bytesRead, "UTF-8").trim();
-            System.out.println("🔐 Authentication response: " + response);
-            
-            // FIXED: Improved authentication response parsing
-            if (response.contains("\"status\": \"success\"") || 
-                response.contains("\"status\":\"success\"") ||
-                (response.contains("success") && response.contains("token"))) {
-                connected = true;
-                Platform.runLater(() -> {
-                    updateConnectionStatus(true);
-                    appendOutput("✅ Authentication successful\n");
-                });
-                startServerListener();
-            } else {
-                throw new IOException("Authentication failed: " + response);
-            }
+        
+        newConnection.reportCodecStatsTo(metrics.codecTotals());
+        try {
+            newConnection.connect(username, password, REQUEST_FRAMED_PROTOCOL);
+            connection = newConnection;
+            connected = true;
+            metrics.recordConnect();
+            updateConnectionStatus(true);
+            appendOutput("✅ Authentication successful" +
+                (newConnection.isFramed() ? " (framed protocol, " + newConnection.codec().name() + " codec)"
+                    : " (legacy protocol)") + "\n");
+            appendOutput("⏱️ " + newConnection.timingSummary() + "\n");
             
         } catch (SocketTimeoutException e) {
             throw new RuntimeException("Connection timeout - server not responding");
         } catch (IOException e) {
-            closeConnection();
             throw new RuntimeException("Connection failed: " + e.getMessage());
-        } catch (NoSuchAlgorithmException | KeyManagementException e) {
-            closeConnection();
+        } catch (GeneralSecurityException e) {
             throw new RuntimeException("SSL configuration failed: " + e.getMessage());
         } catch (Exception e) {
-            closeConnection();
             throw new RuntimeException("Unexpected error: " + e.getMessage());
         }
     }
     
     private void loadInitialData() {
+        // Both requests are pipelined; each reply completes its own future
         sendCommand("data.csv");
         sendCommand("get_columns");
+        // Fetched once, so the plot view can take figures from the first plot on
+        plotlyJs().thenAccept(file -> uiUpdates.post(() -> preparePlotViews(file)));
         
-        scheduler.scheduleAtFixedRate(this::healthCheck, 30, 30, TimeUnit.SECONDS);
+        if (healthCheckTask != null) {
+            healthCheckTask.cancel(false);
+        }
+        healthCheckTask = timer.scheduleAtFixedRate(this::healthCheck, 30, 30, TimeUnit.SECONDS);
     }
     
     private void healthCheck() {
         if (connected) {
-            try {
-                sendCommand("'health_check'");
-            } catch (Exception e) {
-                Platform.runLater(() -> {
-                    appendOutput("⚠️ Connection health check failed\n");
-                    updateConnectionStatus(false);
-                });
-            }
+            submit(Command.of("'health_check'")).exceptionally(error -> {
+                appendOutput("⚠️ Connection health check failed\n");
+                updateConnectionStatus(false);
+                return null;
+            });
         }
     }
     
-    private void startServerListener() {
-        Thread listenerThread = new Thread(() -> {
-            byte[] buffer = new byte[65536];
-            
-            while (connected && clientSocket != null && !clientSocket.isClosed()) {
-                try {
-                    int bytesRead = dataIn.read(buffer);
-                    if (bytesRead == -1) {
-                        Platform.runLater(() -> {
-                            appendOutput("🔌 Server closed connection\n");
-                            updateConnectionStatus(false);
-                        });
-                        break;
-                    }
-                    
-                    String compressedResponse = new String(buffer, 0, bytesRead, "UTF-8");
-                    String response = decompressData(compressedResponse);
-                    processServerResponse(response);
-                    
-                } catch (SocketTimeoutException e) {
-                    continue;
-                } catch (IOException e) {
-                    if (connected) {
-                        Platform.runLater(() -> {
-                            appendOutput("❌ Connection error: " + e.getMessage() + "\n");
-                            updateConnectionStatus(false);
-                        });
-                    }
-                    break;
-                } catch (Exception e) {
-                    Platform.runLater(() -> 
-                        appendOutput("❌ Error processing response: " + e.getMessage() + "\n"));
-                }
-            }
-        });
-        
-        listenerThread.setDaemon(true);
-        listenerThread.setName("Server-Listener");
-        listenerThread.start();
+    private void showPlotResponse(Response response, PlotSource plot) {
+        displayInteractivePlot(plot, response.trace());
+        String message = response.kind() == Response.Kind.PLOT_FALLBACK || response.kind() == Response.Kind.FIGURE_FALLBACK ? 
+            "📊 Plot loaded (fallback mode)" : "📊 Interactive plot loaded";
+        appendOutput(message + (plot.isFile() ? " (streamed)" : "") + "\n");
     }
     
-    private void processServerResponse(String response) {
-        if (response.startsWith("HTML_PLOT:") || response.startsWith("HTML_PLOT_FALLBACK:")) {
-            String prefix = response.startsWith("HTML_PLOT:") ? "HTML_PLOT:" : "HTML_PLOT_FALLBACK:";
-            String htmlContent = response.substring(prefix.length());
-            
-            String cacheKey = Integer.toHexString(htmlContent.hashCode());
-            plotCache.put(cacheKey, htmlContent);
-            
-            Platform.runLater(() -> {
-                displayInteractivePlot(htmlContent);
-                String message = response.startsWith("HTML_PLOT_FALLBACK:") ? 
-                    "📊 Plot loaded (fallback mode)" : "📊 Interactive plot loaded";
-                appendOutput(message + " [Cache: " + cacheKey + "]\n");
-            });
-            
-        } else if (response.startsWith("COLUMNS:")) {
-            String columnsJson = response.substring(8);
-            Platform.runLater(() -> updateColumnSelectors(columnsJson));
-            
-        } else if (response.startsWith("STATS:")) {
-            String statsJson = response.substring(6);
-            Platform.runLater(() -> displayStatistics(statsJson));
-            
-        } else if (response.equals("DISCONNECT")) {
-            Platform.runLater(() -> {
+    private void processServerResponse(Response response) {
+        switch (response.kind()) {
+            case PLOT:
+            case PLOT_FALLBACK:
+            case FIGURE:
+            case FIGURE_FALLBACK:
+                showPlotResponse(response, response.plot());
+                break;
+            case COLUMNS:
+                updateColumnSelectors(response.payload());
+                break;
+            case STATS:
+                displayStatistics(response.payload());
+                break;
+            case STREAM_ROWS:
+                appendStreamRows(response.payload());
+                break;
+            case DISCONNECT:
                 appendOutput("🔌 Server requested disconnect\n");
-                disconnectFromServer();
-            });
-            
-        } else {
-            Platform.runLater(() -> appendOutput("📡 " + response + "\n"));
+                // Not on the connection's own reader thread
+                uiUpdates.post(this::disconnectFromServer);
+                break;
+            default:
+                appendOutput("📡 " + response.body() + "\n");
+        }
+    }
+    
+    // Sends a command and completes with the reply tagged with its request id
+    private CompletableFuture<Response> submit(Command command) {
+        SecureConnection current = connection;
+        if (!connected || current == null || !current.isConnected()) {
+            CompletableFuture<Response> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("Not connected to server"));
+            return failed;
         }
+        long start = System.nanoTime();
+        return current.submit(command).whenComplete((response, error) -> {
+            metrics.recordRequest(command.type(), System.nanoTime() - start, error != null || response.isError());
+            if (response != null && response.trace() != null) {
+                traceLog.record(response.trace());
+            }
+        });
     }
     
     private void sendCommand(String command) {
-        if (!connected || clientSocket == null || clientSocket.isClosed()) {
-            Platform.runLater(() -> appendOutput("⚠️ Not connected to server\n"));
+        Command cmd = Command.of(command);
+        if (answerLocally(command)) {
             return;
         }
-        
-        scheduler.execute(() -> {
-            try {
-                String compressedCommand = compressData(command);
-                dataOut.write(compressedCommand.getBytes("UTF-8"));
-                dataOut.flush();
-            } catch (IOException e) {
-                Platform.runLater(() -> {
-                    appendOutput("❌ Error sending command: " + e.getMessage() + "\n");
-                    updateConnectionStatus(false);
+        if (cmd.type() == Command.Type.CLEAR_CACHE) {
+            plotCache.clear();
+            DiskPlotCache disk = diskPlotCache;
+            if (disk != null) {
+                tasks.execute(() -> {
+                    try {
+                        disk.clear();
+                    } catch (IOException e) {
+                        appendOutput("⚠️ Could not clear disk plot cache: " + e.getMessage() + "\n");
+                    }
+                    refreshCacheStats();
                 });
             }
+            refreshCacheStats();
+        }
+        
+        submit(cmd).whenComplete((response, error) -> {
+            if (error == null) {
+                trackDatasetChanges(cmd, response);
+                processServerResponse(response);
+            } else {
+                appendOutput("❌ Error sending command: " + causeOf(error).getMessage() + "\n");
+            }
         });
     }
     
+    // Previews and stats come from the local column store when it matches the
+    // server's DataFrame, so they need no round trip
+    private boolean answerLocally(String command) {
+        ColumnarDataset dataset = localDataset;
+        if (dataset == null || (!localDatasetFromFile && localDatasetVersion != datasetVersion)) {
+            return false;
+        }
+        switch (command.replace(" ", "")) {
+            case "df.head()":
+                appendOutput("⚡ (local)\n" + dataset.head(5).toText());
+                return true;
+            case "df.describe()":
+                appendOutput("⚡ (local)\n" + dataset.describeText());
+                return true;
+            case "get_stats":
+                appendOutput("📊 Dataset statistics (local): " + dataset.statsJson() + "\n");
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    private static Throwable causeOf(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+    
+    private static final Pattern FINGERPRINT_PATTERN = Pattern.compile("Fingerprint: ([0-9a-f]+)");
+    
+    // Reloading the CSV or running a statement may change the DataFrame, which
+    // invalidates every cached plot
+    private void trackDatasetChanges(Command command, Response response) {
+        if (response.isError()) {
+            return;
+        }
+        if (command.type() == Command.Type.CSV) {
+            Matcher matcher = FINGERPRINT_PATTERN.matcher(response.body());
+            datasetFingerprint = matcher.find() ? matcher.group(1) : null;
+            datasetVersion++;
+            localDatasetFromFile = false;
+        } else if (command.type() == Command.Type.PYTHON && response.body().equals("Command executed successfully")) {
+            // The file hash no longer describes the DataFrame
+            datasetFingerprint = null;
+            datasetVersion++;
+        }
+    }
+    
     private void disconnectFromServer() {
         closeConnection();
-        Platform.runLater(() -> {
-            updateConnectionStatus(false);
-            appendOutput("🔌 Disconnected from secure server\n");
-        });
+        updateConnectionStatus(false);
+        appendOutput("🔌 Disconnected from secure server\n");
     }
     
     private void closeConnection() {
         connected = false;
         authenticating = false;
         
-        try {
-            if (clientSocket != null && !clientSocket.isClosed()) {
-                clientSocket.close();
-            }
-        } catch (IOException e) {
-            System.err.println("Error closing connection: " + e.getMessage());
+        // Cancel everything tied to this connection: a retry loop still
+        // backing off, the health check, and (in close()) writes in flight
+        if (connectTask != null) {
+            connectTask.cancel(true);
+            connectTask = null;
+        }
+        if (healthCheckTask != null) {
+            healthCheckTask.cancel(false);
+            healthCheckTask = null;
         }
+        if (connection != null) {
+            System.out.println("🗜️ " + connection.codecSummary());
+            connection.close();
+            connection = null;
+        }
+        // Subscriptions end with the connection
+        liveStreaming = false;
+        uiUpdates.post(() -> {
+            if (liveCheck != null) {
+                liveCheck.setSelected(false);
+                liveCheck.setText("📡 Live");
+            }
+        });
     }
     
     private void shutdownApplication() {
@@ -486,9 +567,20 @@ public class SecureJavaFXClient extends Application {
         }
         
         disconnectFromServer();
-        if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdown();
+        if (tasks != null && !tasks.isShutdown()) {
+            tasks.shutdownNow();
+        }
+        if (timer != null && !timer.isShutdown()) {
+            timer.shutdownNow();
         }
+        if (metricsServer != null) {
+            metricsServer.stop(0);
+        }
+        writeMetricsFile();
+        if (diskPlotCache != null) {
+            diskPlotCache.close();
+        }
+        console.close();
         Platform.exit();
     }
     
@@ -504,7 +596,11 @@ public class SecureJavaFXClient extends Application {
         fullScreenPlotStage.initModality(Modality.NONE);
         
         WebView fullScreenWebView = new WebView();
-        fullScreenWebView.getEngine().loadContent(plotWebView.getEngine().getLocation());
+        fullScreenPlotView = new PlotView(fullScreenWebView, () -> { });
+        preparePlotView(fullScreenPlotView);
+        if (plotView.current() != null) {
+            fullScreenPlotView.show(plotView.current());
+        }
         
         // Create control panel
         HBox controlPanel = new HBox(10);
@@ -518,7 +614,7 @@ public class SecureJavaFXClient extends Application {
         
         Button refreshBtn = new Button("Refresh");
         refreshBtn.setStyle("-fx-background-color: #3498db; -fx-text-fill: white; -fx-font-weight: bold;");
-        refreshBtn.setOnAction(e -> fullScreenWebView.getEngine().reload());
+        refreshBtn.setOnAction(e -> fullScreenPlotView.reload());
         
         controlPanel.getChildren().addAll(refreshBtn, exitFullScreenBtn);
         
@@ -530,14 +626,13 @@ public class SecureJavaFXClient extends Application {
         fullScreenPlotStage.setScene(fullScreenScene);
         fullScreenPlotStage.setMaximized(true);
         
-        // Update content when main plot changes
-        plotWebView.getEngine().locationProperty().addListener((obs, oldVal, newVal) -> {
-            if (fullScreenPlotStage != null && fullScreenPlotStage.isShowing()) {
-                fullScreenWebView.getEngine().loadContent(plotWebView.getEngine().getLocation());
-            }
+        // displayInteractivePlot keeps this view in sync with the main plot
+        // onHidden, unlike onCloseRequest, also runs for the Exit button's close()
+        fullScreenPlotStage.setOnHidden(e -> {
+            fullScreenPlotView.close();
+            fullScreenPlotStage = null;
+            fullScreenPlotView = null;
         });
-        
-        fullScreenPlotStage.setOnCloseRequest(e -> fullScreenPlotStage = null);
         fullScreenPlotStage.show();
     }
     
@@ -551,12 +646,6 @@ public class SecureJavaFXClient extends Application {
         fullScreenOutputStage.setTitle("📜 Full Screen Output Console");
         fullScreenOutputStage.initModality(Modality.NONE);
         
-        TextArea fullScreenOutputArea = new TextArea();
-        fullScreenOutputArea.setEditable(false);
-        fullScreenOutputArea.setWrapText(true);
-        fullScreenOutputArea.setStyle("-fx-font-family: 'Monospace'; -fx-font-size: 14px;");
-        fullScreenOutputArea.setText(outputArea.getText());
-        
         // Create control panel
         HBox controlPanel = new HBox(10);
         controlPanel.setPadding(new Insets(10));
@@ -569,36 +658,27 @@ public class SecureJavaFXClient extends Application {
         
         Button clearBtn = new Button("Clear");
         clearBtn.setStyle("-fx-background-color: #95a5a6; -fx-text-fill: white; -fx-font-weight: bold;");
-        clearBtn.setOnAction(e -> {
-            fullScreenOutputArea.clear();
-            outputArea.clear();
-        });
+        clearBtn.setOnAction(e -> console.clear());
         
         Button copyBtn = new Button("Copy All");
         copyBtn.setStyle("-fx-background-color: #3498db; -fx-text-fill: white; -fx-font-weight: bold;");
         copyBtn.setOnAction(e -> {
-            fullScreenOutputArea.selectAll();
-            fullScreenOutputArea.copy();
+            ClipboardContent content = new ClipboardContent();
+            content.putString(console.text());
+            Clipboard.getSystemClipboard().setContent(content);
         });
         
         controlPanel.getChildren().addAll(copyBtn, clearBtn, exitFullScreenBtn);
         
         BorderPane fullScreenLayout = new BorderPane();
-        fullScreenLayout.setCenter(fullScreenOutputArea);
+        // Another view of the same console, so it stays in sync by itself
+        fullScreenLayout.setCenter(console.view(14));
         fullScreenLayout.setTop(controlPanel);
         
         Scene fullScreenScene = new Scene(fullScreenLayout, 1000, 700);
         fullScreenOutputStage.setScene(fullScreenScene);
         fullScreenOutputStage.setMaximized(true);
         
-        // Sync output between main and full screen
-        outputArea.textProperty().addListener((obs, oldVal, newVal) -> {
-            if (fullScreenOutputStage != null && fullScreenOutputStage.isShowing()) {
-                fullScreenOutputArea.setText(newVal);
-                fullScreenOutputArea.setScrollTop(Double.MAX_VALUE);
-            }
-        });
-        
         fullScreenOutputStage.setOnCloseRequest(e -> fullScreenOutputStage = null);
         fullScreenOutputStage.show();
     }
@@ -610,14 +690,19 @@ public class SecureJavaFXClient extends Application {
         commandInput.setPrefRowCount(4);
         commandInput.setStyle("-fx-font-family: 'Monospace'; -fx-font-size: 12px;");
         
-        outputArea = new TextArea();
-        outputArea.setEditable(false);
-        outputArea.setWrapText(true);
-        outputArea.setStyle("-fx-font-family: 'Monospace'; -fx-font-size: 11px;");
+        outputView = console.view(11);
         
         plotWebView = new WebView();
         plotWebView.setPrefHeight(500);
         plotWebView.getEngine().setUserStyleSheetLocation("data:,body { margin: 10px; }");
+        plotView = new PlotView(plotWebView, () -> {
+            installLodHook(plotWebView.getEngine());
+            plotDisplayed();
+        });
+        // Warm from the first frame when plotly.js is left from an earlier session
+        if (Files.isRegularFile(PLOTLY_JS_FILE)) {
+            preparePlotViews(PLOTLY_JS_FILE);
+        }
         
         sendButton = new Button("🚀 Execute");
         disconnectButton = new Button("🔌 Disconnect");
@@ -711,15 +796,15 @@ public class SecureJavaFXClient extends Application {
         
         Button clearOutputBtn = new Button("🗑️ Clear");
         clearOutputBtn.setStyle("-fx-background-color: #95a5a6; -fx-text-fill: white;");
-        clearOutputBtn.setOnAction(e -> outputArea.clear());
+        clearOutputBtn.setOnAction(e -> console.clear());
         
         outputButtons.getChildren().addAll(fullScreenOutputBtn, clearOutputBtn);
         
         HBox.setHgrow(outputLabel, Priority.ALWAYS);
         outputHeader.getChildren().addAll(outputLabel, outputButtons);
         
-        outputBox.getChildren().addAll(outputHeader, outputArea);
-        VBox.setVgrow(outputArea, Priority.ALWAYS);
+        outputBox.getChildren().addAll(outputHeader, outputView);
+        VBox.setVgrow(outputView, Priority.ALWAYS);
         outputBox.setPrefHeight(200);
         
         // Visualization Section with Full Screen Button
@@ -736,8 +821,13 @@ public class SecureJavaFXClient extends Application {
         fullScreenPlotBtn.setStyle("-fx-background-color: #9b59b6; -fx-text-fill: white; -fx-font-weight: bold;");
         fullScreenPlotBtn.setOnAction(e -> showFullScreenPlot());
         
+        Button waterfallBtn = new Button("⏱️ Waterfall");
+        waterfallBtn.setStyle("-fx-background-color: #34495e; -fx-text-fill: white; -fx-font-weight: bold;");
+        waterfallBtn.setTooltip(new Tooltip("Where the time went for the last plot, client and server"));
+        waterfallBtn.setOnAction(e -> showLatestTrace());
+        
         HBox.setHgrow(visualizationLabel, Priority.ALWAYS);
-        visualizationHeader.getChildren().addAll(visualizationLabel, fullScreenPlotBtn);
+        visualizationHeader.getChildren().addAll(visualizationLabel, waterfallBtn, fullScreenPlotBtn);
         
         visualizationBox.getChildren().addAll(visualizationHeader, plotWebView);
         VBox.setVgrow(plotWebView, Priority.ALWAYS);
@@ -778,7 +868,7 @@ public class SecureJavaFXClient extends Application {
         plotTypeCombo.getItems().addAll(
             "Line Chart", "Bar Chart", "Scatter Plot", "Histogram", 
             "Heatmap", "3D Scatter", "Surface Plot", "Box Plot", 
-            "Violin Plot", "Pie Chart", "Area Chart"
+            "Violin Plot", "Pie Chart", "Area Chart", "Density Heatmap"
         );
         plotTypeCombo.setValue("Line Chart");
         
@@ -809,11 +899,55 @@ public class SecureJavaFXClient extends Application {
         controlGrid.add(new Label("Z-Axis:"), 3, 1);
         controlGrid.add(zAxisCombo, 3, 1);
         
+        // Histograms and density heatmaps; locally these re-bin from the
+        // cached aggregate without rescanning the rows
+        binsSpinner = new Spinner<>(2, 500, FigureBuilder.DEFAULT_HISTOGRAM_BINS);
+        binsSpinner.setEditable(true);
+        binsSpinner.setPrefWidth(90);
+        controlGrid.add(new Label("Bins:"), 0, 2);
+        controlGrid.add(binsSpinner, 1, 2);
+        
+        // Shorter batches show rows sooner, longer ones redraw less often
+        streamIntervalSpinner = new Spinner<>(50, 60_000, Integer.getInteger("viz.stream.intervalMs", 500), 50);
+        streamIntervalSpinner.setEditable(true);
+        streamIntervalSpinner.setPrefWidth(100);
+        controlGrid.add(new Label("Live batch (ms):"), 2, 2);
+        controlGrid.add(streamIntervalSpinner, 3, 2);
+        
         Button generatePlotBtn = new Button("🎯 Generate Plot");
         generatePlotBtn.setStyle("-fx-background-color: #e74c3c; -fx-text-fill: white; -fx-font-weight: bold;");
         generatePlotBtn.setOnAction(e -> generatePlotFromControls());
         
-        HBox buttonBox = new HBox(10, generatePlotBtn);
+        localRenderCheck = new CheckBox("⚡ Local rendering");
+        localRenderCheck.setStyle("-fx-text-fill: white;");
+        localRenderCheck.setTooltip(new Tooltip("Fetch the dataset once and build plots in the client"));
+        
+        lodCheck = new CheckBox("🔍 Level of detail");
+        lodCheck.setStyle("-fx-text-fill: white;");
+        lodCheck.setSelected(true);
+        lodCheck.setTooltip(new Tooltip("Decimate line, scatter and area plots to the view width; zoom to refine"));
+        
+        liveCheck = new CheckBox("📡 Live");
+        liveCheck.setStyle("-fx-text-fill: white;");
+        liveCheck.setTooltip(new Tooltip("Follow rows appended to the loaded CSV on a line, scatter or area plot"));
+        // onAction, not a property listener: resetting it on disconnect sends nothing
+        liveCheck.setOnAction(e -> {
+            if (liveCheck.isSelected()) {
+                startLiveStream();
+            } else {
+                stopLiveStream();
+            }
+        });
+        
+        cacheStatsLabel = new Label();
+        cacheStatsLabel.setStyle("-fx-text-fill: #bdc3c7; -fx-font-size: 11px;");
+        updateCacheStats();
+        
+        Button openCsvBtn = new Button("📂 Open Local CSV");
+        openCsvBtn.setStyle("-fx-background-color: #16a085; -fx-text-fill: white; -fx-font-weight: bold;");
+        openCsvBtn.setOnAction(e -> openLocalCsv());
+        
+        HBox buttonBox = new HBox(10, cacheStatsLabel, lodCheck, liveCheck, localRenderCheck, openCsvBtn, generatePlotBtn);
         buttonBox.setAlignment(Pos.CENTER_RIGHT);
         
         advancedPanel.getChildren().addAll(advancedLabel, controlGrid, buttonBox);
@@ -821,6 +955,66 @@ public class SecureJavaFXClient extends Application {
         mainLayout.getChildren().add(3, advancedPanel);
     }
     
+    // Collapsed by default; refreshed once a second while expanded
+    private void setupStatsPanel() {
+        statsLabel = new Label();
+        statsLabel.setStyle("-fx-font-family: monospace; -fx-font-size: 11px;");
+        Button dumpTracesBtn = new Button("💾 Dump Traces");
+        dumpTracesBtn.setTooltip(new Tooltip("Write recent request traces as JSON to " + TRACE_DUMP_DIR));
+        dumpTracesBtn.setOnAction(e -> dumpTraces());
+        statsPane = new TitledPane("📈 Live Stats", new VBox(8, statsLabel, dumpTracesBtn));
+        statsPane.setExpanded(false);
+        statsPane.expandedProperty().addListener((observable, wasExpanded, expanded) -> {
+            if (expanded) {
+                updateStatsPanel();
+            }
+        });
+        mainLayout.getChildren().add(4, statsPane);
+    }
+    
+    private void updateStatsPanel() {
+        if (statsPane != null && statsPane.isExpanded()) {
+            statsLabel.setText(metrics.describe() + "\n" + uiUpdates.describe());
+        }
+    }
+    
+    private void startMetrics() {
+        metrics.gauge("pending_requests", "Requests sent and not yet answered.", () -> {
+            SecureConnection current = connection;
+            return current != null ? current.pendingCount() : 0;
+        });
+        metrics.gauge("plot_cache_hit_ratio", "Share of plot lookups answered by the memory cache.",
+            () -> ClientMetrics.ratio(plotCache.hits(), plotCache.misses()));
+        metrics.gauge("disk_cache_hit_ratio", "Share of plot lookups answered by the disk cache.", () -> {
+            DiskPlotCache disk = diskPlotCache;
+            return disk != null ? ClientMetrics.ratio(disk.hits(), disk.misses()) : 0;
+        });
+        
+        timer.scheduleAtFixedRate(() -> uiUpdates.latest("stats-panel", this::updateStatsPanel), 1, 1, TimeUnit.SECONDS);
+        if (METRICS_FILE != null) {
+            timer.scheduleAtFixedRate(this::writeMetricsFile, METRICS_FILE_INTERVAL_SECONDS,
+                METRICS_FILE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+        if (METRICS_PORT > 0) {
+            try {
+                metricsServer = metrics.serve(METRICS_PORT);
+                System.out.println("📈 Metrics on http://localhost:" + METRICS_PORT + "/metrics");
+            } catch (IOException e) {
+                System.err.println("Metrics endpoint unavailable: " + e.getMessage());
+            }
+        }
+    }
+    
+    private void writeMetricsFile() {
+        if (METRICS_FILE != null) {
+            try {
+                metrics.writeTo(Paths.get(METRICS_FILE));
+            } catch (IOException e) {
+                System.err.println("Metrics file write failed: " + e.getMessage());
+            }
+        }
+    }
+    
     private void setupEventHandlers() {
         sendButton.setOnAction(e -> executeCurrentCommand());
         
@@ -865,12 +1059,19 @@ public class SecureJavaFXClient extends Application {
     private void updateConnectionStatus(boolean isConnected) {
         connected = isConnected;
         
-        Platform.runLater(() -> {
+        // Only the newest state matters once the pulse comes round
+        uiUpdates.latest("connection-status", () -> {
             sendButton.setDisable(!isConnected);
             disconnectButton.setDisable(!isConnected);
             connectionProgress.setVisible(false);
             
-            if (isConnected) {
+            SecureConnection current = connection;
+            if (isConnected && current != null) {
+                // Handshake cost shows whether the reconnect resumed a TLS session
+                statusValue.setText("🔒 Connected (SSL, handshake " + current.handshakeMillis() + " ms" +
+                    (current.isResumed() ? ", resumed" : "") + ")");
+                statusValue.setStyle("-fx-text-fill: #27ae60; -fx-font-weight: bold;");
+            } else if (isConnected) {
                 statusValue.setText("🔒 Connected (SSL)");
                 statusValue.setStyle("-fx-text-fill: #27ae60; -fx-font-weight: bold;");
             } else {
@@ -881,39 +1082,179 @@ public class SecureJavaFXClient extends Application {
     }
     
     private void appendOutput(String text) {
-        Platform.runLater(() -> {
-            outputArea.appendText(text);
-            outputArea.setScrollTop(Double.MAX_VALUE);
+        uiUpdates.log(text);
+    }
+    
+    private void refreshCacheStats() {
+        uiUpdates.latest("cache-stats", this::updateCacheStats);
+    }
+    
+    private void updateCacheStats() {
+        if (cacheStatsLabel != null) {
+            DiskPlotCache disk = diskPlotCache;
+            cacheStatsLabel.setText("💾 Memory: " + plotCache.describe() +
+                (disk != null ? "\n🗄️ Disk: " + disk.describe() : ""));
+        }
+    }
+    
+    private void displayInteractivePlot(PlotSource plot) {
+        displayInteractivePlot(plot, null);
+    }
+    
+    // A plot replaced before the next pulse is never loaded. The waiting
+    // plot is retained, so its spool file outlives a cache eviction.
+    private void displayInteractivePlot(PlotSource plot, RequestTrace trace) {
+        PlotSource replaced = queuedPlot.getAndSet(plot.retain());
+        if (replaced != null) {
+            replaced.release();
+        }
+        uiUpdates.latest("plot", () -> {
+            PlotSource next = queuedPlot.getAndSet(null);
+            if (next == null) {
+                return;
+            }
+            displayingTrace = trace;
+            plotView.show(next);
+            if (fullScreenPlotView != null) {
+                fullScreenPlotView.show(next);
+            }
+            next.release();
         });
     }
     
-    private void displayInteractivePlot(String htmlContent) {
-        Platform.runLater(() -> {
-            plotWebView.getEngine().loadContent(htmlContent);
+    // Applies a FIGURE_DELTA: reply to the plot views; when the figure it was
+    // made against is no longer on screen, fetchFull asks for the whole one
+    private void displayFigureDelta(Response response, Runnable fetchFull) {
+        String delta = response.payload();
+        uiUpdates.latest("plot", () -> {
+            displayingTrace = response.trace();
+            if (!plotView.applyDelta(delta)) {
+                displayingTrace = null;
+                fetchFull.run();
+                return;
+            }
+            if (fullScreenPlotView != null && !fullScreenPlotView.applyDelta(delta)) {
+                fullScreenPlotView.show(plotView.current());
+            }
+            appendOutput(String.format("📊 Plot updated in place (%.1f KB of changes)%n", delta.length() / 1024.0));
+        });
+    }
+    
+    // Loads the resident plotly.js page into the plot views. FX thread only.
+    private void preparePlotViews(Path plotlyJs) {
+        preparedPlotlyJs = plotlyJs;
+        preparePlotView(plotView);
+        if (fullScreenPlotView != null) {
+            preparePlotView(fullScreenPlotView);
+        }
+    }
+    
+    private void preparePlotView(PlotView view) {
+        if (preparedPlotlyJs == null) {
+            return;
+        }
+        try {
+            view.prepare(preparedPlotlyJs);
+        } catch (IOException e) {
+            appendOutput("⚠️ Plot view keeps loading whole pages: " + e.getMessage() + "\n");
+        }
+    }
+    
+    // The WebView has rendered the plot a traced request returned
+    private void plotDisplayed() {
+        RequestTrace trace = displayingTrace;
+        if (trace != null) {
+            displayingTrace = null;
+            trace.mark("displayed");
+            appendOutput(String.format("⏱️ Plot took %.1f ms end to end, slowest stage: %s%n",
+                trace.totalMillis(), trace.slowestStage()));
+        }
+    }
+    
+    private void showLatestTrace() {
+        RequestTrace trace = traceLog.latest(Command.Type.PLOT);
+        if (trace == null) {
+            trace = traceLog.latest(null);
+        }
+        appendOutput(trace != null ? trace.waterfall() : "⏱️ No requests traced yet\n");
+    }
+    
+    private void dumpTraces() {
+        Path file = TRACE_DUMP_DIR.resolve("traces-" + System.currentTimeMillis() + ".json");
+        tasks.execute(() -> {
+            try {
+                traceLog.dumpJson(file);
+                appendOutput("💾 " + traceLog.size() + " traces written to " + file + "\n");
+            } catch (IOException e) {
+                appendOutput("⚠️ Could not write traces: " + e.getMessage() + "\n");
+            }
         });
     }
     
     private void updateColumnSelectors(String columnsJson) {
         try {
-            String cleanJson = columnsJson.replaceAll("[\\[\\]\"]", "");
-            String[] columns = cleanJson.split(",");
+            updateColumnSelectors(parseStringArray(columnsJson));
+        } catch (IllegalArgumentException e) {
+            appendOutput("❌ Error parsing columns: " + e.getMessage() + "\n");
+        }
+    }
+    
+    private void updateColumnSelectors(List<String> columns) {
+        uiUpdates.latest("columns", () -> {
+            xAxisCombo.getItems().setAll(columns);
+            yAxisCombo.getItems().setAll(columns);
+            zAxisCombo.getItems().setAll(columns);
             
-            Platform.runLater(() -> {
-                xAxisCombo.getItems().setAll(columns);
-                yAxisCombo.getItems().setAll(columns);
-                zAxisCombo.getItems().setAll(columns);
-                
-                if (columns.length > 0) {
-                    xAxisCombo.setValue(columns[0]);
-                    if (columns.length > 1) yAxisCombo.setValue(columns[1]);
-                    if (columns.length > 2) zAxisCombo.setValue(columns[2]);
+            if (!columns.isEmpty()) {
+                xAxisCombo.setValue(columns.get(0));
+                if (columns.size() > 1) yAxisCombo.setValue(columns.get(1));
+                if (columns.size() > 2) zAxisCombo.setValue(columns.get(2));
+            }
+            
+            appendOutput("📋 Columns loaded: " + columns.size() + " available\n");
+        });
+    }
+    
+    // Parses the JSON string array of a COLUMNS reply; names may contain
+    // commas, quotes or escapes
+    private static List<String> parseStringArray(String json) {
+        List<String> values = new ArrayList<>();
+        String text = json.trim();
+        if (!text.startsWith("[") || !text.endsWith("]")) {
+            throw new IllegalArgumentException("Expected a JSON array");
+        }
+        int i = 1;
+        while (i < text.length() - 1) {
+            char c = text.charAt(i);
+            if (c != '"') {
+                i++;
+                continue;
+            }
+            StringBuilder value = new StringBuilder();
+            for (i++; i < text.length() && text.charAt(i) != '"'; i++) {
+                char ch = text.charAt(i);
+                if (ch == '\\' && i + 1 < text.length()) {
+                    char escaped = text.charAt(++i);
+                    switch (escaped) {
+                        case 'n': value.append('\n'); break;
+                        case 't': value.append('\t'); break;
+                        case 'r': value.append('\r'); break;
+                        case 'b': value.append('\b'); break;
+                        case 'f': value.append('\f'); break;
+                        case 'u':
+                            value.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                            i += 4;
+                            break;
+                        default: value.append(escaped);
+                    }
+                } else {
+                    value.append(ch);
                 }
-                
-                appendOutput("📋 Columns loaded: " + columns.length + " available\n");
-            });
-        } catch (Exception e) {
-            appendOutput("❌ Error parsing columns: " + e.getMessage() + "\n");
+            }
+            values.add(value.toString());
+            i++;
         }
+        return values;
     }
     
     private void displayStatistics(String statsJson) {
@@ -933,33 +1274,340 @@ public class SecureJavaFXClient extends Application {
         }
         
         if ((plotType.equals("line_chart") || plotType.equals("bar_chart") || 
-             plotType.equals("scatter_plot") || plotType.equals("area_chart")) && 
+             plotType.equals("scatter_plot") || plotType.equals("area_chart") ||
+             plotType.equals("density_heatmap")) && 
             (yCol == null || yCol.isEmpty())) {
             appendOutput("❌ Please select Y axis\n");
             return;
         }
         
-        StringBuilder plotConfig = new StringBuilder();
-        plotConfig.append("{\"type\": \"").append(plotType).append("\"");
-        plotConfig.append(", \"x\": \"").append(xCol).append("\"");
-        
-        if (yCol != null && !yCol.isEmpty()) {
-            plotConfig.append(", \"y\": \"").append(yCol).append("\"");
+        PlotRequest request = new PlotRequest(plotType, xCol, yCol, zCol, title).withBins(binsSpinner.getValue());
+        if (lodCheck.isSelected()) {
+            request = request.withDetail(lodBudget(), Double.NaN, Double.NaN);
         }
-        
-        if (zCol != null && !zCol.isEmpty() && plotType.contains("3d")) {
-            plotConfig.append(", \"z\": \"").append(zCol).append("\"");
+        activeLodLocal = localRenderCheck.isSelected();
+        // Binned plots refine on zoom from the local aggregate only
+        boolean binnedLocally = activeLodLocal && lodCheck.isSelected() && BinnedAggregate.supports(request.type());
+        activeLodRequest = request.maxPoints() > 0 || binnedLocally ? request : null;
+        renderPlot(request);
+        if (liveCheck.isSelected()) {
+            // Follow the newly chosen columns
+            startLiveStream();
         }
-        
-        if (!title.isEmpty()) {
-            plotConfig.append(", \"title\": \"").append(title).append("\"");
+    }
+    
+    // Asks the server to push rows appended to the loaded CSV for the
+    // plotted x and y columns, once per batch interval
+    private void startLiveStream() {
+        String type = plotTypeCombo.getValue().toLowerCase().replace(" ", "_");
+        String x = xAxisCombo.getValue();
+        String y = yAxisCombo.getValue();
+        if (!Decimator.supports(type) || x == null || y == null || !plotView.showsFigure()) {
+            appendOutput("❌ Live mode needs a line, scatter or area plot on screen\n");
+            liveCheck.setSelected(false);
+            return;
+        }
+        int interval = streamIntervalSpinner.getValue();
+        String config = "{\"x\": " + PlotRequest.quote(x) + ", \"y\": " + PlotRequest.quote(y)
+            + ", \"interval_ms\": " + interval + "}";
+        submit(Command.subscribe(config)).whenComplete((response, error) -> {
+            if (error != null || response.kind() != Response.Kind.SUBSCRIBED) {
+                appendOutput("❌ Live mode unavailable: "
+                    + (error != null ? causeOf(error).getMessage() : response.body()) + "\n");
+                uiUpdates.post(() -> liveCheck.setSelected(false));
+                return;
+            }
+            liveStreaming = true;
+            appendOutput("📡 Live: following " + y + " over " + x + " every " + interval
+                + " ms, newest " + STREAM_WINDOW_POINTS + " points kept\n");
+        });
+    }
+    
+    private void stopLiveStream() {
+        liveStreaming = false;
+        liveCheck.setText("📡 Live");
+        if (connected) {
+            sendCommand("unsubscribe");
+        }
+    }
+    
+    // Every batch is applied, in order, so these go through post() rather
+    // than latest()
+    private void appendStreamRows(String rows) {
+        Matcher total = STREAM_TOTAL_PATTERN.matcher(rows);
+        String streamed = total.find() ? total.group(1) : "?";
+        uiUpdates.post(() -> {
+            plotView.extend(rows, STREAM_WINDOW_POINTS);
+            if (fullScreenPlotView != null) {
+                fullScreenPlotView.extend(rows, STREAM_WINDOW_POINTS);
+            }
+            if (liveCheck.isSelected()) {
+                liveCheck.setText("📡 Live (" + streamed + " rows)");
+            }
+        });
+    }
+    
+    private void renderPlot(PlotRequest plotRequest) {
+        if (localRenderCheck.isSelected()) {
+            renderLocally(plotRequest);
+            return;
+        }
+        // Figure JSON skips the page (and plotly.js) the WebView would parse per plot
+        PlotRequest request = plotView.acceptsFigures() && plotRequest.format() == null
+            ? plotRequest.withFormat("figure") : plotRequest;
+        String cacheKey = request.cacheKey(datasetVersion);
+        
+        PlotSource cachedPlot = plotCache.get(cacheKey);
+        if (cachedPlot != null) {
+            displayInteractivePlot(cachedPlot);
+            appendOutput("📊 " + request.type() + " plot served from cache\n");
+            updateCacheStats();
+            return;
+        }
+        updateCacheStats();
+        
+        // Second tier: plots rendered in earlier sessions from the same file
+        String fingerprint = datasetFingerprint;
+        DiskPlotCache disk = diskPlotCache;
+        // Edits of the plot on screen come back as a delta against it
+        String baseFigure = plotView.figureId();
+        if (fingerprint == null || disk == null) {
+            requestPlot(request, cacheKey, null, baseFigure);
+            return;
+        }
+        String diskKey = fingerprint + "|" + request.toJson();
+        CompletableFuture.supplyAsync(() -> disk.get(diskKey), tasks).thenAccept(diskPlot -> {
+            if (diskPlot == null) {
+                requestPlot(request, cacheKey, diskKey, baseFigure);
+                return;
+            }
+            plotCache.put(cacheKey, diskPlot);
+            displayInteractivePlot(diskPlot);
+            appendOutput("📊 " + request.type() + " plot served from disk cache\n");
+            refreshCacheStats();
+        });
+    }
+    
+    private void requestPlot(PlotRequest request, String cacheKey, String diskKey, String baseFigure) {
+        appendOutput("🎨 Generating " + request.type() + " plot...\n");
+        String json = baseFigure != null ? request.deltaJson(baseFigure) : request.toJson();
+        submit(Command.plot(json)).whenComplete((response, error) -> {
+            if (error != null) {
+                appendOutput("❌ Plot request failed: " + causeOf(error).getMessage() + "\n");
+                return;
+            }
+            if (response.kind() == Response.Kind.FIGURE_DELTA) {
+                // Not cached: a delta only means something on top of its base
+                displayFigureDelta(response, () -> requestPlot(request, cacheKey, diskKey, null));
+                return;
+            }
+            if (!response.kind().isPlot()) {
+                processServerResponse(response);
+                return;
+            }
+            
+            PlotSource plot = response.plot();
+            plotCache.put(cacheKey, plot);
+            DiskPlotCache disk = diskPlotCache;
+            if (diskKey != null && disk != null) {
+                // Keeps the spool file while it is copied, even if evicted meanwhile
+                plot.retain();
+                tasks.execute(() -> {
+                    try {
+                        disk.put(diskKey, plot);
+                    } catch (IOException e) {
+                        System.err.println("Plot disk cache write failed: " + e.getMessage());
+                    } finally {
+                        plot.release();
+                    }
+                    refreshCacheStats();
+                });
+            }
+            refreshCacheStats();
+            showPlotResponse(response, plot);
+        });
+    }
+    
+    // Points for the plot area's width, rounded up so small resizes keep
+    // hitting the plot cache
+    private int lodBudget() {
+        int target = (int) Math.max(plotWebView.getWidth(), 500) * LOD_POINTS_PER_PIXEL;
+        return (target + 249) / 250 * 250;
+    }
+    
+    private static final String LOD_HOOK_SCRIPT =
+        "(function () {" +
+        "  var gd = document.getElementById('plot') || document.querySelector('.plotly-graph-div');" +
+        "  if (!gd || !gd.on || gd.lodHooked) { return; }" +
+        "  gd.lodHooked = true;" +
+        "  gd.on('plotly_relayout', function (e) {" +
+        "    if (window.vizApplying) { return; }" +
+        "    if (e['xaxis.autorange']) { lodBridge.reset(); }" +
+        "    else if (e['xaxis.range[0]'] !== undefined) {" +
+        "      lodBridge.zoom(Number(e['xaxis.range[0]']), Number(e['xaxis.range[1]'])); }" +
+        "    else if (e['xaxis.range']) {" +
+        "      lodBridge.zoom(Number(e['xaxis.range'][0]), Number(e['xaxis.range'][1])); }" +
+        "  });" +
+        "})();";
+    
+    // Forwards zoom events from the plot page into the client
+    private void installLodHook(WebEngine engine) {
+        if (activeLodRequest == null) {
+            return;
+        }
+        try {
+            JSObject window = (JSObject) engine.executeScript("window");
+            window.setMember("lodBridge", lodBridge);
+            engine.executeScript(LOD_HOOK_SCRIPT);
+        } catch (RuntimeException e) {
+            // Not a Plotly page (or plotly.js failed to load); no zoom refinement
+        }
+    }
+    
+    // Called from JavaScript on the FX thread; must stay public
+    public class LodBridge {
+        public void zoom(double lo, double hi) {
+            if (!Double.isNaN(lo) && !Double.isNaN(hi) && lo < hi) {
+                refineLevelOfDetail(lo, hi);
+            }
         }
         
-        plotConfig.append("}");
-        
-        String plotCommand = "plot:" + plotConfig.toString();
-        appendOutput("🎨 Generating " + plotType + " plot...\n");
-        sendCommand(plotCommand);
+        public void reset() {
+            refineLevelOfDetail(Double.NaN, Double.NaN);
+        }
+    }
+    
+    // Re-queries the visible x range at full point budget; scroll zoom fires
+    // many events, so only the last one within 150 ms is acted on
+    private void refineLevelOfDetail(double lo, double hi) {
+        PlotRequest base = activeLodRequest;
+        // A refined figure would drop the rows streamed in since the plot
+        if (base == null || liveStreaming) {
+            return;
+        }
+        PlotRequest request = base.withDetail(lodBudget(), lo, hi);
+        if (pendingZoom != null) {
+            pendingZoom.cancel(false);
+        }
+        pendingZoom = timer.schedule(() -> {
+            if (activeLodLocal) {
+                tasks.execute(() -> restyleLocally(request));
+            } else {
+                uiUpdates.latest("lod-render", () -> renderPlot(request));
+            }
+        }, 150, TimeUnit.MILLISECONDS);
+    }
+    
+    // Swaps the trace data in place so the current zoom and page stay put
+    private void restyleLocally(PlotRequest request) {
+        ColumnarDataset dataset = localDataset;
+        if (dataset == null) {
+            return;
+        }
+        try {
+            String update = FigureBuilder.zoomUpdate(dataset, request);
+            uiUpdates.latest("lod-restyle", () ->
+                plotWebView.getEngine().executeScript("Plotly.restyle('plot', " + update + ", [0]);"));
+            appendOutput("🔍 Refined " + (request.hasXRange()
+                ? String.format("x ∈ [%.4g, %.4g]", request.xMin(), request.xMax()) : "full range") + "\n");
+        } catch (RuntimeException e) {
+            appendOutput("❌ Level-of-detail update failed: " + e.getMessage() + "\n");
+        }
+    }
+    
+    // Loads a CSV from this machine into the local column store; plots then
+    // render locally without the server holding the data
+    private void openLocalCsv() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Open CSV");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+        File file = chooser.showOpenDialog(mainLayout.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        appendOutput("📂 Loading " + file.getName() + "...\n");
+        tasks.execute(() -> {
+            try {
+                MappedCsvLoader.Result result = MappedCsvLoader.load(file.toPath());
+                localDataset = result.dataset();
+                localDatasetFromFile = true;
+                appendOutput("📂 " + file.getName() + ": " + result.describe() + "\n");
+                updateColumnSelectors(result.dataset().columnNames());
+                uiUpdates.post(() -> localRenderCheck.setSelected(true));
+            } catch (IOException | RuntimeException e) {
+                appendOutput("❌ Could not load " + file.getName() + ": " + e.getMessage() + "\n");
+            }
+        });
+    }
+    
+    // Builds the figure from the local column store; only the first plot after
+    // a dataset change touches the network
+    private void renderLocally(PlotRequest request) {
+        long version = datasetVersion;
+        long started = System.nanoTime();
+        localDataset(version).thenCombine(plotlyJs(), (dataset, plotlyJs) -> {
+            // Before the figure, so the views have their page when it arrives
+            uiUpdates.post(() -> preparePlotViews(plotlyJs));
+            return PlotSource.figure(FigureBuilder.build(dataset, request));
+        }).whenComplete((plot, error) -> {
+            if (error != null) {
+                appendOutput("❌ Local rendering failed: " + causeOf(error).getMessage() + "\n");
+                return;
+            }
+            displayInteractivePlot(plot);
+            appendOutput(String.format("⚡ %s plot rendered locally in %d ms%n",
+                request.type(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+        });
+    }
+    
+    private CompletableFuture<ColumnarDataset> localDataset(long version) {
+        ColumnarDataset dataset = localDataset;
+        if (dataset != null && (localDatasetFromFile || localDatasetVersion == version)) {
+            return CompletableFuture.completedFuture(dataset);
+        }
+        appendOutput("📥 Fetching dataset columns for local rendering...\n");
+        return submit(Command.of("get_dataset")).thenApply(response -> {
+            if (response.kind() != Response.Kind.DATASET) {
+                throw new IllegalStateException(response.body());
+            }
+            byte[] data = response.data();
+            try {
+                ColumnarDataset decoded = ColumnarDataset.decode(data, 0, data.length);
+                localDataset = decoded;
+                localDatasetVersion = version;
+                appendOutput(String.format("📥 Dataset cached locally: %d rows × %d columns (%.1f KB)%n",
+                    decoded.rowCount(), decoded.columnCount(), data.length / 1024.0));
+                return decoded;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+    
+    // plotly.js is kept next to the disk cache and fetched from the server once
+    private synchronized CompletableFuture<Path> plotlyJs() {
+        if (plotlyJsFuture != null && !plotlyJsFuture.isCompletedExceptionally()) {
+            return plotlyJsFuture;
+        }
+        if (Files.isRegularFile(PLOTLY_JS_FILE)) {
+            plotlyJsFuture = CompletableFuture.completedFuture(PLOTLY_JS_FILE);
+            return plotlyJsFuture;
+        }
+        plotlyJsFuture = submit(Command.of("get_plotlyjs")).thenApplyAsync(response -> {
+            if (response.kind() != Response.Kind.PLOTLYJS) {
+                throw new IllegalStateException(response.body());
+            }
+            try {
+                Files.createDirectories(PLOTLY_JS_FILE.getParent());
+                Path temp = Files.createTempFile(PLOTLY_JS_FILE.getParent(), "plotly", ".tmp");
+                Files.write(temp, response.payload().getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, PLOTLY_JS_FILE, StandardCopyOption.REPLACE_EXISTING);
+                return PLOTLY_JS_FILE;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, tasks);
+        return plotlyJsFuture;
     }
     
     public static void main(String[] args) {
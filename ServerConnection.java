@@ -0,0 +1,24 @@
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+// Command API shared by the thread-per-connection transport (SecureConnection)
+// and the selector-driven one (NioSecureConnection).
+public interface ServerConnection extends Closeable {
+
+    // Sends the command; the future completes with the reply carrying its id
+    CompletableFuture<Response> submit(Command command);
+
+    boolean isConnected();
+
+    int pendingCount();
+
+    // Negotiated codec with compression ratio and time so far (CodecStats)
+    String codecSummary();
+
+    // From now on every frame is also counted in totals, which outlive the
+    // connection (ClientMetrics)
+    void reportCodecStatsTo(CodecStats totals);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+// The most recent request traces (-Dviz.trace.keep, default 500), for the
+// waterfall view and for dumping as a JSON array.
+public final class TraceLog {
+
+    private final int capacity;
+    private final ArrayDeque<RequestTrace> traces = new ArrayDeque<>();
+
+    public TraceLog(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized void record(RequestTrace trace) {
+        if (traces.size() == capacity) {
+            traces.removeFirst();
+        }
+        traces.addLast(trace);
+    }
+
+    // Newest trace of the given type, or of any type when type is null
+    public synchronized RequestTrace latest(Command.Type type) {
+        Iterator<RequestTrace> newestFirst = traces.descendingIterator();
+        while (newestFirst.hasNext()) {
+            RequestTrace trace = newestFirst.next();
+            if (type == null || trace.type() == type) {
+                return trace;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return traces.size();
+    }
+
+    public void dumpJson(Path file) throws IOException {
+        RequestTrace[] snapshot;
+        synchronized (this) {
+            snapshot = traces.toArray(new RequestTrace[0]);
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("[\n");
+            for (int i = 0; i < snapshot.length; i++) {
+                out.write(i == 0 ? "  " : ",\n  ");
+                out.write(snapshot[i].toJson());
+            }
+            out.write("\n]\n");
+        }
+    }
+}
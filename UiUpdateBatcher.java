@@ -0,0 +1,143 @@
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hands UI work from background threads to the FX thread once per pulse,
+// instead of one Platform.runLater per server message:
+//
+//   log(text)            console output, applied as one list change
+//   post(action)         runs in order with other posted actions
+//   latest(key, action)  only the newest action per key runs (connection
+//                        status, plot swaps, stats refreshes); older ones
+//                        still waiting are counted as coalesced
+//
+// The AnimationTimer runs only while there is work and for a few idle pulses
+// after, so an idle client does not keep the pulse going. Safe to call from
+// any thread; on the FX thread the work still waits for the next pulse.
+public final class UiUpdateBatcher {
+
+    private static final int IDLE_PULSES_BEFORE_STOP = 30;
+
+    private final LogConsole console;
+    private final ConcurrentLinkedQueue<Runnable> actions = new ConcurrentLinkedQueue<>();
+    private final Map<String, Runnable> latest = new LinkedHashMap<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AnimationTimer timer;
+    private int idlePulses;
+
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong pulses = new AtomicLong();
+
+    public UiUpdateBatcher(LogConsole console) {
+        this.console = console;
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                pulse();
+            }
+        };
+    }
+
+    public void log(String text) {
+        posted.incrementAndGet();
+        console.append(text);
+        wake();
+    }
+
+    public void post(Runnable action) {
+        posted.incrementAndGet();
+        actions.add(action);
+        wake();
+    }
+
+    public void latest(String key, Runnable action) {
+        posted.incrementAndGet();
+        synchronized (latest) {
+            if (latest.put(key, action) != null) {
+                coalesced.incrementAndGet();
+            }
+        }
+        wake();
+    }
+
+    private void wake() {
+        if (running.compareAndSet(false, true)) {
+            Platform.runLater(timer::start);
+        }
+    }
+
+    private boolean hasWork() {
+        synchronized (latest) {
+            if (!latest.isEmpty()) {
+                return true;
+            }
+        }
+        return !actions.isEmpty() || console.hasPending();
+    }
+
+    private void pulse() {
+        if (!hasWork()) {
+            if (++idlePulses >= IDLE_PULSES_BEFORE_STOP) {
+                timer.stop();
+                running.set(false);
+                // Work posted between the check and the stop would otherwise wait for the next wake
+                if (hasWork() && running.compareAndSet(false, true)) {
+                    timer.start();
+                }
+            }
+            return;
+        }
+        idlePulses = 0;
+        pulses.incrementAndGet();
+
+        // Only what is queued now; actions posted while these run wait a pulse
+        for (int i = actions.size(); i > 0; i--) {
+            Runnable action = actions.poll();
+            if (action == null) {
+                break;
+            }
+            run(action);
+        }
+        List<Runnable> newest;
+        synchronized (latest) {
+            newest = new ArrayList<>(latest.values());
+            latest.clear();
+        }
+        for (Runnable action : newest) {
+            run(action);
+        }
+        if (console.hasPending()) {
+            console.flush();
+        }
+    }
+
+    private void run(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            System.err.println("UI update failed: " + e);
+        }
+    }
+
+    public long coalesced() {
+        return coalesced.get();
+    }
+
+    public long dropped() {
+        return console.dropped();
+    }
+
+    // e.g. "UI: 1840 updates in 96 pulses · 212 coalesced · 0 dropped"
+    public String describe() {
+        return String.format("UI: %d updates in %d pulses · %d coalesced · %d dropped",
+            posted.get(), pulses.get(), coalesced.get(), console.dropped());
+    }
+}
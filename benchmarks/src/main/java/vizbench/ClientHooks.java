@@ -0,0 +1,122 @@
+package vizbench;
+
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+// Handles onto the client classes.
+//
+// The client lives in the default package, which a named package cannot
+// import, and JMH refuses benchmark classes in the default package. So the
+// methods under test are bound reflectively once, here; static final method
+// handles are constants to the JIT and cost nothing per call.
+final class ClientHooks {
+
+    static final Class<?> SECURE_CONNECTION = type("SecureConnection");
+    static final Class<?> LISTENER = type("SecureConnection$Listener");
+    static final Class<?> RESPONSE = type("Response");
+    static final Class<?> COMMAND = type("Command");
+    static final Class<?> PLOT_SOURCE = type("PlotSource");
+    static final Class<?> PAYLOAD_CODEC = type("PayloadCodec");
+    static final Class<?> CODEC_STATS = type("CodecStats");
+    static final Class<?> BUFFER_POOL = type("BufferPool");
+    static final Class<?> BUFFER = type("BufferPool$Buffer");
+    static final Class<?> VIZ_CONNECTION = type("VizConnection");
+    static final Class<?> VIZ_REPLY = type("VizReply");
+
+    // SecureConnection
+    static final MethodHandle COMPRESS_DATA = method(SECURE_CONNECTION, "compressData", String.class);
+    static final MethodHandle DECOMPRESS_DATA = method(SECURE_CONNECTION, "decompressData", byte[].class, int.class);
+    static final MethodHandle DECODE_FRAME = method(SECURE_CONNECTION, "decodeFrame",
+        byte.class, byte.class, int.class, byte[].class, int.class, int.class, CODEC_STATS);
+    static final MethodHandle DECODE_FRAME_STREAM = method(SECURE_CONNECTION, "decodeFrame",
+        byte.class, byte.class, int.class, InputStream.class, int.class, CODEC_STATS);
+    static final MethodHandle NEW_OWNING_CONNECTION = constructor(SECURE_CONNECTION,
+        String.class, int.class, LISTENER);
+    static final MethodHandle CONNECT = method(SECURE_CONNECTION, "connect",
+        String.class, String.class, boolean.class);
+    static final MethodHandle SUBMIT = method(SECURE_CONNECTION, "submit", COMMAND);
+    static final MethodHandle CLOSE_CONNECTION = method(SECURE_CONNECTION, "close");
+
+    // PayloadCodec / CodecStats
+    static final MethodHandle CODEC_FOR_NAME = method(PAYLOAD_CODEC, "forName", String.class);
+    static final MethodHandle CODEC_ID = method(PAYLOAD_CODEC, "id");
+    static final MethodHandle CODEC_ENCODE = method(PAYLOAD_CODEC, "encode", byte[].class);
+    static final MethodHandle CODEC_ENCODE_INTO = method(PAYLOAD_CODEC, "encode",
+        byte[].class, int.class, int.class, BUFFER);
+    static final MethodHandle NEW_CODEC_STATS = constructor(CODEC_STATS);
+
+    // BufferPool
+    static final MethodHandle ACQUIRE_BUFFER = method(BUFFER_POOL, "acquire", int.class);
+    static final MethodHandle RELEASE_BUFFER = method(BUFFER_POOL, "release", BUFFER);
+
+    // Response / Command / PlotSource
+    static final MethodHandle NEW_RESPONSE = constructor(RESPONSE, int.class, String.class);
+    static final MethodHandle CLASSIFY = method(RESPONSE, "classify", String.class);
+    static final MethodHandle RESPONSE_KIND = method(RESPONSE, "kind");
+    static final MethodHandle RESPONSE_IS_STREAMED = method(RESPONSE, "isStreamed");
+    static final MethodHandle RESPONSE_PLOT = method(RESPONSE, "plot");
+    static final MethodHandle COMMAND_PLOT = method(COMMAND, "plot", String.class);
+    static final MethodHandle PLOT_FILE = method(PLOT_SOURCE, "file");
+
+    // SecureJavaFXClient (the class is loaded, never launched)
+    static final MethodHandle PARSE_STRING_ARRAY = method(type("SecureJavaFXClient"), "parseStringArray",
+        String.class);
+
+    // Plain-socket transport
+    static final MethodHandle NEW_VIZ_CONNECTION = constructor(VIZ_CONNECTION, String.class, int.class);
+    static final MethodHandle VIZ_EXECUTE = method(VIZ_CONNECTION, "execute", String.class);
+    static final MethodHandle VIZ_CLOSE = method(VIZ_CONNECTION, "close");
+    static final MethodHandle REPLY_BYTES = method(VIZ_REPLY, "bytes");
+
+    private ClientHooks() {
+    }
+
+    // A Listener that ignores every callback
+    static Object quietListener() {
+        return Proxy.newProxyInstance(LISTENER.getClassLoader(), new Class<?>[]{LISTENER},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "hashCode": return System.identityHashCode(proxy);
+                    case "equals": return proxy == args[0];
+                    case "toString": return "QuietListener";
+                    default: return null;
+                }
+            });
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name, false, ClientHooks.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Client class missing from the benchmark build: " + name, e);
+        }
+    }
+
+    private static MethodHandle method(Class<?> owner, String name, Class<?>... parameters) {
+        try {
+            Method method = owner.getDeclaredMethod(name, parameters);
+            return MethodHandles.lookup().unreflect(accessible(method));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No " + owner.getName() + "." + name, e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            Constructor<?> constructor = owner.getDeclaredConstructor(parameters);
+            return MethodHandles.lookup().unreflectConstructor(accessible(constructor));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No matching " + owner.getName() + " constructor", e);
+        }
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member) {
+        member.setAccessible(true);
+        return member;
+    }
+}
@@ -0,0 +1,90 @@
+package vizbench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// The framed protocol's payload codecs (PayloadCodec) in both directions.
+// encode and decodeFrame are the pooled in-memory paths the connections use
+// for commands and ordinary replies (run with -prof gc to see what is left
+// of the allocation); decodeFrameStream is the path for large replies read
+// off the socket: inflate, classify the prefix, and spool plots to disk.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    private static final byte TYPE_RESPONSE = 2;
+
+    @Param({"none", "gzip", "deflate"})
+    public String codec;
+
+    @Param({"1024", "65536", "1048576", "10485760", "52428800"})
+    public int size;
+
+    private Object payloadCodec;
+    private byte codecId;
+    private Object stats;
+    private byte[] reply;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws Throwable {
+        payloadCodec = ClientHooks.CODEC_FOR_NAME.invoke(codec);
+        codecId = (byte) ClientHooks.CODEC_ID.invoke(payloadCodec);
+        stats = ClientHooks.NEW_CODEC_STATS.invoke();
+        reply = ("HTML_PLOT:" + Payloads.plotHtml(size)).getBytes(StandardCharsets.UTF_8);
+        encoded = (byte[]) ClientHooks.CODEC_ENCODE.invoke(payloadCodec, reply);
+    }
+
+    @Benchmark
+    public int encode() throws Throwable {
+        Object buffer = ClientHooks.ACQUIRE_BUFFER.invoke(0);
+        try {
+            return (int) ClientHooks.CODEC_ENCODE_INTO.invoke(payloadCodec, reply, 0, reply.length, buffer);
+        } finally {
+            ClientHooks.RELEASE_BUFFER.invoke(buffer);
+        }
+    }
+
+    @Benchmark
+    public Object decodeFrame() throws Throwable {
+        Object response = ClientHooks.DECODE_FRAME.invoke(TYPE_RESPONSE, codecId, 1,
+            encoded, 0, encoded.length, stats);
+        deleteSpoolFile(response);
+        return response;
+    }
+
+    @Benchmark
+    public Object decodeFrameStream() throws Throwable {
+        Object response = ClientHooks.DECODE_FRAME_STREAM.invoke(TYPE_RESPONSE, codecId, 1,
+            new ByteArrayInputStream(encoded), encoded.length, stats);
+        deleteSpoolFile(response);
+        return response;
+    }
+
+    // Large plots are spooled; remove them so a run does not fill the disk
+    static void deleteSpoolFile(Object response) throws Throwable {
+        if ((boolean) ClientHooks.RESPONSE_IS_STREAMED.invoke(response)) {
+            Object plot = ClientHooks.RESPONSE_PLOT.invoke(response);
+            Files.deleteIfExists((Path) ClientHooks.PLOT_FILE.invoke(plot));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package vizbench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Parsing the COLUMNS: reply that updateColumnSelectors() fills the axis
+// pickers from. Wide datasets make this array large.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnParseBenchmark {
+
+    @Param({"1024", "65536", "1048576", "10485760", "52428800"})
+    public int size;
+
+    private String columnsJson;
+
+    @Setup
+    public void setUp() {
+        columnsJson = Payloads.columnsJson(size);
+    }
+
+    @Benchmark
+    public List<?> parseColumns() throws Throwable {
+        return (List<?>) ClientHooks.PARSE_STRING_ARRAY.invoke(columnsJson);
+    }
+}
@@ -0,0 +1,51 @@
+package vizbench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// The Swing client's image path: one command out, one length-prefixed image
+// read back by VizConnection over a loopback socket.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageReadBenchmark {
+
+    @Param({"1024", "65536", "1048576", "10485760", "52428800"})
+    public int size;
+
+    private StandInVizServer server;
+    private Object connection;
+
+    @Setup
+    public void setUp() throws Throwable {
+        server = new StandInVizServer(Payloads.imageBytes(size));
+        connection = ClientHooks.NEW_VIZ_CONNECTION.invoke("localhost", server.port());
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        ClientHooks.VIZ_CLOSE.invoke(connection);
+        server.close();
+    }
+
+    @Benchmark
+    public byte[] readImage() throws Throwable {
+        Object reply = ClientHooks.VIZ_EXECUTE.invoke(connection, "plt.show()");
+        return (byte[]) ClientHooks.REPLY_BYTES.invoke(reply);
+    }
+}
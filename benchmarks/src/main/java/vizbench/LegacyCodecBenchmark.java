@@ -0,0 +1,47 @@
+package vizbench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// SecureConnection's legacy-protocol codec: GZIP plus Base64, both ways.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LegacyCodecBenchmark {
+
+    @Param({"1024", "65536", "1048576", "10485760", "52428800"})
+    public int size;
+
+    private String reply;
+    private byte[] base64;
+
+    @Setup
+    public void setUp() throws Throwable {
+        reply = "HTML_PLOT:" + Payloads.plotHtml(size);
+        base64 = (byte[]) ClientHooks.COMPRESS_DATA.invoke(reply);
+    }
+
+    @Benchmark
+    public byte[] compress() throws Throwable {
+        return (byte[]) ClientHooks.COMPRESS_DATA.invoke(reply);
+    }
+
+    @Benchmark
+    public String decompress() throws Throwable {
+        return (String) ClientHooks.DECOMPRESS_DATA.invoke(base64, base64.length);
+    }
+}
@@ -0,0 +1,54 @@
+package vizbench;
+
+import java.util.Random;
+
+// Deterministic test payloads, so runs compress (and compare) the same way.
+final class Payloads {
+
+    private static final String PLOT_HEAD =
+        "<html><head><meta charset=\"utf-8\"></head><body><div id=\"plot\"></div>" +
+        "<script type=\"text/javascript\">Plotly.newPlot(\"plot\", [{\"type\": \"scatter\", " +
+        "\"mode\": \"markers\", \"x\": [";
+    private static final String PLOT_TAIL = "]}], {\"title\": {\"text\": \"bench\"}});</script></body></html>";
+
+    private Payloads() {
+    }
+
+    // Plot HTML of roughly the given size: a Plotly page whose bulk is a
+    // long array of floats, which is what large server replies look like
+    static String plotHtml(int size) {
+        Random random = new Random(size);
+        StringBuilder html = new StringBuilder(size + 64).append(PLOT_HEAD);
+        int bodyEnd = Math.max(0, size - PLOT_TAIL.length());
+        while (html.length() < bodyEnd) {
+            html.append(random.nextInt(100000) / 1000.0).append(", ");
+        }
+        html.setLength(Math.max(PLOT_HEAD.length(), bodyEnd - 2));
+        return html.append(PLOT_TAIL).toString();
+    }
+
+    // A JSON string array of column names totalling about the given size,
+    // with the commas, quotes and escapes real CSV headers contain
+    static String columnsJson(int size) {
+        StringBuilder json = new StringBuilder(size + 64).append('[');
+        for (int i = 0; json.length() < size - 32; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            switch (i % 4) {
+                case 0: json.append("\"sensor_").append(i).append('"'); break;
+                case 1: json.append("\"Revenue, \\\"net\\\" ").append(i).append('"'); break;
+                case 2: json.append("\"temp \\u00b0C ").append(i).append('"'); break;
+                default: json.append("\"line\\nbreak ").append(i).append('"');
+            }
+        }
+        return json.append(']').toString();
+    }
+
+    // Incompressible bytes, standing in for a PNG
+    static byte[] imageBytes(int size) {
+        byte[] image = new byte[size];
+        new Random(size).nextBytes(image);
+        return image;
+    }
+}
@@ -0,0 +1,53 @@
+package vizbench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// The client's reply dispatch: the prefix chain in Response.classify, and
+// building a Response the way the listener does before the UI switches on
+// its kind.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseDispatchBenchmark {
+
+    // Ordered as classify() tests them, so TEXT is the worst case
+    @Param({"HTML_PLOT:", "HTML_PLOT_FALLBACK:", "COLUMNS:", "STATS:", "ERROR: ", "TEXT"})
+    public String prefix;
+
+    @Param({"1024", "65536", "1048576", "10485760", "52428800"})
+    public int size;
+
+    private String body;
+
+    @Setup
+    public void setUp() {
+        String html = Payloads.plotHtml(size);
+        body = prefix.equals("TEXT") ? "✅ " + html : prefix + html;
+    }
+
+    @Benchmark
+    public Object classify() throws Throwable {
+        return ClientHooks.CLASSIFY.invoke(body);
+    }
+
+    @Benchmark
+    public Object newResponse() throws Throwable {
+        Object response = ClientHooks.NEW_RESPONSE.invoke(7, body);
+        return ClientHooks.RESPONSE_KIND.invoke(response);
+    }
+}
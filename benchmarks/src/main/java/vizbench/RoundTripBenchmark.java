@@ -0,0 +1,65 @@
+package vizbench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// End to end over TLS: SecureConnection.submit() of a plot command through
+// compression, the writer task, the socket, the listener thread and
+// decodeFrame(), until the reply future completes.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    private static final String PLOT_CONFIG =
+        "{\"type\": \"scatter\", \"x\": \"sepal_length\", \"y\": \"sepal_width\", \"title\": \"bench\"}";
+
+    @Param({"gzip", "deflate"})
+    public String codec;
+
+    @Param({"1024", "65536", "1048576", "10485760", "52428800"})
+    public int size;
+
+    private StandInSecureServer server;
+    private Object connection;
+    private Object command;
+
+    @Setup
+    public void setUp() throws Throwable {
+        server = new StandInSecureServer("HTML_PLOT:" + Payloads.plotHtml(size), codec);
+        connection = ClientHooks.NEW_OWNING_CONNECTION.invoke("localhost", server.port(),
+            ClientHooks.quietListener());
+        ClientHooks.CONNECT.invoke(connection, "benchmark", "benchmark", true);
+        command = ClientHooks.COMMAND_PLOT.invoke(PLOT_CONFIG);
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        ClientHooks.CLOSE_CONNECTION.invoke(connection);
+        server.close();
+    }
+
+    @Benchmark
+    public Object plotRoundTrip() throws Throwable {
+        CompletableFuture<?> reply = (CompletableFuture<?>) ClientHooks.SUBMIT.invoke(connection, command);
+        Object response = reply.get(60, TimeUnit.SECONDS);
+        CodecBenchmark.deleteSpoolFile(response);
+        return response;
+    }
+}
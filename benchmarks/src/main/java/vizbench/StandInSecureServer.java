@@ -0,0 +1,112 @@
+package vizbench;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+// TLS stand-in for secure_server.py: accepts any login, grants the framed
+// protocol and the given codec, and answers every command frame with the
+// same reply frame. The certificate is a throwaway self-signed one made with
+// keytool.
+final class StandInSecureServer extends StandInServer {
+
+    private static final char[] STORE_PASSWORD = "benchmark".toCharArray();
+    private static final byte TYPE_RESPONSE = 2;
+
+    private final byte[] authReply;
+    private final byte codecId;
+    private final byte[] reply;
+
+    // reply: the full reply text, prefix included; codec: a PayloadCodec name
+    StandInSecureServer(String reply, String codec) throws Throwable {
+        super(serverSocket());
+        Object payloadCodec = ClientHooks.CODEC_FOR_NAME.invoke(codec);
+        this.authReply = ("{\"status\": \"success\", \"token\": \"benchmark\", \"protocol\": \"framed\", " +
+            "\"codec\": \"" + codec + "\", \"message\": \"Authentication successful\"}").getBytes(StandardCharsets.UTF_8);
+        this.codecId = (byte) ClientHooks.CODEC_ID.invoke(payloadCodec);
+        this.reply = (byte[]) ClientHooks.CODEC_ENCODE.invoke(payloadCodec, reply.getBytes(StandardCharsets.UTF_8));
+        start();
+    }
+
+    private static SSLServerSocket serverSocket() throws IOException, GeneralSecurityException {
+        KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keys.init(selfSignedKeyStore(), STORE_PASSWORD);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keys.getKeyManagers(), null, null);
+        return (SSLServerSocket) context.getServerSocketFactory()
+            .createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    private static KeyStore selfSignedKeyStore() throws IOException, GeneralSecurityException {
+        Path directory = Files.createTempDirectory("viz-bench");
+        Path file = directory.resolve("standin.p12");
+        String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "standin",
+            "-keyalg", "RSA", "-keysize", "2048", "-validity", "2", "-dname", "CN=localhost",
+            "-storetype", "PKCS12", "-keystore", file.toString(),
+            "-storepass", new String(STORE_PASSWORD))
+            .redirectErrorStream(true)
+            .start();
+        try {
+            process.getInputStream().transferTo(System.err);
+            if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                throw new IOException("keytool failed to create the stand-in certificate");
+            }
+            KeyStore store = KeyStore.getInstance("PKCS12");
+            try (InputStream in = Files.newInputStream(file)) {
+                store.load(in, STORE_PASSWORD);
+            }
+            return store;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted creating the stand-in certificate", e);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Override
+    void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+
+        // The client sends its login as one JSON write and waits for the answer
+        byte[] login = new byte[1024];
+        if (in.read(login) == -1) {
+            return;
+        }
+        out.write(authReply);
+        out.flush();
+
+        while (true) {
+            int length = in.readInt();
+            in.readByte();
+            in.readByte();
+            int requestId = in.readInt();
+            in.skipNBytes(length);
+
+            out.writeInt(reply.length);
+            out.writeByte(TYPE_RESPONSE);
+            out.writeByte(codecId);
+            out.writeInt(requestId);
+            out.write(reply);
+            out.flush();
+        }
+    }
+}
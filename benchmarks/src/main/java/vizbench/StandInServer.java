@@ -0,0 +1,60 @@
+package vizbench;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// In-process stand-in for a visualization server: accepts connections on an
+// ephemeral loopback port and answers every request with a canned reply, so
+// round-trip benchmarks measure the client and the socket, not Python.
+abstract class StandInServer implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+
+    StandInServer(ServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+        this.acceptor = new Thread(this::acceptLoop, getClass().getSimpleName());
+        acceptor.setDaemon(true);
+    }
+
+    // Called by subclasses once their own fields are set
+    final void start() {
+        acceptor.start();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Handles one connection until the client goes away
+    abstract void serve(Socket socket) throws IOException;
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread handler = new Thread(() -> {
+                    try (Socket s = socket) {
+                        serve(s);
+                    } catch (IOException e) {
+                        // Client closed the connection
+                    }
+                }, getClass().getSimpleName() + "-Client");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Stand-in accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
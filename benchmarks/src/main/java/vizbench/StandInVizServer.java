@@ -0,0 +1,43 @@
+package vizbench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// Plain-socket stand-in speaking the viz_transport.py framing (int length,
+// byte kind): every command is answered with the same image.
+final class StandInVizServer extends StandInServer {
+
+    private final byte[] image;
+
+    StandInVizServer(byte[] image) throws IOException {
+        super(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()));
+        this.image = image;
+        start();
+    }
+
+    @Override
+    void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+        while (true) {
+            int length = in.readInt();
+            byte kind = in.readByte();
+            in.skipNBytes(length);
+            if (kind == 'P') {
+                out.writeInt(0);
+                out.writeByte('O');
+            } else {
+                out.writeInt(image.length);
+                out.writeByte('I');
+                out.write(image);
+            }
+            out.flush();
+        }
+    }
+}
@@ -1,13 +1,107 @@
 import java.applet.Applet;
 import java.awt.*;
 import java.awt.event.*;
-import java.io.*;
-import java.net.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public class PythonVisualizationApplet extends Applet implements ActionListener {
-    TextArea command, result;
-    Button send;
+    TextArea command;
+    ConsoleView result;
+    TextField searchField;
+    Button send, findButton, historyButton;
     Image picture;
+    VizConsole console;
+
+    // Paints only the console lines in view, newest at the bottom, with a
+    // scrollbar over the whole ring; follows new output unless a search hit
+    // is highlighted (click to resume)
+    static final class ConsoleView extends Panel implements VizConsole.Listener {
+        private static final long serialVersionUID = 1L;
+
+        private final VizConsole console;
+        private final Scrollbar scrollbar = new Scrollbar(Scrollbar.VERTICAL);
+        private final Canvas canvas = new Canvas() {
+            public void update(Graphics g) {
+                paint(g);
+            }
+
+            public void paint(Graphics g) {
+                paintLines(g);
+            }
+        };
+        private int highlighted = -1;
+
+        ConsoleView(VizConsole console) {
+            this.console = console;
+            setLayout(new BorderLayout());
+            canvas.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            canvas.setPreferredSize(new Dimension(400, 160));
+            add(canvas, BorderLayout.CENTER);
+            add(scrollbar, BorderLayout.EAST);
+            scrollbar.addAdjustmentListener(e -> canvas.repaint());
+            canvas.addMouseWheelListener(e -> scrollbar.setValue(scrollbar.getValue() + 3 * e.getWheelRotation()));
+            canvas.addMouseListener(new MouseAdapter() {
+                public void mouseClicked(MouseEvent e) {
+                    highlighted = -1;
+                    linesChanged(0, 0);
+                }
+            });
+            canvas.addComponentListener(new ComponentAdapter() {
+                public void componentResized(ComponentEvent e) {
+                    linesChanged(0, 0);
+                }
+            });
+            console.addListener(this);
+        }
+
+        private int visibleRows() {
+            return Math.max(1, canvas.getHeight() / canvas.getFontMetrics(canvas.getFont()).getHeight());
+        }
+
+        public void linesChanged(int removedFromTop, int addedAtEnd) {
+            int rows = visibleRows();
+            int size = console.size();
+            int top;
+            if (highlighted < 0) {
+                top = size - rows;
+            } else {
+                highlighted = Math.max(-1, highlighted - removedFromTop);
+                top = scrollbar.getValue() - removedFromTop;
+            }
+            scrollbar.setValues(Math.max(0, Math.min(top, size - rows)), rows, 0, Math.max(size, rows));
+            scrollbar.setBlockIncrement(rows);
+            canvas.repaint();
+        }
+
+        void highlight(int index) {
+            highlighted = index;
+            int rows = visibleRows();
+            scrollbar.setValues(Math.max(0, Math.min(index - rows / 2, console.size() - rows)), rows, 0,
+                Math.max(console.size(), rows));
+            canvas.repaint();
+        }
+
+        int highlighted() {
+            return highlighted;
+        }
+
+        private void paintLines(Graphics g) {
+            FontMetrics metrics = g.getFontMetrics(canvas.getFont());
+            int lineHeight = metrics.getHeight();
+            g.setColor(Color.white);
+            g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            int top = scrollbar.getValue();
+            int end = Math.min(console.size(), top + visibleRows() + 1);
+            for (int i = top, y = 0; i < end; i++, y += lineHeight) {
+                if (i == highlighted) {
+                    g.setColor(Color.yellow);
+                    g.fillRect(0, y, canvas.getWidth(), lineHeight);
+                }
+                g.setColor(Color.black);
+                g.drawString(console.get(i), 4, y + metrics.getAscent());
+            }
+        }
+    }
     
     public void init() {
         setLayout(new BorderLayout());
@@ -26,100 +120,117 @@ public class PythonVisualizationApplet extends Applet implements ActionListener
         // Output area
         Panel centerPanel = new Panel(new BorderLayout());
         centerPanel.add(new Label("Output from Python:"), BorderLayout.NORTH);
-        result = new TextArea(10, 50);
-        result.setEditable(false);
+        console = VizConsole.openDefault();
+        result = new ConsoleView(console);
         centerPanel.add(result, BorderLayout.CENTER);
+
+        // Search: Find steps back to older matches, History lists the ones
+        // already moved to disk
+        Panel searchPanel = new Panel(new FlowLayout(FlowLayout.LEFT));
+        searchField = new TextField(30);
+        searchField.addActionListener(this);
+        findButton = new Button("Find");
+        findButton.addActionListener(this);
+        historyButton = new Button("History");
+        historyButton.addActionListener(this);
+        searchPanel.add(new Label("Search:"));
+        searchPanel.add(searchField);
+        searchPanel.add(findButton);
+        searchPanel.add(historyButton);
+        centerPanel.add(searchPanel, BorderLayout.SOUTH);
         
         add(topPanel, BorderLayout.NORTH);
         add(centerPanel, BorderLayout.CENTER);
+
+        VizConnectionPool.shared().warmUp();
+    }
+
+    public void destroy() {
+        VizConnectionPool.shared().close();
+        console.close();
+    }
+
+    private void find() {
+        int found = console.find(searchField.getText(), result.highlighted(), true);
+        if (found >= 0) {
+            result.highlight(found);
+        } else {
+            showStatus("No match in the last " + console.size() + " lines");
+        }
+    }
+
+    private void showHistory() {
+        try {
+            List<String> matches = console.searchHistory(searchField.getText(), 500);
+            Frame frame = new Frame(matches.size() + " older lines matching \"" + searchField.getText() + "\"");
+            TextArea text = new TextArea(String.join("\n", matches), 20, 80, TextArea.SCROLLBARS_BOTH);
+            text.setEditable(false);
+            frame.add(text);
+            frame.addWindowListener(new WindowAdapter() {
+                public void windowClosing(WindowEvent e) {
+                    frame.dispose();
+                }
+            });
+            frame.pack();
+            frame.setVisible(true);
+        } catch (Exception ex) {
+            console.append("History search failed: " + ex + "\n");
+        }
     }
     
     public void actionPerformed(ActionEvent e) {
-        if (e.getSource() == send) {
-            String output = "";
+        if (e.getSource() == searchField || e.getSource() == findButton) {
+            find();
+        } else if (e.getSource() == historyButton) {
+            showHistory();
+        } else if (e.getSource() == send) {
             try {
                 String sendData = command.getText().trim();
                 command.setText("");
                 String[] code = sendData.split("\n");
                 
                 if (sendData.length() > 0) {
+                    List<String> lines = new ArrayList<>();
                     for (String xcode : code) {
-                        Socket s = null;
-                        DataInputStream in = null;
-                        DataOutputStream out = null;
-                        
-                        try {
-                            s = new Socket("localhost", 1234);
-                            in = new DataInputStream(s.getInputStream());
-                            out = new DataOutputStream(s.getOutputStream());
-                            
-                            output = ">>> " + xcode + "\n" + result.getText();
-                            result.setText(output);
-                            
-                            out.write(xcode.trim().getBytes());
-                            out.flush();
-                            
-                            if (xcode.equals("exit()") || xcode.equals("quit()")) {
-                                s.close();
-                                output = "Disconnected\n" + result.getText();
-                                result.setText(output);
+                        if (!xcode.trim().isEmpty()) lines.add(xcode.trim());
+                    }
+
+                    // Whole script in one round trip over a pooled connection
+                    VizConnectionPool pool = VizConnectionPool.shared();
+                    try {
+                        List<VizReply> replies = pool.executeBatch(lines);
+                        for (int i = 0; i < replies.size(); i++) {
+                            String xcode = lines.get(i);
+                            VizReply reply = replies.get(i);
+
+                            console.append(">>> " + xcode + "\n");
+
+                            if (reply.kind() == VizReply.Kind.STOPPED) {
+                                pool.close();
+                                console.append("Disconnected\n");
+                            } else if (reply.isImage()) {
+                                // Chart bytes arrive on the connection; no temp file needed
+                                picture = Toolkit.getDefaultToolkit().createImage(reply.bytes());
+                                repaint();
+
+                                console.append(">>> Chart received and displayed\n");
                             } else {
-                                byte[] bdata = new byte[24576];
-                                
-                                if (xcode.equals("chart")) {
-                                    // Remove existing file if any
-                                    try {
-                                        File f = new File("plot.jpg");
-                                        if (f.exists()) f.delete();
-                                    } catch (Exception ex) {}
-                                    
-                                    // Receive the full image from Python server
-                                    FileOutputStream fileOutputStream = new FileOutputStream("plot.jpg");
-                                    int bytesRead;
-                                    while ((bytesRead = in.read(bdata)) != -1) {
-                                        fileOutputStream.write(bdata, 0, bytesRead);
-                                    }
-                                    fileOutputStream.close();
-                                    
-                                    // Load image relative to HTML document
-                                    picture = getImage(getDocumentBase(), "plot.jpg");
-                                    repaint();
-                                    
-                                    output = ">>> Chart received and displayed\n" + result.getText();
-                                    result.setText(output);
-                                    
+                                String edata = reply.text();
+                                if (edata.trim().equals("")) {
+                                    console.append(">>> " + edata.length() + "\n");
                                 } else {
-                                    // Receive text data
-                                    int bytesReadText = in.read(bdata, 0, bdata.length);
-                                    String edata = new String(bdata, 0, bytesReadText);
-                                    
-                                    if (edata.trim().equals("")) {
-                                        output = ">>> " + bytesReadText + "\n" + result.getText();
-                                        result.setText(output);
-                                    } else {
-                                        output = ">>> " + edata + "\n" + result.getText();
-                                        result.setText(output);
-                                        if (edata.contains("Runtime Error: ")) {
-                                            output = "Connection Terminated, reconnect again...\n" + output;
-                                            result.setText(output);
-                                        }
-                                    }
+                                    console.append(">>> " + edata + "\n");
                                 }
                             }
-                            s.close();
-                            
-                        } catch (Exception ex) {
-                            output = "Error: " + ex.toString() + "\n" + result.getText();
-                            result.setText(output);
                         }
+                    } catch (Exception ex) {
+                        console.append("Error: " + ex.toString() + "\n");
                     }
                 } else {
-                    output = "Type the command to send to the Python server...\n" + result.getText();
-                    result.setText(output);
+                    console.append("Type the command to send to the Python server...\n");
                 }
             } catch (Exception e1) {
-                output = e1.toString() + "\n" + result.getText();
-                result.setText(output);
+                console.append(e1.toString() + "\n");
             }
         }
     }
@@ -0,0 +1,166 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// One persistent plain-socket connection to a visualization server.
+//
+// Every message is a 5 byte big-endian header followed by the payload:
+//   int  payload length
+//   byte kind
+// Client kinds: 'C' one command, 'B' a batch of newline separated commands,
+// 'P' ping. Server kinds: 'T' text, 'I' image, 'E' error, 'X' server
+// stopping, 'O' pong, 'D' end of batch.
+//
+// Must stay in sync with viz_transport.py.
+public class VizConnection implements Closeable {
+
+    static final int MAX_PAYLOAD_SIZE = 64 * 1024 * 1024;
+
+    static final byte KIND_COMMAND = 'C';
+    static final byte KIND_BATCH = 'B';
+    static final byte KIND_PING = 'P';
+    static final byte KIND_TEXT = 'T';
+    static final byte KIND_IMAGE = 'I';
+    static final byte KIND_ERROR = 'E';
+    static final byte KIND_STOPPED = 'X';
+    static final byte KIND_PONG = 'O';
+    static final byte KIND_DONE = 'D';
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    // Scripts run on the server while we wait, so reads get a generous timeout
+    private static final int READ_TIMEOUT_MS = Integer.getInteger("viz.readTimeoutMs", 300000);
+    private static final int PING_TIMEOUT_MS = 2000;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private volatile long lastUsed = System.nanoTime();
+    private volatile boolean broken = false;
+    // Payload of the last message read
+    private byte[] payload = new byte[0];
+
+    public VizConnection(String host, int port) throws IOException {
+        socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    public synchronized VizReply execute(String command) throws IOException {
+        write(KIND_COMMAND, command);
+        return read();
+    }
+
+    // Sends all commands as one message; the server replies to each in order
+    // and stops early if one of them shuts it down.
+    public synchronized List<VizReply> executeBatch(List<String> commands) throws IOException {
+        write(KIND_BATCH, String.join("\n", commands));
+        List<VizReply> replies = new ArrayList<>(commands.size());
+        while (true) {
+            VizReply reply = read();
+            if (reply == null) {
+                return replies;
+            }
+            replies.add(reply);
+        }
+    }
+
+    // Round trip with a short timeout; a connection that fails is marked broken
+    public synchronized boolean ping() {
+        try {
+            socket.setSoTimeout(PING_TIMEOUT_MS);
+            write(KIND_PING, "");
+            return readMessage() == KIND_PONG;
+        } catch (IOException e) {
+            broken = true;
+            return false;
+        } finally {
+            try {
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+            } catch (IOException e) {
+                broken = true;
+            }
+        }
+    }
+
+    public boolean isOpen() {
+        return !broken && !socket.isClosed();
+    }
+
+    public long idleNanos() {
+        return System.nanoTime() - lastUsed;
+    }
+
+    private void write(byte kind, String text) throws IOException {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        if (payload.length > MAX_PAYLOAD_SIZE) {
+            throw new IOException("Command too large: " + payload.length + " bytes");
+        }
+        try {
+            out.writeInt(payload.length);
+            out.writeByte(kind);
+            out.write(payload);
+            out.flush();
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    // Next reply, or null at the end of a batch
+    private VizReply read() throws IOException {
+        byte kind = readMessage();
+        switch (kind) {
+            case KIND_DONE: return null;
+            case KIND_TEXT: return new VizReply(VizReply.Kind.TEXT, payload);
+            case KIND_IMAGE: return new VizReply(VizReply.Kind.IMAGE, payload);
+            case KIND_ERROR: return new VizReply(VizReply.Kind.ERROR, payload);
+            case KIND_STOPPED:
+                broken = true;
+                return new VizReply(VizReply.Kind.STOPPED, payload);
+            default:
+                broken = true;
+                throw new IOException("Unexpected reply kind: " + (char) kind);
+        }
+    }
+
+    // Reads one message into payload and returns its kind. Any failure leaves
+    // the stream out of sync, so the connection is not reused afterwards.
+    private byte readMessage() throws IOException {
+        try {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+                throw new IOException("Invalid reply length: " + length);
+            }
+            byte kind = in.readByte();
+            payload = new byte[length];
+            in.readFully(payload);
+            lastUsed = System.nanoTime();
+            return kind;
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        broken = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+}
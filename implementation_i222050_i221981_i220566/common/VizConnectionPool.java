@@ -0,0 +1,178 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Small pool of persistent connections shared by the Swing, JavaFX and applet
+// clients, so a script no longer pays a TCP handshake (and a server accept)
+// per line.
+//
+// A connection that sat idle longer than HEALTH_CHECK_IDLE_SECONDS is pinged
+// before it is handed out, and a background task pings idle connections every
+// KEEP_ALIVE_SECONDS so the server's idle timeout never closes them. Broken
+// connections are dropped and replaced on the next borrow.
+//
+// Build the clients with this directory on the source path, e.g.
+//   javac -sourcepath ../common JavaSwingClient.java
+public class VizConnectionPool implements Closeable {
+
+    private static final int DEFAULT_SIZE = Integer.getInteger("viz.pool.size", 2);
+    private static final long HEALTH_CHECK_IDLE_SECONDS = 10;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final long BORROW_TIMEOUT_SECONDS = 30;
+
+    private static VizConnectionPool shared;
+
+    private final String host;
+    private final int port;
+    private final Semaphore permits;
+    // Most recently used first, so the warmest connection is reused
+    private final Deque<VizConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService keepAlive;
+    private volatile boolean closed = false;
+
+    public VizConnectionPool(String host, int port, int maxConnections) {
+        this.host = host;
+        this.port = port;
+        this.permits = new Semaphore(Math.max(1, maxConnections), true);
+        this.keepAlive = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Viz-KeepAlive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        keepAlive.scheduleWithFixedDelay(this::pingIdle, KEEP_ALIVE_SECONDS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Pool for viz.host:viz.port (default localhost:1234), reopened after close()
+    public static synchronized VizConnectionPool shared() {
+        if (shared == null || shared.closed) {
+            shared = new VizConnectionPool(System.getProperty("viz.host", "localhost"),
+                Integer.getInteger("viz.port", 1234), DEFAULT_SIZE);
+        }
+        return shared;
+    }
+
+    // Opens one connection in the background so the first command skips the handshake
+    public void warmUp() {
+        keepAlive.execute(() -> {
+            try {
+                release(borrow());
+            } catch (IOException e) {
+                System.err.println("Viz server not reachable yet: " + e.getMessage());
+            }
+        });
+    }
+
+    public VizReply execute(String command) throws IOException {
+        VizConnection connection = borrow();
+        try {
+            return connection.execute(command);
+        } finally {
+            release(connection);
+        }
+    }
+
+    // Runs a whole script as one round trip, one reply per command
+    public List<VizReply> executeBatch(List<String> commands) throws IOException {
+        if (commands.isEmpty()) {
+            return new ArrayList<>();
+        }
+        VizConnection connection = borrow();
+        try {
+            return connection.executeBatch(commands);
+        } finally {
+            release(connection);
+        }
+    }
+
+    public VizConnection borrow() throws IOException {
+        if (closed) {
+            throw new IOException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("No free connection to " + host + ":" + port);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection");
+        }
+
+        try {
+            while (true) {
+                VizConnection connection;
+                synchronized (idle) {
+                    connection = idle.pollFirst();
+                }
+                if (connection == null) {
+                    return new VizConnection(host, port);
+                }
+                if (connection.isOpen() &&
+                    (connection.idleNanos() < TimeUnit.SECONDS.toNanos(HEALTH_CHECK_IDLE_SECONDS) || connection.ping())) {
+                    return connection;
+                }
+                connection.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void release(VizConnection connection) {
+        if (closed || !connection.isOpen()) {
+            connection.close();
+        } else {
+            synchronized (idle) {
+                idle.addFirst(connection);
+            }
+        }
+        permits.release();
+    }
+
+    // Idle connections are taken out of the pool while they are pinged, so a
+    // borrower never shares one with the keep-alive task. Each holds a permit
+    // meanwhile, as if borrowed, so a borrower waits instead of opening an
+    // extra socket; with no permit free the ping waits for the next round
+    private void pingIdle() {
+        List<VizConnection> stale = new ArrayList<>();
+        synchronized (idle) {
+            idle.removeIf(connection -> {
+                if (connection.idleNanos() >= TimeUnit.SECONDS.toNanos(KEEP_ALIVE_SECONDS) && permits.tryAcquire()) {
+                    stale.add(connection);
+                    return true;
+                }
+                return false;
+            });
+        }
+        for (VizConnection connection : stale) {
+            if (!closed && connection.ping()) {
+                synchronized (idle) {
+                    idle.addLast(connection);
+                }
+            } else {
+                connection.close();
+            }
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        keepAlive.shutdownNow();
+        synchronized (idle) {
+            for (VizConnection connection : idle) {
+                connection.close();
+            }
+            idle.clear();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Output history for every client: the Swing, JavaFX and applet clients here
+// and the secure client's LogConsole. The newest viz.console.maxLines lines
+// (default 5000) sit in a ring, so appending takes the same time however long
+// the session has run; once the ring is full each new line pushes the oldest
+// one out to a per-session spill file (when there is one), where
+// searchHistory() and historySearch() still find it. Each client shows the
+// ring through its own virtualized list.
+//
+// Call from the UI thread only.
+public final class VizConsole implements Closeable {
+
+    // Notified after every change; lines only ever leave from the top and
+    // arrive at the bottom
+    public interface Listener {
+        void linesChanged(int removedFromTop, int addedAtEnd);
+    }
+
+    private static final int KEEP_SESSIONS = Integer.getInteger("viz.console.keepSessions", 5);
+
+    private final String[] ring;
+    private int head;                 // oldest line
+    private int size;
+    private long evicted;             // lines pushed out of the ring so far
+    private final Path spillFile;
+    private BufferedWriter spill;
+    private boolean spillFailed;
+    private boolean closed;
+    private final List<Listener> listeners = new ArrayList<>();
+
+    public VizConsole(int maxLines, Path spillFile) {
+        this.ring = new String[Math.max(1, maxLines)];
+        this.spillFile = spillFile;
+    }
+
+    // Capacity and spill directory from system properties; a directory that
+    // cannot be created just means no history beyond the cap
+    public static VizConsole openDefault() {
+        Path directory = Paths.get(System.getProperty("viz.console.dir",
+            Paths.get(System.getProperty("user.home"), ".viz-client", "console").toString()));
+        Path spillFile = sessionSpillFile(directory, KEEP_SESSIONS);
+        if (spillFile == null) {
+            System.err.println("Console history disabled: cannot use " + directory);
+        }
+        return new VizConsole(Integer.getInteger("viz.console.maxLines", 5000), spillFile);
+    }
+
+    // A fresh console-<timestamp>.log in directory, deleting all but the
+    // newest keepSessions - 1 earlier ones; null if the directory is unusable
+    public static Path sessionSpillFile(Path directory, int keepSessions) {
+        try {
+            Files.createDirectories(directory);
+            List<Path> earlier;
+            try (Stream<Path> files = Files.list(directory)) {
+                earlier = files.filter(file -> file.getFileName().toString().matches("console-[0-9-]+\\.log"))
+                    .sorted().collect(Collectors.toList());
+            }
+            for (int i = 0; i < earlier.size() - Math.max(0, keepSessions - 1); i++) {
+                Files.deleteIfExists(earlier.get(i));
+            }
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS"));
+            return directory.resolve("console-" + stamp + ".log");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    // One line per '\n'; a trailing newline does not add an empty line
+    public void append(String text) {
+        if (text.isEmpty()) {
+            return;
+        }
+        int before = size;
+        long evictedBefore = evicted;
+        int added = 0;
+        int start = 0;
+        int length = text.endsWith("\n") ? text.length() - 1 : text.length();
+        while (start <= length) {
+            int end = text.indexOf('\n', start);
+            if (end < 0 || end > length) {
+                end = length;
+            }
+            String line = text.substring(start, end > start && text.charAt(end - 1) == '\r' ? end - 1 : end);
+            if (size == ring.length) {
+                evictOldest();
+            }
+            ring[(head + size) % ring.length] = line;
+            size++;
+            added++;
+            start = end + 1;
+        }
+        // Lines that came and went within this call were never visible
+        notifyListeners((int) Math.min(evicted - evictedBefore, before), Math.min(added, size));
+    }
+
+    // Moves every line to the spill file; line numbers keep counting
+    public void clear() {
+        int removed = size;
+        while (size > 0) {
+            evictOldest();
+        }
+        notifyListeners(removed, 0);
+    }
+
+    private void evictOldest() {
+        String line = ring[head];
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        size--;
+        evicted++;
+        writeSpill(line);
+    }
+
+    private void writeSpill(String line) {
+        if (spillFile == null || spillFailed || closed) {
+            return;
+        }
+        try {
+            if (spill == null) {
+                Files.createDirectories(spillFile.toAbsolutePath().getParent());
+                spill = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8);
+            }
+            spill.write(line);
+            spill.write('\n');
+        } catch (IOException e) {
+            // Keep the console working; only the old history is lost
+            spillFailed = true;
+        }
+    }
+
+    private void notifyListeners(int removed, int added) {
+        if (removed == 0 && added == 0) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            listener.linesChanged(removed, added);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 0 is the oldest line still in memory
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("line " + index + " of " + size);
+        }
+        return ring[(head + index) % ring.length];
+    }
+
+    // Session-wide, 1-based number of the line at index
+    public long lineNumber(int index) {
+        return evicted + index + 1;
+    }
+
+    // Lines pushed out of the ring since the start, spilled or not
+    public long evictedLines() {
+        return evicted;
+    }
+
+    public long spilledLines() {
+        return spillFile == null || spillFailed ? 0 : evicted;
+    }
+
+    // The in-memory line nearest before (older) or after index that contains
+    // query, ignoring case and wrapping around; -1 if none does
+    public int find(String query, int index, boolean older) {
+        if (query.isEmpty() || size == 0) {
+            return -1;
+        }
+        String needle = query.toLowerCase(Locale.ROOT);
+        int step = older ? -1 : 1;
+        int from = index < 0 || index >= size ? (older ? size : -1) : index;
+        for (int i = 1; i <= size; i++) {
+            int candidate = Math.floorMod(from + step * i, size);
+            if (get(candidate).toLowerCase(Locale.ROOT).contains(needle)) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    // Newest matches (at most limit) among the lines already moved to disk,
+    // as "#<line number>  <text>"; reads the whole file
+    public List<String> searchHistory(String query, int limit) throws IOException {
+        return scanSpill(flushSpill(), query, limit);
+    }
+
+    // Same search, but only the flush happens here: the returned scan is safe
+    // to run on another thread while appends continue
+    public Callable<List<String>> historySearch(String query, int limit) {
+        long available = flushSpill();
+        return () -> scanSpill(available, query, limit);
+    }
+
+    // Lines on disk and readable once this returns
+    private long flushSpill() {
+        long lines = spill == null ? 0 : spilledLines();
+        if (lines > 0) {
+            try {
+                spill.flush();
+            } catch (IOException e) {
+                spillFailed = true;
+                lines = 0;
+            }
+        }
+        return lines;
+    }
+
+    private List<String> scanSpill(long available, String query, int limit) throws IOException {
+        ArrayDeque<String> matches = new ArrayDeque<>();
+        String needle = query.toLowerCase(Locale.ROOT);
+        if (available == 0 || needle.isEmpty()) {
+            return new ArrayList<>(matches);
+        }
+        try (BufferedReader in = Files.newBufferedReader(spillFile, StandardCharsets.UTF_8)) {
+            String line;
+            for (long number = 1; number <= available && (line = in.readLine()) != null; number++) {
+                if (line.toLowerCase(Locale.ROOT).contains(needle)) {
+                    if (matches.size() == limit) {
+                        matches.removeFirst();
+                    }
+                    matches.addLast("#" + number + "  " + line);
+                }
+            }
+        }
+        return new ArrayList<>(matches);
+    }
+
+    // In-memory lines as one string, for copying
+    public String text() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            text.append(get(i)).append('\n');
+        }
+        return text.toString();
+    }
+
+    // e.g. "5000 lines (cap 5000) · 12408 older lines in console-….log"
+    public String describe() {
+        long spilled = spilledLines();
+        return size + " lines (cap " + ring.length + ")" + (spilled > 0
+            ? " · " + spilled + " older lines in " + spillFile.getFileName() : "");
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ignored) {
+            }
+            spill = null;
+        }
+    }
+}
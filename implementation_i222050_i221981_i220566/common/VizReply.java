@@ -0,0 +1,38 @@
+import java.nio.charset.StandardCharsets;
+
+// One server reply on the plain-socket transport: text, an image, an error
+// message, or notice that the server is shutting down.
+public final class VizReply {
+
+    public enum Kind { TEXT, IMAGE, ERROR, STOPPED }
+
+    private final Kind kind;
+    private final byte[] payload;
+
+    VizReply(Kind kind, byte[] payload) {
+        this.kind = kind;
+        this.payload = payload;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public boolean isImage() {
+        return kind == Kind.IMAGE;
+    }
+
+    // Raw image bytes (PNG or JPEG) for IMAGE replies
+    public byte[] bytes() {
+        return payload;
+    }
+
+    public String text() {
+        return kind == Kind.IMAGE ? "" : new String(payload, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.IMAGE ? "[image " + payload.length + " bytes]" : text();
+    }
+}
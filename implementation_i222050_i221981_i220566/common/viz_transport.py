@@ -0,0 +1,121 @@
+"""Persistent, framed connections for the plain-socket visualization servers.
+
+Every message is a 5 byte big-endian header (payload length, kind) followed by
+the payload. Clients send 'C' (one command), 'B' (newline separated batch) or
+'P' (ping); the server answers 'T' text, 'I' image, 'E' error, 'X' stopping,
+'O' pong, and ends every batch with 'D'. Must stay in sync with
+VizConnection.java.
+
+Each connection gets its own thread, but commands run one at a time under a
+global lock because the servers share matplotlib state and a namespace.
+"""
+import socket, struct, threading
+
+FRAME_HEADER = struct.Struct('>IB')
+MAX_PAYLOAD = 64 * 1024 * 1024
+IDLE_TIMEOUT = 120  # clients ping every 30s, so this only drops dead peers
+
+COMMAND, BATCH, PING = ord('C'), ord('B'), ord('P')
+TEXT, IMAGE, ERROR, STOPPED, PONG, DONE = (ord(k) for k in 'TIEXOD')
+
+
+class StopServer(Exception):
+    """Raised by a handler to reply with its message and shut the server down."""
+
+
+def _recv_exact(conn, n):
+    data = bytearray()
+    while len(data) < n:
+        chunk = conn.recv(n - len(data))
+        if not chunk:
+            return None
+        data.extend(chunk)
+    return bytes(data)
+
+
+def send_frame(conn, kind, payload=b""):
+    if isinstance(payload, str):
+        payload = payload.encode("utf-8")
+    conn.sendall(FRAME_HEADER.pack(len(payload), kind) + payload)
+
+
+def read_frame(conn):
+    """Returns (kind, payload), or None when the client closed the connection."""
+    header = _recv_exact(conn, FRAME_HEADER.size)
+    if header is None:
+        return None
+    length, kind = FRAME_HEADER.unpack(header)
+    if length > MAX_PAYLOAD:
+        raise ValueError(f"Frame too large: {length}")
+    payload = _recv_exact(conn, length) if length else b""
+    if payload is None:
+        return None
+    return kind, payload
+
+
+def serve(host, port, handler, banner=None):
+    """Accepts connections until a handler raises StopServer.
+
+    handler(command) returns (kind, payload) with kind TEXT, IMAGE or ERROR.
+    """
+    stop = threading.Event()
+    exec_lock = threading.Lock()
+
+    def run(command):
+        with exec_lock:
+            try:
+                return handler(command)
+            except StopServer as e:
+                stop.set()
+                return STOPPED, str(e)
+            except Exception as e:
+                return ERROR, f"Runtime Error: {e}"
+
+    def session(conn, addr):
+        print("Client connected:", addr)
+        conn.setsockopt(socket.IPPROTO_TCP, socket.TCP_NODELAY, 1)
+        conn.settimeout(IDLE_TIMEOUT)
+        try:
+            while not stop.is_set():
+                frame = read_frame(conn)
+                if frame is None:
+                    break
+                kind, payload = frame
+                if kind == PING:
+                    send_frame(conn, PONG)
+                elif kind == COMMAND:
+                    reply = run(payload.decode("utf-8").strip())
+                    send_frame(conn, *reply)
+                elif kind == BATCH:
+                    for line in payload.decode("utf-8").split("\n"):
+                        if not line.strip():
+                            continue
+                        reply = run(line.strip())
+                        send_frame(conn, *reply)
+                        if reply[0] == STOPPED:
+                            break
+                    send_frame(conn, DONE)
+                else:
+                    send_frame(conn, ERROR, f"Unknown message kind: {kind}")
+        except (OSError, ValueError) as e:
+            print("Connection error:", addr, e)
+        finally:
+            conn.close()
+            print("Client disconnected:", addr)
+
+    s = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
+    s.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
+    s.bind((host, port))
+    s.listen(16)
+    s.settimeout(1.0)  # wake up regularly to notice StopServer
+    print(banner or f"Server running on {host}:{port}")
+    try:
+        while not stop.is_set():
+            try:
+                conn, addr = s.accept()
+            except socket.timeout:
+                continue
+            conn.settimeout(None)
+            threading.Thread(target=session, args=(conn, addr), daemon=True).start()
+    finally:
+        s.close()
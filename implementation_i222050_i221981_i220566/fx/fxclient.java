@@ -1,18 +1,59 @@
 import javafx.application.Application;
+import javafx.collections.ObservableListBase;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
 
-import java.io.*;
-import java.net.Socket;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class JavaFXClient extends Application {
-    private TextArea command, result;
+    private TextArea command;
+    private ListView<String> result;
     private Button sendButton;
     private ImageView imageView;
+    private final VizConsole console = VizConsole.openDefault();
+
+    // The console's ring as the ListView's items; the ListView only builds
+    // cells for the rows on screen
+    private static final class ConsoleLines extends ObservableListBase<String> implements VizConsole.Listener {
+        private final VizConsole console;
+
+        ConsoleLines(VizConsole console) {
+            this.console = console;
+            console.addListener(this);
+        }
+
+        @Override
+        public String get(int index) {
+            return console.get(index);
+        }
+
+        @Override
+        public int size() {
+            return console.size();
+        }
+
+        @Override
+        public void linesChanged(int removedFromTop, int addedAtEnd) {
+            beginChange();
+            if (removedFromTop > 0) {
+                // The lines are gone from the ring; listeners only need the count
+                nextRemove(0, Collections.<String>nCopies(removedFromTop, null));
+            }
+            if (addedAtEnd > 0) {
+                nextAdd(console.size() - addedAtEnd, console.size());
+            }
+            endChange();
+        }
+    }
 
     @Override
     public void start(Stage primaryStage) {
@@ -21,8 +62,21 @@ public class JavaFXClient extends Application {
         // Components
         command = new TextArea();
         command.setPrefRowCount(5);
-        result = new TextArea();
-        result.setEditable(false);
+        result = new ListView<>(new ConsoleLines(console));
+        result.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        result.setFixedCellSize(20);
+        result.setStyle("-fx-font-family: 'Monospace';");
+        // Follow new output unless a line is selected (Esc to resume)
+        console.addListener((removed, added) -> {
+            if (added > 0 && result.getSelectionModel().isEmpty()) {
+                result.scrollTo(console.size() - 1);
+            }
+        });
+        result.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ESCAPE) {
+                result.getSelectionModel().clearSelection();
+            }
+        });
         sendButton = new Button("Send");
         imageView = new ImageView();
         imageView.setPreserveRatio(true);
@@ -34,6 +88,7 @@ public class JavaFXClient extends Application {
             command,
             new Label("Results:"),
             result,
+            createSearchBar(),
             sendButton,
             imageView
         );
@@ -41,65 +96,98 @@ public class JavaFXClient extends Application {
         // Button action
         sendButton.setOnAction(e -> sendCommands());
 
+        VizConnectionPool.shared().warmUp();
+
         primaryStage.setScene(new Scene(root, 800, 600));
+        primaryStage.setOnHidden(e -> console.close());
         primaryStage.show();
     }
 
-    private void sendCommands() {
-        String sendData = command.getText().trim();
-        command.setText("");
-        String[] codeLines = sendData.split("\n");
-        String output = result.getText();
-
-        for (String xcode : codeLines) {
-            if (xcode.trim().isEmpty()) continue;
-            output = processCommand(xcode.trim(), output);
-
-            if (xcode.equals("chart")) {
-                try {
-                    InputStream stream = new FileInputStream("plot.jpg"); // Python server must save this file
-                    Image image = new Image(stream);
-                    imageView.setImage(image);
-                } catch (Exception e) {
-                    output += "Error loading image: " + e.toString() + "\n";
-                }
+    // Enter finds the previous match, Shift+Enter the next; History lists
+    // matches that were already moved to disk
+    private HBox createSearchBar() {
+        TextField query = new TextField();
+        query.setPromptText("Search results");
+        Label status = new Label(console.describe());
+        Button history = new Button("History");
+
+        query.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+            if (e.getCode() != KeyCode.ENTER) {
+                return;
             }
-        }
+            int found = console.find(query.getText(), result.getSelectionModel().getSelectedIndex(), !e.isShiftDown());
+            if (found < 0) {
+                status.setText("No match · " + console.describe());
+            } else {
+                result.getSelectionModel().clearAndSelect(found);
+                result.scrollTo(found);
+                status.setText(console.describe());
+            }
+            e.consume();
+        });
+        history.setOnAction(e -> {
+            try {
+                ListView<String> matches = new ListView<>();
+                matches.getItems().setAll(console.searchHistory(query.getText(), 2000));
+                Alert dialog = new Alert(Alert.AlertType.INFORMATION);
+                dialog.setTitle("History");
+                dialog.setHeaderText(matches.getItems().size() + " older lines matching \"" + query.getText() + "\"");
+                dialog.getDialogPane().setContent(matches);
+                dialog.show();
+            } catch (Exception ex) {
+                status.setText("History search failed: " + ex.getMessage());
+            }
+        });
+        console.addListener((removed, added) -> status.setText(console.describe()));
 
-        result.setText(output);
+        HBox bar = new HBox(5, new Label("Search:"), query, history, status);
+        HBox.setHgrow(query, Priority.ALWAYS);
+        return bar;
     }
 
-    private String processCommand(String xcode, String output) {
-        try (Socket socket = new Socket("localhost", 1234)) {
-            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-            DataInputStream in = new DataInputStream(socket.getInputStream());
-
-            output = ">>> " + xcode + "\n" + output;
+    private void sendCommands() {
+        String sendData = command.getText().trim();
+        command.setText("");
 
-            // Send command to Python server
-            out.write((xcode + "\n").getBytes("UTF-8"));
-            out.flush();
+        List<String> codeLines = new ArrayList<>();
+        for (String xcode : sendData.split("\n")) {
+            if (!xcode.trim().isEmpty()) codeLines.add(xcode.trim());
+        }
 
-            // Handle exit command
-            if (xcode.equals("exit()") || xcode.equals("quit()")) {
-                return "Disconnected from Python server.\n" + output;
+        // One round trip for the whole script on a pooled connection
+        VizConnectionPool pool = VizConnectionPool.shared();
+        try {
+            List<VizReply> replies = pool.executeBatch(codeLines);
+            for (int i = 0; i < replies.size(); i++) {
+                processReply(codeLines.get(i), replies.get(i));
             }
-
-            // Handle chart separately (Python server saves plot.jpg)
-            if (!xcode.equals("chart")) {
-                byte[] buffer = new byte[4096];
-                int bytesRead = in.read(buffer);
-                if (bytesRead > 0) {
-                    String response = new String(buffer, 0, bytesRead, "UTF-8");
-                    output += response + "\n";
-                }
+            if (codeLines.contains("exit()") || codeLines.contains("quit()")) {
+                pool.close();
             }
-
         } catch (Exception e) {
-            output += "ERROR: " + e.getMessage() + "\n";
+            console.append("ERROR: " + e.getMessage() + "\n");
+        }
+    }
+
+    private void processReply(String xcode, VizReply reply) {
+        console.append(">>> " + xcode + "\n");
+
+        // Handle exit command
+        if (xcode.equals("exit()") || xcode.equals("quit()")) {
+            console.append("Disconnected from Python server.\n");
+            return;
         }
 
-        return output;
+        // Charts come back as image bytes on the same connection
+        if (reply.isImage()) {
+            try {
+                imageView.setImage(new Image(new ByteArrayInputStream(reply.bytes())));
+            } catch (Exception e) {
+                console.append("Error loading image: " + e.toString() + "\n");
+            }
+        } else {
+            console.append(reply.text() + "\n");
+        }
     }
 
     public static void main(String[] args) {
@@ -1,61 +1,49 @@
-import socket
+import socket, sys, os
 import matplotlib.pyplot as plt
 import pandas as pd
 import numpy as np
 
-# Server setup
-s = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
-s.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
-s.bind(("127.0.0.1", 1234))
-s.listen(1)
-print("SERVER IS ALIVE ON 127.0.0.1:1234 ")
+sys.path.insert(0, os.path.join(os.path.dirname(os.path.abspath(__file__)), "..", "common"))
+from viz_transport import serve, TEXT, IMAGE, ERROR
 
 # Namespace for evaluating commands
 ns = {'np': np, 'pd': pd, 'plt': plt, 'print': print}
 
-while True:
+
+def handle(cmd):
+    print("→", cmd)
+
+    # Exit command (the client drops its connections afterwards)
+    if cmd in ("exit()", "quit()"):
+        return TEXT, "Bye"
+
+    # Chart command
+    if cmd == "chart":
+        plt.savefig("plot.jpg", dpi=200, bbox_inches='tight')
+        plt.close('all')
+        with open("plot.jpg", "rb") as f:
+            return IMAGE, f.read()
+
+    # Load CSV
+    if cmd.endswith(".csv"):
+        try:
+            df = pd.read_csv(cmd)
+            ns['df'] = df
+            return TEXT, f"df loaded: {len(df)} rows"
+        except Exception as e:
+            return ERROR, str(e)
+
+    # Evaluate command
     try:
-        c, a = s.accept()
-        cmd = c.recv(4096).decode("utf-8").strip()
-        print("→", cmd)
-
-        # Exit command
-        if cmd in ("exit()", "quit()"):
-            c.send(b"Bye")
-            c.close()
-            continue
-
-        # Chart command
-        if cmd == "chart":
-            plt.savefig("plot.jpg", dpi=200, bbox_inches='tight')
-            plt.close('all')
-            with open("plot.jpg", "rb") as f:
-                c.sendall(f.read())
-            c.close()
-            continue
-
-        # Load CSV
-        if cmd.endswith(".csv"):
-            try:
-                df = pd.read_csv(cmd)
-                ns['df'] = df
-                c.send(f"df loaded: {len(df)} rows".encode())
-            except Exception as e:
-                c.send(str(e).encode())
-            c.close()
-            continue
-
-        # Evaluate command
+        r = eval(cmd, {"__builtins__": {}}, ns)
+        return TEXT, str(r)
+    except:
         try:
-            r = eval(cmd, {"__builtins__": {}}, ns)
-            c.send(str(r).encode())
-        except:
-            try:
-                exec(cmd, {"__builtins__": {}}, ns)
-                c.send(b"OK")
-            except Exception as e:
-                c.send(f"ERROR: {e}".encode())
-            c.close()
-    except Exception as e:
-        print("Server error:", e)
+            exec(cmd, {"__builtins__": {}}, ns)
+            return TEXT, "OK"
+        except Exception as e:
+            return ERROR, f"ERROR: {e}"
 
+
+# Server setup
+serve("127.0.0.1", 1234, handle, "SERVER IS ALIVE ON 127.0.0.1:1234 ")
@@ -1,21 +1,68 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.io.InputStream;
-import java.net.Socket;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
 
 public class JavaSwingClient extends JFrame {
-    private JTextArea command, result;
+    private JTextArea command;
+    private JList<String> result;
     private JButton sendButton;
     private JLabel imageShow;
+    private final VizConsole console = VizConsole.openDefault();
+
+    // JList model reading straight from the console's ring; JList only asks
+    // for the rows it paints, so a long session costs no more than a short one
+    private static final class ConsoleModel extends AbstractListModel<String> implements VizConsole.Listener {
+        private static final long serialVersionUID = 1L;
+
+        private final VizConsole console;
+
+        ConsoleModel(VizConsole console) {
+            this.console = console;
+            console.addListener(this);
+        }
+
+        @Override
+        public int getSize() {
+            return console.size();
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return console.get(index);
+        }
+
+        @Override
+        public void linesChanged(int removedFromTop, int addedAtEnd) {
+            if (removedFromTop > 0) {
+                fireIntervalRemoved(this, 0, removedFromTop - 1);
+            }
+            if (addedAtEnd > 0) {
+                fireIntervalAdded(this, console.size() - addedAtEnd, console.size() - 1);
+            }
+        }
+    }
 
     public JavaSwingClient() {
         setTitle("Python-Java Visualization Client");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         command = new JTextArea(8, 50); // taller
-        result = new JTextArea(15, 50);
-        result.setEditable(false);
+        result = new JList<>(new ConsoleModel(console));
+        result.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        // Fixed row size, so rows are never measured one by one
+        result.setPrototypeCellValue("x".repeat(80));
+        result.setVisibleRowCount(15);
+        // Follow new output unless a line is selected (Esc to resume)
+        console.addListener((removed, added) -> {
+            if (added > 0 && result.isSelectionEmpty()) {
+                result.ensureIndexIsVisible(console.size() - 1);
+            }
+        });
+        result.registerKeyboardAction(e -> result.clearSelection(),
+            KeyStroke.getKeyStroke("ESCAPE"), JComponent.WHEN_FOCUSED);
         sendButton = new JButton("Send");
         imageShow = new JLabel();
         imageShow.setHorizontalAlignment(JLabel.CENTER);
@@ -29,6 +76,7 @@ public class JavaSwingClient extends JFrame {
         leftPanel.add(Box.createVerticalStrut(10)); // spacing
         leftPanel.add(new JLabel("Results:"));
         leftPanel.add(new JScrollPane(result));
+        leftPanel.add(createSearchBar());
         leftPanel.add(Box.createVerticalStrut(10));
         leftPanel.add(imageShow); // graph under the results
 
@@ -39,61 +87,85 @@ public class JavaSwingClient extends JFrame {
         add(rightPanel, BorderLayout.EAST);
 
         sendButton.addActionListener(this::sendCommands);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                console.close();
+            }
+        });
+
+        VizConnectionPool.shared().warmUp();
 
         pack();
         setVisible(true);
     }
 
+    // Search box under the results: Enter finds the previous match,
+    // Shift+Enter the next, History lists matches already moved to disk
+    private JPanel createSearchBar() {
+        JTextField query = new JTextField(30);
+        JLabel status = new JLabel(console.describe());
+        JButton history = new JButton("History");
+
+        query.addActionListener(e -> {
+            boolean older = (e.getModifiers() & ActionEvent.SHIFT_MASK) == 0;
+            int found = console.find(query.getText(), result.getSelectedIndex(), older);
+            if (found < 0) {
+                status.setText("No match · " + console.describe());
+            } else {
+                result.setSelectedIndex(found);
+                result.ensureIndexIsVisible(found);
+                status.setText(console.describe());
+            }
+        });
+        history.addActionListener(e -> {
+            try {
+                List<String> matches = console.searchHistory(query.getText(), 2000);
+                JList<String> list = new JList<>(matches.toArray(new String[0]));
+                list.setFont(result.getFont());
+                JScrollPane scroll = new JScrollPane(list);
+                scroll.setPreferredSize(new Dimension(700, 350));
+                JOptionPane.showMessageDialog(this, scroll,
+                    matches.size() + " older lines matching \"" + query.getText() + "\"", JOptionPane.PLAIN_MESSAGE);
+            } catch (Exception ex) {
+                status.setText("History search failed: " + ex.getMessage());
+            }
+        });
+
+        JPanel bar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        bar.add(new JLabel("Search:"));
+        bar.add(query);
+        bar.add(history);
+        bar.add(status);
+        console.addListener((removed, added) -> status.setText(console.describe()));
+        return bar;
+    }
+
     private void sendCommands(ActionEvent e) {
         String sendData = command.getText().trim();
         command.setText("");
-        String output = result.getText();
-
-        try (Socket s = new Socket("localhost", 1234)) {
-            s.getOutputStream().write((sendData + "\n").getBytes());
-            s.getOutputStream().flush();
-
-            InputStream in = s.getInputStream();
-            in.mark(4);
-            byte[] lenBytes = new byte[4];
-            int n = in.read(lenBytes);
-
-            if (n == 4) { // image
-                int dataLen = ((lenBytes[0] & 0xFF) << 24) |
-                              ((lenBytes[1] & 0xFF) << 16) |
-                              ((lenBytes[2] & 0xFF) << 8) |
-                              (lenBytes[3] & 0xFF);
-
-                byte[] imageBytes = new byte[dataLen];
-                int offset = 0;
-                while (offset < dataLen) {
-                    int read = in.read(imageBytes, offset, dataLen - offset);
-                    if (read == -1) break;
-                    offset += read;
-                }
 
-                ImageIcon icon = new ImageIcon(imageBytes);
+        // The whole script is one command on a pooled, already open connection
+        VizConnectionPool pool = VizConnectionPool.shared();
+        try {
+            VizReply reply = pool.execute(sendData);
+
+            if (reply.isImage()) {
+                ImageIcon icon = new ImageIcon(reply.bytes());
                 imageShow.setIcon(icon);
                 imageShow.revalidate();
                 imageShow.repaint();
-                output += "Plot displayed\n";
-
-            } else { // text
-                in.reset();
-                byte[] buf = new byte[24576];
-                int readLen = in.read(buf);
-                if (readLen > 0) {
-                    String text = new String(buf, 0, readLen);
-                    text = text.replace("\nEND_OF_TEXT\n", "");
-                    output += text + "\n";
+                console.append("Plot displayed\n");
+            } else {
+                console.append(reply.text() + "\n");
+                if (reply.kind() == VizReply.Kind.STOPPED) {
+                    pool.close();
                 }
             }
 
-            result.setText(output);
-
         } catch (Exception ex) {
             ex.printStackTrace();
-            result.setText(output + "\nError: " + ex);
+            console.append("Error: " + ex + "\n");
         }
     }
 
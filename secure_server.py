@@ -3,7 +3,10 @@ import ssl
 import json
 import threading
 import gzip
+import zlib
 import base64
+import csv
+import select
 from datetime import datetime
 import pandas as pd
 import numpy as np
@@ -11,8 +14,130 @@ import sys
 import os
 import hashlib
 import secrets
+import struct
 import time
-from typing import Dict, Any, Optional
+from collections import OrderedDict, deque
+from typing import Dict, Any, List, Optional, Tuple, Union
+
+# Framed protocol header: payload length, message type, payload codec, request id.
+# Must stay in sync with FrameCodec.java.
+FRAME_HEADER = struct.Struct('>IBBI')
+FRAME_MAX_PAYLOAD = 256 * 1024 * 1024
+FRAME_TYPE_COMMAND = 1
+FRAME_TYPE_RESPONSE = 2
+FRAME_TYPE_DATASET = 3
+FRAME_TYPE_TRACE = 4  # client: trace id before a command; server: stage timings before the reply
+FRAME_CODEC_NONE = 0
+FRAME_CODEC_GZIP = 1
+FRAME_CODEC_DEFLATE = 2
+
+# Negotiable payload codecs: name -> (codec byte, compress, decompress).
+# The client offers names in preference order at login; payloads smaller than
+# CODEC_MIN_BYTES are always sent uncompressed. Must stay in sync with
+# PayloadCodec.java.
+PAYLOAD_CODECS = {
+    'none': (FRAME_CODEC_NONE, lambda data: data, lambda data: data),
+    'gzip': (FRAME_CODEC_GZIP, gzip.compress, gzip.decompress),
+    'deflate': (FRAME_CODEC_DEFLATE, lambda data: zlib.compress(data, 1), zlib.decompress),
+}
+PAYLOAD_CODECS_BY_ID = {codec_id: decompress for codec_id, _, decompress in PAYLOAD_CODECS.values()}
+CODEC_MIN_BYTES = int(os.environ.get('VIZ_CODEC_MIN_BYTES', '512'))
+# Log every compressed reply (VIZ_CODEC_LOG=1); off by default since live
+# mode compresses a push per subscriber every interval
+LOG_CODEC = os.environ.get('VIZ_CODEC_LOG') == '1'
+
+# Binary column layout for get_dataset; must stay in sync with ColumnarDataset.java
+DATASET_MAGIC = 0x56434F4C  # "VCOL"
+DATASET_VERSION = 2
+
+# Plot types that honour the level-of-detail keys max_points / x_range
+LOD_PLOT_TYPES = ('line_chart', 'scatter_plot', 'area_chart')
+
+# Figures sent with format=figure, kept so a later request naming one as its
+# "base" gets only the changes (FIGURE_DELTA:). Ids are the first 16 hex
+# digits of the SHA-1 of the figure JSON; must stay in sync with PlotView.java.
+FIGURE_STORE_SIZE = int(os.environ.get('VIZ_FIGURE_STORE_SIZE', '64'))
+
+# Live mode: "subscribe:" tails a growing CSV and pushes the new rows as
+# STREAM_ROWS: replies with request id 0 (never used by a client request),
+# at most every interval_ms and STREAM_MAX_BATCH_ROWS rows at a time
+STREAM_INTERVAL_MS_RANGE = (50, 60000)
+STREAM_MAX_BATCH_ROWS = int(os.environ.get('VIZ_STREAM_MAX_BATCH_ROWS', '5000'))
+STREAM_REQUEST_ID = 0
+# Pushes waiting for the connection thread; while this many are queued the
+# subscription skips its turn and the rows wait in the file
+STREAM_MAX_QUEUED_FRAMES = 8
+
+
+class CsvTail:
+    """Follows a CSV file that keeps growing, returning the complete rows
+    appended since the last read. A row still being written (no newline yet)
+    waits for the next read; a file that shrinks is read again from the top."""
+    
+    def __init__(self, path: str, skip_rows: Optional[int]):
+        """Starts after skip_rows data rows, or at the end of the file when
+        skip_rows is None"""
+        self.path = path
+        self.rows_read = 0
+        with open(path, 'rb') as f:
+            self.columns = [name.strip() for name in next(csv.reader([f.readline().decode('utf-8')]))]
+            self.data_start = f.tell()
+            if skip_rows is None:
+                self.offset = self._end_of_last_row(f)
+                return
+            skipped = 0
+            while skipped < skip_rows:
+                line = f.readline()
+                if not line.endswith(b'\n'):
+                    # Fewer rows than loaded (or a partial one): start before it
+                    f.seek(-len(line), os.SEEK_CUR)
+                    break
+                if line.strip():
+                    skipped += 1
+            self.offset = f.tell()
+    
+    def _end_of_last_row(self, f) -> int:
+        """Offset just past the last newline, found by reading backwards from
+        the end so following a large file does not read all of it"""
+        end = f.seek(0, os.SEEK_END)
+        position = end
+        while position > self.data_start:
+            start = max(self.data_start, position - 65536)
+            f.seek(start)
+            newline = f.read(position - start).rfind(b'\n')
+            if newline >= 0:
+                return start + newline + 1
+            position = start
+        return self.data_start
+    
+    def read_rows(self, limit: int) -> List[List[str]]:
+        if os.path.getsize(self.path) < self.offset:
+            self.offset = self.data_start
+        rows = []
+        with open(self.path, 'rb') as f:
+            f.seek(self.offset)
+            while len(rows) < limit:
+                line = f.readline()
+                if not line.endswith(b'\n'):
+                    break
+                self.offset += len(line)
+                if line.strip():
+                    rows.append(line.decode('utf-8', 'replace'))
+        parsed = list(csv.reader(rows))
+        self.rows_read += len(parsed)
+        return parsed
+    
+    def column_values(self, rows: List[List[str]], column: str) -> list:
+        index = self.columns.index(column)
+        values = []
+        for row in rows:
+            value = row[index].strip() if index < len(row) else ''
+            try:
+                values.append(float(value) if value else None)
+            except ValueError:
+                values.append(value)
+        return values
+
 
 class SecureVisualizationServer:
     """
@@ -25,8 +150,12 @@ class SecureVisualizationServer:
         self.clients = []
         self.data_cache = {}
         self.plot_cache = {}
+        self.figure_store = OrderedDict()
+        self.figure_store_lock = threading.Lock()
         self.running = True
         self.authenticated_clients = set()
+        # Framed connections: codec, outbox of pushes and live subscription
+        self.connections: Dict[Any, Dict] = {}
         
         # Security configuration
         self.certfile = 'server.crt'
@@ -42,6 +171,9 @@ class SecureVisualizationServer:
         # Session management
         self.sessions: Dict[str, Dict] = {}
         
+        # Stage timestamps of the traced command this thread is processing
+        self._trace_state = threading.local()
+        
         # Generate SSL certificate if needed
         self._setup_ssl()
     
@@ -79,6 +211,87 @@ class SecureVisualizationServer:
             print(f"Decompression error: {e}")
             return compressed_data
     
+    def _recv_exact(self, client_socket, size: int, idle_ok: bool = False) -> Optional[bytes]:
+        """Read exactly size bytes; None on EOF before the first byte"""
+        chunks = []
+        remaining = size
+        while remaining > 0:
+            try:
+                chunk = client_socket.recv(min(remaining, 1024 * 1024))
+            except socket.timeout:
+                # Only an idle wait between frames may time out; mid-frame we keep waiting
+                if idle_ok and remaining == size:
+                    raise
+                continue
+            if not chunk:
+                if remaining == size:
+                    return None
+                raise ConnectionError(f"Connection closed mid-frame ({size - remaining}/{size} bytes)")
+            chunks.append(chunk)
+            remaining -= len(chunk)
+        return b''.join(chunks)
+    
+    def _read_frame(self, client_socket) -> Optional[Tuple[int, int, int, bytes]]:
+        """Read one frame and return (type, codec, request_id, payload), None on EOF"""
+        header = self._recv_exact(client_socket, FRAME_HEADER.size, idle_ok=True)
+        if header is None:
+            return None
+        length, msg_type, codec, request_id = FRAME_HEADER.unpack(header)
+        if length > FRAME_MAX_PAYLOAD:
+            raise ValueError(f"Frame too large: {length} bytes")
+        payload = self._recv_exact(client_socket, length) if length else b''
+        if payload is None:
+            raise ConnectionError("Connection closed mid-frame")
+        return msg_type, codec, request_id, payload
+    
+    def _encode_frame(self, msg_type: int, request_id: int, data: Union[str, bytes],
+                      codec: str = 'gzip') -> bytes:
+        """Encode a text or binary message as one frame in the session's codec (no Base64)"""
+        raw = data.encode('utf-8') if isinstance(data, str) else data
+        if len(raw) < CODEC_MIN_BYTES:
+            codec = 'none'
+        codec_id, compress, _ = PAYLOAD_CODECS[codec]
+        started = time.perf_counter()
+        payload = compress(raw)
+        elapsed_ms = (time.perf_counter() - started) * 1000
+        if codec != 'none' and LOG_CODEC:
+            print(f"🗜️ Reply #{request_id}: {len(raw):,} → {len(payload):,} bytes "
+                  f"({codec}, {len(raw) / max(len(payload), 1):.1f}x) in {elapsed_ms:.1f} ms")
+        return FRAME_HEADER.pack(len(payload), msg_type, codec_id, request_id) + payload
+    
+    def _decode_frame_payload(self, codec: int, payload: bytes) -> str:
+        """Decode a frame payload according to its codec byte"""
+        decompress = PAYLOAD_CODECS_BY_ID.get(codec)
+        if decompress is None:
+            raise ValueError(f"Unsupported payload codec: {codec}")
+        return decompress(payload).decode('utf-8')
+    
+    def _trace_mark(self, stage: str):
+        """Timestamp a stage of the command being traced on this thread, if any"""
+        stages = getattr(self._trace_state, 'stages', None)
+        if stages is not None:
+            stages.append((stage, time.perf_counter()))
+    
+    def _trace_frame(self, request_id: int, trace_id: str) -> bytes:
+        """TRACE frame with this thread's stages in ms since the command arrived (RequestTrace.java)"""
+        stages = self._trace_state.stages
+        self._trace_state.stages = None
+        started = stages[0][1]
+        timings = [[stage, round((at - started) * 1000, 3)] for stage, at in stages[1:]]
+        print(f"⏱️ Trace {trace_id} #{request_id}: " +
+              " · ".join(f"{stage} {ms:.1f} ms" for stage, ms in timings))
+        return self._encode_frame(FRAME_TYPE_TRACE, request_id,
+                                  json.dumps({'trace': trace_id, 'stages': timings}), 'none')
+    
+    @staticmethod
+    def _choose_codec(offered) -> str:
+        """First codec the client offered that we support; GZIP for clients that offer none"""
+        if isinstance(offered, list):
+            for name in offered:
+                if name in PAYLOAD_CODECS:
+                    return name
+        return 'gzip'
+    
     def _generate_session_token(self) -> str:
         """Generate secure session token"""
         return secrets.token_urlsafe(32)
@@ -109,6 +322,7 @@ class SecureVisualizationServer:
             
             cache_key = f"{plot_type}_{hash(str(kwargs))}_{hash(str(data.shape))}"
             if cache_key in self.plot_cache:
+                self._trace_mark('plot_cache_hit')
                 return self.plot_cache[cache_key]
             
             fig = None
@@ -125,6 +339,13 @@ class SecureVisualizationServer:
                 else:
                     clean_kwargs[key] = value
             
+            x_range = clean_kwargs.get('x_range')
+            if plot_type in LOD_PLOT_TYPES and clean_kwargs.get('max_points'):
+                cleaned_data = self._downsample(cleaned_data, clean_kwargs.get('x'), clean_kwargs.get('y'),
+                                                int(clean_kwargs['max_points']), x_range,
+                                                scatter=plot_type == 'scatter_plot')
+            self._trace_mark('data_prepared')
+            
             if plot_type == "line_chart":
                 fig = px.line(cleaned_data, x=clean_kwargs.get('x'), y=clean_kwargs.get('y'), 
                              title=clean_kwargs.get('title', 'Line Chart'))
@@ -150,6 +371,12 @@ class SecureVisualizationServer:
                               color_continuous_scale='RdBu_r',
                               aspect="auto")
                 
+            elif plot_type == "density_heatmap":
+                nbins = clean_kwargs.get('nbins', 40)
+                fig = px.density_heatmap(cleaned_data, x=clean_kwargs.get('x'), y=clean_kwargs.get('y'),
+                                         nbinsx=nbins, nbinsy=nbins,
+                                         title=clean_kwargs.get('title', 'Density Heatmap'))
+                
             elif plot_type == "3d_scatter":
                 if len(cleaned_data.columns) >= 3:
                     fig = px.scatter_3d(cleaned_data, 
@@ -203,16 +430,30 @@ class SecureVisualizationServer:
                     margin=dict(l=50, r=50, t=50, b=50),
                     height=600
                 )
+                if plot_type in LOD_PLOT_TYPES and x_range:
+                    # Keep the zoomed view the client asked to refine
+                    fig.update_xaxes(range=x_range)
+                self._trace_mark('figure_built')
                 
-                html_content = fig.to_html(
-                    include_plotlyjs='cdn', 
-                    config={
-                        'responsive': True,
-                        'displayModeBar': True,
-                        'scrollZoom': True,
-                        'displaylogo': False
-                    }
-                )
+                output_format = clean_kwargs.get('format')
+                if output_format == 'png':
+                    # Static image for headless batch runs (needs kaleido)
+                    png = fig.to_image(format='png', width=int(clean_kwargs.get('width', 1000)), height=600)
+                    html_content = "PNG:" + base64.b64encode(png).decode('ascii')
+                elif output_format == 'figure':
+                    # Just data and layout; the client keeps plotly.js loaded and calls Plotly.react
+                    html_content = "FIGURE:" + fig.to_json()
+                else:
+                    html_content = fig.to_html(
+                        include_plotlyjs='cdn', 
+                        config={
+                            'responsive': True,
+                            'displayModeBar': True,
+                            'scrollZoom': True,
+                            'displaylogo': False
+                        }
+                    )
+                self._trace_mark({'png': 'to_image', 'figure': 'to_json'}.get(output_format, 'to_html'))
                 
                 # Cache the plot
                 self.plot_cache[cache_key] = html_content
@@ -225,6 +466,109 @@ class SecureVisualizationServer:
         except Exception as e:
             return f"ERROR creating plot: {str(e)}"
     
+    def _downsample(self, df: pd.DataFrame, x: str, y: str, max_points: int,
+                    x_range=None, scatter: bool = False) -> pd.DataFrame:
+        """Level-of-detail reduction, same rules as the client's Decimator: keep rows
+        inside x_range, then cut to max_points with LTTB (lines, areas) or the
+        min/max y of each bucket (scatter)"""
+        if x not in df.columns or y not in df.columns or max_points <= 0 \
+                or not pd.api.types.is_numeric_dtype(df[y]):
+            return df
+        data = df[df[x].notna() & df[y].notna()]
+        numeric_x = pd.api.types.is_numeric_dtype(data[x])
+        if x_range and numeric_x:
+            data = data[(data[x] >= float(x_range[0])) & (data[x] <= float(x_range[1]))]
+        n = len(data)
+        if n <= max_points:
+            return data
+        
+        ys = data[y].to_numpy(dtype=float)
+        if scatter:
+            buckets = max(max_points // 2, 1)
+            edges = (np.arange(buckets + 1) * n) // buckets
+            picks = []
+            for start, end in zip(edges[:-1], edges[1:]):
+                if start < end:
+                    segment = ys[start:end]
+                    picks.extend(sorted({start + int(segment.argmin()), start + int(segment.argmax())}))
+            return data.iloc[picks]
+        
+        xs = data[x].to_numpy(dtype=float) if numeric_x else np.arange(n, dtype=float)
+        return data.iloc[self._lttb_indices(xs, ys, max_points)]
+    
+    @staticmethod
+    def _lttb_indices(xs, ys, threshold: int) -> List[int]:
+        """Largest-Triangle-Three-Buckets: positions of the points to keep"""
+        n = len(xs)
+        if threshold >= n or threshold < 3:
+            return list(range(n))
+        every = (n - 2) / (threshold - 2)
+        picks = [0]
+        a = 0
+        for bucket in range(threshold - 2):
+            avg_start = int((bucket + 1) * every) + 1
+            avg_end = min(int((bucket + 2) * every) + 1, n)
+            avg_x = xs[avg_start:avg_end].mean()
+            avg_y = ys[avg_start:avg_end].mean()
+            start = int(bucket * every) + 1
+            end = int((bucket + 1) * every) + 1
+            areas = np.abs((xs[a] - avg_x) * (ys[start:end] - ys[a]) - (xs[a] - xs[start:end]) * (avg_y - ys[a]))
+            a = start + int(areas.argmax())
+            picks.append(a)
+        picks.append(n - 1)
+        return picks
+    
+    def _figure_delta(self, base_id, figure_json: str) -> Optional[str]:
+        """Remembers figure_json and returns the changes from the figure base_id as
+        {"base", "id", "data": [{"index", "set"}], "layout"}, where "set" and
+        "layout" map dotted attribute paths to new values (null = removed).
+        None when a full figure should be sent: unknown base, different traces,
+        or a delta no smaller than the figure"""
+        figure_id = hashlib.sha1(figure_json.encode('utf-8')).hexdigest()[:16]
+        figure = json.loads(figure_json)
+        with self.figure_store_lock:
+            base = self.figure_store.get(base_id) if base_id else None
+            self.figure_store[figure_id] = figure
+            self.figure_store.move_to_end(figure_id)
+            while len(self.figure_store) > FIGURE_STORE_SIZE:
+                self.figure_store.popitem(last=False)
+        if base is None:
+            return None
+        
+        old_traces = base.get('data', [])
+        new_traces = figure.get('data', [])
+        if len(old_traces) != len(new_traces) or any(
+                old.get('type') != new.get('type') for old, new in zip(old_traces, new_traces)):
+            return None
+        data = []
+        for index, (old, new) in enumerate(zip(old_traces, new_traces)):
+            changes = {}
+            self._diff_attributes(old, new, '', changes)
+            if changes:
+                data.append({'index': index, 'set': changes})
+        layout = {}
+        self._diff_attributes(base.get('layout', {}), figure.get('layout', {}), '', layout)
+        
+        delta = json.dumps({'base': base_id, 'id': figure_id, 'data': data, 'layout': layout})
+        self._trace_mark('delta')
+        return delta if len(delta) < len(figure_json) else None
+    
+    @classmethod
+    def _diff_attributes(cls, old: dict, new: dict, prefix: str, changes: dict):
+        """Collects path -> value for every attribute that differs, descending into
+        nested objects; lists and typed arrays ({"dtype", "bdata"}) count as one value"""
+        for key in old.keys() | new.keys():
+            path = prefix + key
+            old_value = old.get(key)
+            new_value = new.get(key)
+            if old_value == new_value:
+                continue
+            if isinstance(old_value, dict) and isinstance(new_value, dict) \
+                    and 'bdata' not in old_value and 'bdata' not in new_value:
+                cls._diff_attributes(old_value, new_value, path + '.', changes)
+            else:
+                changes[path] = new_value
+    
     def _handle_authentication(self, client_socket) -> Optional[str]:
         """Handle client authentication"""
         try:
@@ -233,6 +577,11 @@ class SecureVisualizationServer:
             
             username = auth_info.get('username', '')
             password = auth_info.get('password', '')
+            # Clients that don't ask for framing keep the Base64 stream protocol
+            protocol = 'framed' if auth_info.get('protocol') == 'framed' else 'legacy'
+            codec = self._choose_codec(auth_info.get('codecs'))
+            # Per-stage timings are only sent to framed clients that ask for them
+            trace = protocol == 'framed' and auth_info.get('trace') is True
             
             if self._authenticate_user(username, password):
                 session_token = self._generate_session_token()
@@ -240,12 +589,18 @@ class SecureVisualizationServer:
                     'username': username,
                     'created': time.time(),
                     'last_activity': time.time(),
-                    'client_socket': client_socket
+                    'client_socket': client_socket,
+                    'protocol': protocol,
+                    'codec': codec,
+                    'trace': trace
                 }
                 
                 auth_response = {
                     'status': 'success',
                     'token': session_token,
+                    'protocol': protocol,
+                    'codec': codec,
+                    'trace': trace,
                     'message': 'Authentication successful'
                 }
                 client_socket.send(json.dumps(auth_response).encode('utf-8'))
@@ -275,12 +630,24 @@ class SecureVisualizationServer:
             elif command.startswith("plot:"):
                 return self._handle_plot_command(command)
                 
+            elif command.startswith("subscribe:"):
+                return self._handle_subscribe(command, client_socket)
+                
+            elif command == "unsubscribe":
+                return self._stop_subscription(client_socket)
+                
             elif command == "get_columns":
                 return self._handle_get_columns()
                 
             elif command == "get_stats":
                 return self._handle_get_stats()
                 
+            elif command == "get_dataset":
+                return self._handle_get_dataset()
+                
+            elif command == "get_plotlyjs":
+                return self._handle_get_plotlyjs()
+                
             elif command == "clear_cache":
                 self.plot_cache.clear()
                 return "SUCCESS: Plot cache cleared"
@@ -301,21 +668,37 @@ class SecureVisualizationServer:
                     return f"ERROR: File '{command}' not found. Available CSV files: {available_files}"
                 
                 df = pd.read_csv(command)
+                self._trace_mark('read_csv')
                 # Clean column names by stripping whitespace
                 df.columns = [col.strip() for col in df.columns]
                 self.data_cache['current_df'] = df
-                return f"SUCCESS: DataFrame loaded with {len(df)} rows and {len(df.columns)} columns. Columns: {list(df.columns)}"
+                fingerprint = self._file_fingerprint(command)
+                self._trace_mark('fingerprinted')
+                self.data_cache['fingerprint'] = fingerprint
+                self.data_cache['source'] = command
+                return (f"SUCCESS: DataFrame loaded with {len(df)} rows and {len(df.columns)} columns. "
+                        f"Columns: {list(df.columns)} Fingerprint: {fingerprint}")
                 
             except Exception as e:
                 if attempt == max_retries - 1:
                     return f"ERROR loading CSV after {max_retries} attempts: {str(e)}"
                 time.sleep(0.1)  # Brief delay before retry
     
+    def _file_fingerprint(self, path: str) -> str:
+        """Content hash of a data file, used by clients to key persistent plot caches"""
+        digest = hashlib.sha256()
+        with open(path, 'rb') as f:
+            for chunk in iter(lambda: f.read(1024 * 1024), b''):
+                digest.update(chunk)
+        return digest.hexdigest()[:16]
+    
     def _handle_plot_command(self, command: str) -> str:
         """Handle plot generation with fallback options"""
         try:
             plot_config = json.loads(command[5:])
             plot_type = plot_config.get('type')
+            # Not part of the plot itself, so kept out of the plot cache key
+            base_figure = plot_config.pop('base', None)
             
             if 'current_df' not in self.data_cache:
                 return "ERROR: No data loaded. Please load a CSV file first."
@@ -333,7 +716,7 @@ class SecureVisualizationServer:
             
             # Validate columns exist
             required_columns = []
-            if plot_type in ['line_chart', 'bar_chart', 'scatter_plot']:
+            if plot_type in ['line_chart', 'bar_chart', 'scatter_plot', 'density_heatmap']:
                 required_columns = [clean_plot_config.get('x'), clean_plot_config.get('y')]
             elif plot_type in ['histogram', 'pie_chart']:
                 required_columns = [clean_plot_config.get('x')]
@@ -349,6 +732,12 @@ class SecureVisualizationServer:
             
             html_content = self._create_advanced_plot(plot_type, df, **clean_plot_config)
             
+            if html_content and html_content.startswith("PNG:"):
+                return f"PNG_PLOT:{html_content[4:]}"
+            if html_content and html_content.startswith("FIGURE:"):
+                figure_json = html_content[7:]
+                delta = self._figure_delta(base_figure, figure_json)
+                return f"FIGURE_DELTA:{delta}" if delta else f"FIGURE_PLOT:{figure_json}"
             if html_content and not html_content.startswith("ERROR"):
                 return f"HTML_PLOT:{html_content}"
             else:
@@ -356,6 +745,9 @@ class SecureVisualizationServer:
                 if plot_type in ['3d_scatter', 'surface_plot']:
                     fallback_type = 'scatter_plot'
                     html_content = self._create_advanced_plot(fallback_type, df, **clean_plot_config)
+                    if html_content.startswith("FIGURE:"):
+                        # Nothing may follow the JSON; the client names the fallback itself
+                        return f"FIGURE_PLOT_FALLBACK:{html_content[7:]}"
                     if not html_content.startswith("ERROR"):
                         return f"HTML_PLOT_FALLBACK:{html_content} (Fallback from {plot_type})"
                 
@@ -366,6 +758,86 @@ class SecureVisualizationServer:
         except Exception as e:
             return f"ERROR creating plot: {str(e)}"
     
+    def _handle_subscribe(self, command: str, client_socket) -> str:
+        """Start pushing rows appended to a CSV: subscribe:{"x", "y", "interval_ms",
+        "source"}. The source defaults to the loaded CSV, whose loaded rows are
+        skipped; any other file is followed from its current end. Replaces an
+        earlier subscription of the same connection."""
+        connection = self.connections.get(client_socket)
+        if connection is None:
+            return "ERROR: Live mode requires the framed protocol"
+        config = json.loads(command[len("subscribe:"):])
+        loaded = self.data_cache.get('source')
+        source = config.get('source') or loaded
+        if not source or not os.path.isfile(source):
+            return f"ERROR: Nothing to follow: {source or 'no CSV loaded'}"
+        if source == loaded and 'current_df' in self.data_cache:
+            skip_rows = len(self.data_cache['current_df'])
+        else:
+            skip_rows = None
+        tail = CsvTail(source, skip_rows)
+        x, y = (config.get(key, '').strip() for key in ('x', 'y'))
+        missing = [column for column in (x, y) if column not in tail.columns]
+        if missing:
+            return f"ERROR: Columns not found: {missing}. Available columns: {tail.columns}"
+        low, high = STREAM_INTERVAL_MS_RANGE
+        interval_ms = min(max(int(config.get('interval_ms', 500)), low), high)
+        
+        self._stop_subscription(client_socket)
+        stop = threading.Event()
+        thread = threading.Thread(target=self._stream_rows,
+                                  args=(client_socket, connection, tail, x, y, interval_ms / 1000.0, stop),
+                                  name=f"stream-{source}", daemon=True)
+        connection['subscription'] = stop
+        thread.start()
+        print(f"📡 Streaming {source} ({x}, {y}) every {interval_ms} ms")
+        return "SUBSCRIBED:" + json.dumps({'source': source, 'x': x, 'y': y, 'interval_ms': interval_ms})
+    
+    def _stop_subscription(self, client_socket) -> str:
+        connection = self.connections.get(client_socket)
+        stop = connection.pop('subscription', None) if connection else None
+        if stop is None:
+            return "SUCCESS: No live subscription"
+        stop.set()
+        return "SUCCESS: Live subscription stopped"
+    
+    def _stream_rows(self, client_socket, connection, tail: CsvTail, x: str, y: str,
+                     interval: float, stop: threading.Event):
+        """Subscription thread: one STREAM_ROWS push per interval with the rows
+        appended since the last one; a full batch is followed without waiting"""
+        wait = interval
+        while not stop.wait(wait):
+            if len(connection['outbox']) >= STREAM_MAX_QUEUED_FRAMES:
+                # The client is not keeping up; send the backlog as one batch later
+                wait = interval
+                continue
+            try:
+                rows = tail.read_rows(STREAM_MAX_BATCH_ROWS)
+            except (OSError, csv.Error) as e:
+                body = f"ERROR: Live stream of {tail.path} stopped: {e}"
+                stop.set()
+            else:
+                wait = 0 if len(rows) == STREAM_MAX_BATCH_ROWS else interval
+                if not rows:
+                    continue
+                body = "STREAM_ROWS:" + json.dumps({
+                    'x': tail.column_values(rows, x),
+                    'y': tail.column_values(rows, y),
+                    'rows': len(rows),
+                    'total': tail.rows_read
+                })
+            self._push(connection, self._encode_frame(FRAME_TYPE_RESPONSE, STREAM_REQUEST_ID, body,
+                                                      connection['codec']))
+    
+    def _push(self, connection: dict, frame: bytes):
+        """Queue a frame for the connection thread, which alone sends on the socket"""
+        connection['outbox'].append(frame)
+        try:
+            connection['wake'].send(b'\0')
+        except OSError:
+            # Wake-ups already pending (buffer full) or the connection is closing
+            pass
+    
     def _handle_get_columns(self) -> str:
         """Get available columns from loaded data"""
         if 'current_df' in self.data_cache:
@@ -395,6 +867,62 @@ class SecureVisualizationServer:
                 return f"ERROR generating stats: {str(e)}"
         return "ERROR: No data loaded"
     
+    def _handle_get_dataset(self) -> Union[str, bytes]:
+        """Ship the loaded DataFrame as typed binary columns for client-side rendering"""
+        if 'current_df' not in self.data_cache:
+            return "ERROR: No data loaded"
+        try:
+            return self._encode_dataset(self.data_cache['current_df'])
+        except Exception as e:
+            return f"ERROR encoding dataset: {str(e)}"
+    
+    def _encode_dataset(self, df: pd.DataFrame) -> bytes:
+        """Encode columns as big-endian int32/int64/float64 arrays or dictionary-encoded
+        strings, each preceded by an optional null bitmap (bit set = missing, LSB first)"""
+        parts = [struct.pack('>IBii', DATASET_MAGIC, DATASET_VERSION, len(df), len(df.columns))]
+        for col in df.columns:
+            name = str(col).strip().encode('utf-8')
+            series = df[col]
+            parts.append(struct.pack('>H', len(name)) + name)
+            nulls = series.isnull().to_numpy()
+            
+            if pd.api.types.is_bool_dtype(series) or pd.api.types.is_integer_dtype(series):
+                values = series.to_numpy(dtype='int64', na_value=0)
+                fits_int32 = len(values) == 0 or (values.min() >= -2**31 and values.max() < 2**31)
+                parts.append(b'I' if fits_int32 else b'L')
+                parts.append(self._null_bitmap(nulls))
+                parts.append(values.astype('>i4' if fits_int32 else '>i8').tobytes())
+            elif pd.api.types.is_numeric_dtype(series):
+                parts.append(b'D')
+                parts.append(self._null_bitmap(nulls))
+                parts.append(series.to_numpy(dtype='>f8', na_value=np.nan).tobytes())
+            else:
+                # Dates, categories and objects travel as strings; NaN gets code -1
+                codes, uniques = pd.factorize(series)
+                parts.append(b'S')
+                parts.append(self._null_bitmap(nulls))
+                parts.append(struct.pack('>i', len(uniques)))
+                for value in uniques:
+                    encoded = str(value).encode('utf-8')
+                    parts.append(struct.pack('>i', len(encoded)) + encoded)
+                parts.append(np.asarray(codes).astype('>i4').tobytes())
+        return b''.join(parts)
+    
+    @staticmethod
+    def _null_bitmap(nulls) -> bytes:
+        """Flags byte, followed by the packed bitmap when the column has nulls"""
+        if not nulls.any():
+            return b'\x00'
+        return b'\x01' + np.packbits(nulls, bitorder='little').tobytes()
+    
+    def _handle_get_plotlyjs(self) -> str:
+        """Return the bundled plotly.js so clients can render figures locally"""
+        try:
+            from plotly.offline import get_plotlyjs
+            return f"PLOTLYJS:{get_plotlyjs()}"
+        except ImportError:
+            return "ERROR: Plotly not installed. Run: pip install plotly"
+    
     def _handle_python_command(self, command: str) -> str:
         """Execute Python code with safety measures"""
         try:
@@ -425,12 +953,88 @@ class SecureVisualizationServer:
         except Exception as e:
             return f"EXEC_ERROR: {str(e)}"
     
+    def _framed_command_loop(self, client_socket, address, codec: str, trace: bool = False):
+        """Process length-prefixed command frames until the client disconnects"""
+        trace_ids = {}
+        # This thread alone reads and writes the socket: one SSL object must
+        # not be used from two threads at once, so live pushes wait in the
+        # outbox and the wake pair interrupts the select below for them
+        wake, wake_signal = socket.socketpair()
+        wake_signal.setblocking(False)
+        connection = {'codec': codec, 'outbox': deque(), 'wake': wake_signal}
+        self.connections[client_socket] = connection
+        try:
+            self._framed_commands(client_socket, address, codec, trace, trace_ids, connection, wake)
+        finally:
+            self._stop_subscription(client_socket)
+            del self.connections[client_socket]
+            wake.close()
+            wake_signal.close()
+    
+    def _framed_commands(self, client_socket, address, codec: str, trace: bool, trace_ids: dict,
+                         connection: dict, wake):
+        outbox = connection['outbox']
+        while self.running and client_socket in self.authenticated_clients:
+            while outbox:
+                client_socket.sendall(outbox.popleft())
+            # Bytes already decrypted into the SSL buffer do not wake select
+            if not (isinstance(client_socket, ssl.SSLSocket) and client_socket.pending()):
+                readable, _, _ = select.select([client_socket, wake], [], [], 1.0)
+                if wake in readable:
+                    wake.recv(4096)
+                if client_socket not in readable:
+                    continue
+            try:
+                frame = self._read_frame(client_socket)
+            except socket.timeout:
+                continue
+            if frame is None:
+                break
+            
+            msg_type, frame_codec, request_id, payload = frame
+            if trace and msg_type == FRAME_TYPE_TRACE:
+                # Names the command frame that follows with the same request id
+                trace_ids[request_id] = payload.decode('ascii', 'replace')
+                continue
+            trace_id = trace_ids.pop(request_id, None)
+            self._trace_state.stages = [('received', time.perf_counter())] if trace_id else None
+            try:
+                if msg_type != FRAME_TYPE_COMMAND:
+                    raise ValueError(f"Unexpected frame type: {msg_type}")
+                command = self._decode_frame_payload(frame_codec, payload)
+                self._trace_mark('decoded')
+                print(f"📨 Command #{request_id} from {address}: {command[:100]}...")
+                response = self._process_command(command, client_socket)
+                self._trace_mark('processed')
+            except Exception as e:
+                print(f"❌ Command processing error for {address}: {e}")
+                response = f"ERROR: {str(e)}"
+            
+            if isinstance(response, bytes):
+                reply = self._encode_frame(FRAME_TYPE_DATASET, request_id, response, codec)
+            elif response:
+                reply = self._encode_frame(FRAME_TYPE_RESPONSE, request_id, response, codec)
+            else:
+                self._trace_state.stages = None
+                continue
+            if trace_id:
+                self._trace_mark('encoded')
+                reply = self._trace_frame(request_id, trace_id) + reply
+            client_socket.sendall(reply)
+    
     def _handle_client(self, client_socket, address):
         """Handle secure client connection with comprehensive error handling"""
         print(f"🔐 New connection from {address}")
         self.clients.append(client_socket)
+        session_token = None
         
         try:
+            if isinstance(client_socket, ssl.SSLSocket):
+                started = time.perf_counter()
+                client_socket.do_handshake()
+                print(f"🤝 TLS handshake with {address}: {(time.perf_counter() - started) * 1000:.1f} ms "
+                      f"({client_socket.version()}, {'resumed' if client_socket.session_reused else 'full'})")
+            
             # Authentication phase
             session_token = self._handle_authentication(client_socket)
             if not session_token:
@@ -438,9 +1042,17 @@ class SecureVisualizationServer:
                 return
             
             self.authenticated_clients.add(client_socket)
-            print(f"✅ Client {address} authenticated successfully")
+            protocol = self.sessions[session_token].get('protocol', 'legacy')
+            codec = self.sessions[session_token].get('codec', 'gzip')
+            trace = self.sessions[session_token].get('trace', False)
+            print(f"✅ Client {address} authenticated successfully ({protocol} protocol"
+                  f"{', ' + codec + ' codec' if protocol == 'framed' else ''})")
+            
+            if protocol == 'framed':
+                self._framed_command_loop(client_socket, address, codec, trace)
+                return
             
-            # Main command processing loop
+            # Main command processing loop (legacy Base64 stream)
             while self.running and client_socket in self.authenticated_clients:
                 try:
                     msg = client_socket.recv(65536)
@@ -453,6 +1065,8 @@ class SecureVisualizationServer:
                     print(f"📨 Command from {address}: {command[:100]}...")
                     
                     response = self._process_command(command, client_socket)
+                    if isinstance(response, bytes):
+                        response = "ERROR: Binary replies require the framed protocol"
                     
                     if response:
                         compressed_response = self._compress_data(response)
@@ -497,7 +1111,10 @@ class SecureVisualizationServer:
                 # Set compatible ciphers for Java
                 context.set_ciphers('ECDHE-RSA-AES256-GCM-SHA384:ECDHE-RSA-AES128-GCM-SHA256:TLS_AES_256_GCM_SHA384:TLS_AES_128_GCM_SHA256')
                 
-                secure_socket = context.wrap_socket(server_socket, server_side=True)
+                # Handshakes run on the client thread, not in accept(), so one
+                # slow full handshake does not hold up resumed reconnects
+                secure_socket = context.wrap_socket(server_socket, server_side=True,
+                                                    do_handshake_on_connect=False)
                 print(f"🔒 Secure Visualization Server running on {self.host}:{self.port}")
                 print("✅ Features: SSL/TLS, Authentication, Advanced Plots")
             else:
@@ -509,7 +1126,7 @@ class SecureVisualizationServer:
             print("👤 Users: admin/password123, user/userpass")
             print("📊 Supported: 3D Plots, Surface Plots, Caching")
             print("🛡️  Security: Authentication, Session Management, Input Validation")
-            print("💡 Commands: data.csv, plot:{...}, get_columns, clear_cache")
+            print("💡 Commands: data.csv, plot:{...}, get_columns, get_dataset, clear_cache")
             print("Press Ctrl+C to stop the server")
             
             while self.running: